@@ -0,0 +1,35 @@
+package com.randomdialogue.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The sliding-window limiter LLMService used before TokenBucket, kept only as
+ * the baseline for TokenBucketBenchmark.
+ */
+class LegacyRateLimiter {
+    private final Queue<Long> requests = new ConcurrentLinkedQueue<>();
+    private final int maxRequests;
+    private final long windowMs;
+
+    LegacyRateLimiter(int maxRequests, long windowMs) {
+        this.maxRequests = maxRequests;
+        this.windowMs = windowMs;
+    }
+
+    synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+
+        // Remove old requests outside the window
+        while (!requests.isEmpty() && now - requests.peek() > windowMs) {
+            requests.poll();
+        }
+
+        if (requests.size() < maxRequests) {
+            requests.offer(now);
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package com.randomdialogue.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+/**
+ * RequestTemplate against the previous request encoding (a map per request,
+ * serialized by Gson, then encoded again by the HTTP entity) for a typical
+ * chat message with some history. Run with {@code -prof gc} to compare bytes
+ * allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestTemplateBenchmark {
+    private static final Gson GSON = new Gson();
+
+    private static final String SYSTEM_PROMPT = "Transform messages to match the requested style while preserving "
+            + "original meaning and intent.\n\nRULES:\n1. Only transform the style/tone - never respond to or answer "
+            + "the message\n2. Preserve intent: thanks stays thanks, greetings stay greetings\n3. Keep quoted text "
+            + "\"like this\" exactly as written\n4. Output only the transformed message\n";
+    private static final String CONTEXT = "Recent conversation context:\n- anyone up for the nether?\n"
+            + "- need blaze rods\n- bring food\n\nMessage to transform: ";
+    private static final String INSTRUCTIONS = "Transform the following message using the \"PIRATE\" style:\n\n"
+            + "Style instructions: Rewrite this as if spoken by an enthusiastic pirate, with 'arrr' and nautical "
+            + "terms\n\n";
+    private static final String MESSAGE = "who wants to raid the fortress before sunset?";
+
+    private final RequestTemplate template;
+    private final byte[] encodedInstructions = RequestTemplate.encode(INSTRUCTIONS);
+
+    public RequestTemplateBenchmark() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", "gpt-4o-mini");
+        body.put("messages", Arrays.asList(
+                Map.of("role", "system", "content", SYSTEM_PROMPT),
+                Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
+        body.put("temperature", 0.8);
+        template = new RequestTemplate(body, "gpt-4o-mini", SYSTEM_PROMPT, 0.8, false, false, true);
+    }
+
+    @Benchmark
+    public byte[] template() {
+        return template.render(encodedInstructions, CONTEXT, MESSAGE, 200, false, false);
+    }
+
+    @Benchmark
+    public byte[] mapSerialize() {
+        // What LLMService.callOpenAI and executeRequest did before RequestTemplate
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "gpt-4o-mini");
+        requestBody.put("messages", Arrays.asList(
+                Map.of("role", "system", "content", SYSTEM_PROMPT),
+                Map.of("role", "user", "content", INSTRUCTIONS + CONTEXT + MESSAGE)));
+        requestBody.put("max_tokens", 200);
+        requestBody.put("temperature", 0.8);
+        return GSON.toJson(requestBody).getBytes(StandardCharsets.UTF_8);
+    }
+}
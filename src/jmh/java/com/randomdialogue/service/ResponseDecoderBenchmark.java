@@ -0,0 +1,62 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+/**
+ * ResponseDecoder against the previous parse (body to String, Gson into an
+ * untyped Map, walk the casts) on a typical chat completion. Run with
+ * {@code -prof gc} to compare bytes allocated per response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecoderBenchmark {
+    private static final Gson GSON = new Gson();
+
+    private static final String OPENAI_RESPONSE = "{\"id\":\"chatcmpl-9x8y7z\",\"object\":\"chat.completion\","
+            + "\"created\":1718000000,\"model\":\"gpt-4o-mini-2024-07-18\",\"choices\":[{\"index\":0,"
+            + "\"message\":{\"role\":\"assistant\",\"content\":\"Arr, ye scallywags! Who be wantin' to raid the "
+            + "nether fortress with me afore the sun sets?\",\"refusal\":null},\"logprobs\":null,"
+            + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":412,\"completion_tokens\":27,"
+            + "\"total_tokens\":439,\"prompt_tokens_details\":{\"cached_tokens\":0,\"audio_tokens\":0},"
+            + "\"completion_tokens_details\":{\"reasoning_tokens\":0,\"audio_tokens\":0,"
+            + "\"accepted_prediction_tokens\":0,\"rejected_prediction_tokens\":0}},"
+            + "\"system_fingerprint\":\"fp_0ba0d124f1\"}";
+
+    private final TransportResponse response = new TransportResponse(200,
+            OPENAI_RESPONSE.getBytes(StandardCharsets.UTF_8), null);
+
+    @Benchmark
+    public String decoder() throws IOException {
+        return ResponseDecoder.decode(response.openBody(), false).content;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String mapParse() {
+        // What LLMService.parseResponse did before ResponseDecoder
+        Map<String, Object> responseData = GSON.fromJson(response.getBody(), Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) responseData.get("choices");
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        return (String) message.get("content");
+    }
+}
@@ -0,0 +1,121 @@
+package com.randomdialogue.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Per-acquire cost of TokenBucket against the old sliding-window limiter, and
+ * the memory each tracked player costs. Run with {@code ./gradlew jmh}; add
+ * {@code -prof gc} in the jmh block to see allocation per acquire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBucketBenchmark {
+
+    // The plugin's default per-player limit, a chatty player hits it constantly
+    private static final int LIMIT_PER_MINUTE = 10;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        TokenBucket bucket;
+        LegacyRateLimiter legacy;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bucket = new TokenBucket(LIMIT_PER_MINUTE, 60_000);
+            legacy = new LegacyRateLimiter(LIMIT_PER_MINUTE, 60_000);
+        }
+    }
+
+    @Benchmark
+    public boolean tokenBucket(Shared shared) {
+        return shared.bucket.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean legacy(Shared shared) {
+        return shared.legacy.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tokenBucketContended(Shared shared) {
+        return shared.bucket.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean legacyContended(Shared shared) {
+        return shared.legacy.tryAcquire();
+    }
+
+    /**
+     * Fills a limiter map the way LLMService does, one full window of requests per
+     * player, and prints the retained size per player once the trial ends.
+     */
+    @State(Scope.Benchmark)
+    public static class Players {
+        @Param({"1000"})
+        int players;
+
+        Map<String, TokenBucket> buckets;
+        Map<String, LegacyRateLimiter> legacy;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            buckets = new ConcurrentHashMap<>();
+            legacy = new ConcurrentHashMap<>();
+            for (int i = 0; i < players; i++) {
+                String name = "Player" + i;
+                TokenBucket bucket = buckets.computeIfAbsent(name, k -> new TokenBucket(LIMIT_PER_MINUTE, 60_000));
+                LegacyRateLimiter limiter = legacy.computeIfAbsent(name,
+                        k -> new LegacyRateLimiter(LIMIT_PER_MINUTE, 60_000));
+                for (int j = 0; j < LIMIT_PER_MINUTE; j++) {
+                    bucket.tryAcquire();
+                    limiter.tryAcquire();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+            System.out.printf("%nBytes per tracked player: token bucket %d, legacy %d%n",
+                    bytesPerPlayer(buckets), bytesPerPlayer(legacy));
+        }
+
+        // Excludes the map and its keys, which both limiters share
+        private long bytesPerPlayer(Map<String, ?> map) {
+            return GraphLayout.parseInstance(map.values().toArray()).totalSize() / map.size();
+        }
+    }
+
+    @Benchmark
+    public boolean tokenBucketLookup(Players players) {
+        return players.buckets.get("Player500").tryAcquire();
+    }
+
+    @Benchmark
+    public boolean legacyLookup(Players players) {
+        return players.legacy.get("Player500").tryAcquire();
+    }
+}
@@ -1,6 +1,7 @@
 package com.randomdialogue;
 
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
@@ -95,9 +96,17 @@ public class ChatEventHandler implements Listener {
         // Cancel the original event since we'll send our own message
         event.setCancelled(true);
 
-        // Process message asynchronously
+        // Process message asynchronously. Downstream stages run on the service
+        // executor rather than on whichever thread completed the transformation
+        Executor callbackExecutor = llmService.getExecutor();
         llmService.transformMessageAsync(originalMessage, filter, playerName)
-                .thenAccept(result -> {
+                .thenAcceptAsync(result -> {
+                    if (result.timedOut) {
+                        // The service gave up waiting on the provider and already
+                        // counted it, treat it like any other failed transformation
+                        handleTransformationFailure(player, originalMessage, "transformation timeout");
+                        return;
+                    }
                     try {
                         // Send the transformed message to all players (sync with main thread)
                         Bukkit.getScheduler().runTask(RandomDialogueMod.getInstance(), () -> {
@@ -118,28 +127,31 @@ public class ChatEventHandler implements Listener {
                             });
                         }
                     }
-                })
-                .exceptionally(throwable -> {
-                    String errorMessage = "transformation timeout";
-                    if (throwable.getCause() instanceof TimeoutException) {
-                        errorMessage = "transformation timeout";
-                    } else {
-                        errorMessage = throwable.getMessage();
-                    }
-
+                }, callbackExecutor)
+                .exceptionallyAsync(throwable -> {
+                    String errorMessage = throwable.getCause() instanceof TimeoutException
+                            ? "transformation timeout"
+                            : throwable.getMessage();
                     LOGGER.severe("Failed to transform message from " + playerName + ": " + originalMessage + " - "
                             + errorMessage);
-
-                    // Send fallback message if enabled (sync with main thread)
-                    Bukkit.getScheduler().runTask(RandomDialogueMod.getInstance(), () -> {
-                        if (config.enableFallback) {
-                            sendFallbackMessage(player, originalMessage);
-                        } else {
-                            sendErrorMessage(player, "Message transformation failed");
-                        }
-                    });
+                    handleTransformationFailure(player, originalMessage, errorMessage);
                     return null;
-                });
+                }, callbackExecutor);
+    }
+
+    private void handleTransformationFailure(Player player, String originalMessage, String reason) {
+        if (config.enableDebugLogging) {
+            LOGGER.info("Sending fallback for " + player.getName() + " (" + reason + ")");
+        }
+
+        // Send fallback message if enabled (sync with main thread)
+        Bukkit.getScheduler().runTask(RandomDialogueMod.getInstance(), () -> {
+            if (config.enableFallback) {
+                sendFallbackMessage(player, originalMessage);
+            } else {
+                sendErrorMessage(player, "Message transformation failed");
+            }
+        });
     }
 
     private void sendQuoteFollowUpMessage(String followUpMessage) {
@@ -1,8 +1,11 @@
 package com.randomdialogue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -125,6 +128,24 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
                 return reloadFilters(sender);
             case "llm_info":
                 return handleInfoCommand(sender, args);
+            case "llm_stats":
+                if (!sender.hasPermission("randomdialogue.admin")) {
+                    sender.sendMessage(Component.text("You can only view LLM statistics as admin.", NamedTextColor.RED));
+                    return true;
+                }
+                return showLLMStats(sender);
+            case "routing":
+                if (!sender.hasPermission("randomdialogue.admin")) {
+                    sender.sendMessage(Component.text("You can only view provider routing as admin.", NamedTextColor.RED));
+                    return true;
+                }
+                return showRouting(sender);
+            case "cache_replay":
+                if (!sender.hasPermission("randomdialogue.admin")) {
+                    sender.sendMessage(Component.text("You can only replay chat logs as admin.", NamedTextColor.RED));
+                    return true;
+                }
+                return replayChatLog(sender, args);
             case "reload_config":
                 return reloadConfig(sender);
             case "reload_all":
@@ -175,7 +196,8 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
 
         if (sender.hasPermission("randomdialogue.admin")) {
             commands.addAll(List.of(
-                    "mode", "reload", "reload_config", "reload_all", "test", "restore_default_config"));
+                    "mode", "reload", "reload_config", "reload_all", "test", "restore_default_config", "llm_stats",
+                    "routing", "cache_replay"));
         }
 
         return filterStartsWith(commands, partial);
@@ -188,6 +210,7 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
             case "set" -> getCombinedFilterAndPlayerNames(sender, partial);
             case "test" -> filterStartsWith(List.of("quick", "full", "filter"), partial);
             case "privacy" -> filterStartsWith(List.of("allow", "deny"), partial);
+            case "cache_replay" -> getFilterNames(partial);
             default -> List.of();
         };
     }
@@ -707,6 +730,19 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
                 .append(Component.text(config.getCurrentModel(), NamedTextColor.WHITE)));
         sender.sendMessage(Component.text("Endpoint: ", NamedTextColor.AQUA)
                 .append(Component.text(config.getCurrentEndpoint(), NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("HTTP Transport: ", NamedTextColor.AQUA)
+                .append(Component.text(config.httpTransport, NamedTextColor.WHITE)));
+        if (config.circuitBreakerEnabled) {
+            Map<String, String> circuits = llmService.getCircuitStates();
+            if (circuits.isEmpty()) {
+                sender.sendMessage(Component.text("Circuit Breaker: ", NamedTextColor.AQUA)
+                        .append(Component.text("closed", NamedTextColor.GREEN)));
+            }
+            circuits.forEach((provider, state) -> sender.sendMessage(
+                    Component.text("Circuit Breaker (" + provider + "): ", NamedTextColor.AQUA)
+                            .append(Component.text(state,
+                                    state.startsWith("closed") ? NamedTextColor.GREEN : NamedTextColor.RED))));
+        }
         sender.sendMessage(Component.text("Current Mode: ", NamedTextColor.AQUA)
                 .append(Component.text(playerManager.getCurrentMode().name().toLowerCase(), NamedTextColor.YELLOW)));
 
@@ -726,6 +762,65 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean showLLMStats(CommandSender sender) {
+        sender.sendMessage(Component.text("=== LLM Service Statistics ===", NamedTextColor.AQUA));
+        llmService.getStatistics().forEach((name, value) -> sender.sendMessage(
+                Component.text(name + ": ", NamedTextColor.AQUA)
+                        .append(Component.text(value, NamedTextColor.WHITE))));
+        return true;
+    }
+
+    private boolean showRouting(CommandSender sender) {
+        Map<String, String> routing = llmService.getRoutingStatus();
+        if (routing.isEmpty()) {
+            sender.sendMessage(Component.text("Provider routing is disabled, all requests go to ", NamedTextColor.YELLOW)
+                    .append(Component.text(config.llmProvider, NamedTextColor.WHITE)));
+            return true;
+        }
+
+        sender.sendMessage(Component.text("=== Provider Routing ===", NamedTextColor.AQUA));
+        routing.forEach((provider, status) -> sender.sendMessage(
+                Component.text(provider + ": ", NamedTextColor.AQUA)
+                        .append(Component.text(status, NamedTextColor.WHITE))));
+        return true;
+    }
+
+    private boolean replayChatLog(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(Component.text("Usage: /randomdialogue cache_replay <filter> [log_file]",
+                    NamedTextColor.RED));
+            return true;
+        }
+
+        FilterDefinition filter = filterManager.getFilter(args[1]);
+        if (filter == null) {
+            sender.sendMessage(Component.text("❌ Filter not found: " + args[1], NamedTextColor.RED));
+            return true;
+        }
+
+        // Relative to the server directory, like the server's own logs
+        Path log = Path.of(args.length >= 3 ? args[2] : "logs/latest.log");
+        if (!Files.isRegularFile(log)) {
+            sender.sendMessage(Component.text("❌ No such file: " + log, NamedTextColor.RED));
+            return true;
+        }
+
+        sender.sendMessage(Component.text("Replaying " + log + " through the response cache...", NamedTextColor.YELLOW));
+        CompletableFuture.runAsync(() -> {
+            try {
+                Map<String, String> report = llmService.replayChatLog(log, filter);
+                sender.sendMessage(Component.text("=== Cache Replay: " + filter.name + " ===", NamedTextColor.AQUA));
+                report.forEach((name, value) -> sender.sendMessage(
+                        Component.text(name + ": ", NamedTextColor.AQUA)
+                                .append(Component.text(value, NamedTextColor.WHITE))));
+            } catch (Exception e) {
+                sender.sendMessage(Component.text("❌ Replay failed: " + e.getMessage(), NamedTextColor.RED));
+                LOGGER.warning("Cache replay of " + log + " failed: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
     private boolean showHelp(CommandSender sender) {
         boolean isAdmin = sender.hasPermission("randomdialogue.admin");
 
@@ -783,6 +878,12 @@ public class RandomDialogueCommands implements CommandExecutor, TabCompleter {
                     .append(Component.text(
                             " - Reload both filter configuration (filters.json) and main configuration file (randomdialogue.json)",
                             NamedTextColor.WHITE)));
+            sender.sendMessage(Component.text("/randomdialogue llm_stats", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Show LLM service performance statistics", NamedTextColor.WHITE)));
+            sender.sendMessage(Component.text("/randomdialogue routing", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Show provider routing weights and health", NamedTextColor.WHITE)));
+            sender.sendMessage(Component.text("/randomdialogue cache_replay <filter> [log_file]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Compare cache hit rates over logged chat", NamedTextColor.WHITE)));
             sender.sendMessage(Component.text("/randomdialogue restore_default_config confirm", NamedTextColor.YELLOW)
                     .append(Component.text(
                             " - Reset configuration file to defaults. You must type 'confirm' for the operation to be successful.",
@@ -14,6 +14,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class RandomDialogueConfig {
     private static final Logger LOGGER = Logger.getLogger(RandomDialogueConfig.class.getName());
@@ -60,9 +62,116 @@ public class RandomDialogueConfig {
     @SerializedName("timeout_seconds")
     public int timeoutSeconds = 10;
 
+    // How long a chat line may take end to end before the original is sent
+    // instead, 0 = no deadline
+    @SerializedName("chat_latency_slo_ms")
+    public int chatLatencySloMs = 0;
+
+    // Response timeout from observed latency, timeout_seconds is the upper bound
+    @SerializedName("adaptive_timeout_enabled")
+    public boolean adaptiveTimeoutEnabled = true;
+
+    @SerializedName("adaptive_timeout_percentile")
+    public double adaptiveTimeoutPercentile = 99.0;
+
+    @SerializedName("adaptive_timeout_factor")
+    public double adaptiveTimeoutFactor = 2.0;
+
+    @SerializedName("adaptive_timeout_min_ms")
+    public int adaptiveTimeoutMinMs = 1000;
+
     @SerializedName("retry_attempts")
     public int retryAttempts = 2;
 
+    // HTTP Transport Settings
+    @SerializedName("http_transport")
+    public String httpTransport = "blocking";
+
+    @SerializedName("max_connections_per_route")
+    public int maxConnectionsPerRoute = 20;
+
+    @SerializedName("max_connections_total")
+    public int maxConnectionsTotal = 50;
+
+    @SerializedName("adaptive_concurrency_enabled")
+    public boolean adaptiveConcurrencyEnabled = true;
+
+    @SerializedName("concurrency_initial_limit")
+    public int concurrencyInitialLimit = 10;
+
+    @SerializedName("concurrency_max_queue")
+    public int concurrencyMaxQueue = 100;
+
+    // Provider account limits, 0 = learn from the provider's rate-limit headers
+    @SerializedName("rate_budget_enabled")
+    public boolean rateBudgetEnabled = true;
+
+    @SerializedName("rate_budget_rpm")
+    public int rateBudgetRpm = 0;
+
+    @SerializedName("rate_budget_tpm")
+    public int rateBudgetTpm = 0;
+
+    @SerializedName("executor_mode")
+    public String executorMode = "platform";
+
+    // Streaming Settings
+    @SerializedName("streaming_enabled")
+    public boolean streamingEnabled = false;
+
+    @SerializedName("streaming_stop_at_sentence")
+    public boolean streamingStopAtSentence = true;
+
+    // Prompt Caching Settings
+    @SerializedName("prompt_caching_enabled")
+    public boolean promptCachingEnabled = true;
+
+    // Batching Settings
+    @SerializedName("batching_enabled")
+    public boolean batchingEnabled = false;
+
+    @SerializedName("batch_window_ms")
+    public int batchWindowMs = 100;
+
+    @SerializedName("batch_max_size")
+    public int batchMaxSize = 8;
+
+    // Circuit Breaker Settings
+    @SerializedName("circuit_breaker_enabled")
+    public boolean circuitBreakerEnabled = true;
+
+    @SerializedName("circuit_breaker_failure_threshold")
+    public int circuitBreakerFailureThreshold = 5;
+
+    @SerializedName("circuit_breaker_open_seconds")
+    public int circuitBreakerOpenSeconds = 30;
+
+    @SerializedName("negative_cache_seconds")
+    public int negativeCacheSeconds = 30;
+
+    // Routing Settings
+    @SerializedName("routing_enabled")
+    public boolean routingEnabled = false;
+
+    @SerializedName("routing_weights")
+    public Map<String, Double> routingWeights = defaultRoutingWeights();
+
+    // Hedging Settings
+    @SerializedName("hedging_enabled")
+    public boolean hedgingEnabled = false;
+
+    @SerializedName("hedge_provider")
+    public String hedgeProvider = "";
+
+    @SerializedName("hedge_percentile")
+    public double hedgePercentile = 95.0;
+
+    @SerializedName("hedge_min_delay_ms")
+    public int hedgeMinDelayMs = 250;
+
+    @SerializedName("hedge_max_per_minute")
+    public int hedgeMaxPerMinute = 10;
+
     // Mod Settings
     @SerializedName("enable_fallback")
     public boolean enableFallback = true;
@@ -101,6 +210,54 @@ public class RandomDialogueConfig {
     @SerializedName("cache_ttl_minutes")
     public int cacheTtlMinutes = 30;
 
+    @SerializedName("cache_storage")
+    public String cacheStorage = "heap";
+
+    @SerializedName("cache_off_heap_mb")
+    public int cacheOffHeapMb = 64;
+
+    @SerializedName("cache_size_estimation_enabled")
+    public boolean cacheSizeEstimationEnabled = true;
+
+    @SerializedName("cache_auto_size_enabled")
+    public boolean cacheAutoSizeEnabled = false;
+
+    @SerializedName("cache_auto_size_max_mb")
+    public int cacheAutoSizeMaxMb = 32;
+
+    @SerializedName("disk_cache_enabled")
+    public boolean diskCacheEnabled = false;
+
+    @SerializedName("disk_cache_path")
+    public String diskCachePath = "plugins/RandomDialogue/cache/transformations.log";
+
+    @SerializedName("disk_cache_max_mb")
+    public int diskCacheMaxMb = 16;
+
+    @SerializedName("fuzzy_cache_enabled")
+    public boolean fuzzyCacheEnabled = false;
+
+    @SerializedName("fuzzy_cache_threshold")
+    public double fuzzyCacheThreshold = 0.8;
+
+    @SerializedName("fuzzy_cache_max_length")
+    public int fuzzyCacheMaxLength = 24;
+
+    @SerializedName("pregeneration_enabled")
+    public boolean pregenerationEnabled = false;
+
+    @SerializedName("pregeneration_top_phrases")
+    public int pregenerationTopPhrases = 100;
+
+    @SerializedName("pregeneration_per_minute")
+    public int pregenerationPerMinute = 6;
+
+    @SerializedName("cache_variants")
+    public int cacheVariants = 1;
+
+    @SerializedName("cache_variant_top_ups_per_minute")
+    public int cacheVariantTopUpsPerMinute = 10;
+
     @SerializedName("system_prompt")
     public String systemPrompt = """
             Transform messages to match the requested style while preserving original meaning and intent.
@@ -223,10 +380,80 @@ public class RandomDialogueConfig {
         maxTokens = Math.max(1, Math.min(maxTokens, 4000));
         temperature = Math.max(0.0, Math.min(temperature, 2.0));
         timeoutSeconds = Math.max(1, Math.min(timeoutSeconds, 300));
+        chatLatencySloMs = Math.max(0, Math.min(chatLatencySloMs, 300_000));
+        adaptiveTimeoutPercentile = Math.max(50.0, Math.min(adaptiveTimeoutPercentile, 99.9));
+        adaptiveTimeoutFactor = Math.max(1.0, Math.min(adaptiveTimeoutFactor, 10.0));
+        adaptiveTimeoutMinMs = Math.max(100, Math.min(adaptiveTimeoutMinMs, timeoutSeconds * 1000));
         retryAttempts = Math.max(0, Math.min(retryAttempts, 5));
+        maxConnectionsPerRoute = Math.max(1, Math.min(maxConnectionsPerRoute, 200));
+        maxConnectionsTotal = Math.max(maxConnectionsPerRoute, Math.min(maxConnectionsTotal, 1000));
+        concurrencyInitialLimit = Math.max(1, Math.min(concurrencyInitialLimit, maxConnectionsPerRoute));
+        concurrencyMaxQueue = Math.max(0, Math.min(concurrencyMaxQueue, 10000));
+        rateBudgetRpm = Math.max(0, Math.min(rateBudgetRpm, 1_000_000));
+        rateBudgetTpm = Math.max(0, Math.min(rateBudgetTpm, 100_000_000));
+        batchWindowMs = Math.max(10, Math.min(batchWindowMs, 1000));
+        batchMaxSize = Math.max(2, Math.min(batchMaxSize, 32));
+        circuitBreakerFailureThreshold = Math.max(1, Math.min(circuitBreakerFailureThreshold, 100));
+        circuitBreakerOpenSeconds = Math.max(1, Math.min(circuitBreakerOpenSeconds, 600));
+        negativeCacheSeconds = Math.max(0, Math.min(negativeCacheSeconds, 600));
+        hedgePercentile = Math.max(50.0, Math.min(hedgePercentile, 99.9));
+        hedgeMinDelayMs = Math.max(0, Math.min(hedgeMinDelayMs, 60000));
+        hedgeMaxPerMinute = Math.max(1, Math.min(hedgeMaxPerMinute, 1000));
         rateLimitPerMinute = Math.max(1, Math.min(rateLimitPerMinute, 100));
-        cacheSize = Math.max(0, Math.min(cacheSize, 1000));
+        if (!"heap".equals(cacheStorage) && !"off_heap".equals(cacheStorage)) {
+            LOGGER.warning("Invalid cache storage '" + cacheStorage + "', defaulting to 'heap'");
+            cacheStorage = "heap";
+        }
+        // Off the heap, entries cost the garbage collector nothing
+        cacheSize = Math.max(0, Math.min(cacheSize, "off_heap".equals(cacheStorage) ? 1_000_000 : 1000));
         cacheTtlMinutes = Math.max(1, Math.min(cacheTtlMinutes, 1440)); // Max 24 hours
+        cacheOffHeapMb = Math.max(1, Math.min(cacheOffHeapMb, 4096));
+        cacheAutoSizeMaxMb = Math.max(1, Math.min(cacheAutoSizeMaxMb, 4096));
+        diskCacheMaxMb = Math.max(1, Math.min(diskCacheMaxMb, 1024));
+        fuzzyCacheThreshold = Math.max(0.5, Math.min(fuzzyCacheThreshold, 1.0));
+        fuzzyCacheMaxLength = Math.max(1, Math.min(fuzzyCacheMaxLength, 100));
+        pregenerationTopPhrases = Math.max(1, Math.min(pregenerationTopPhrases, 1000));
+        pregenerationPerMinute = Math.max(1, Math.min(pregenerationPerMinute, 600));
+        cacheVariants = Math.max(1, Math.min(cacheVariants, 8));
+        cacheVariantTopUpsPerMinute = Math.max(1, Math.min(cacheVariantTopUpsPerMinute, 600));
+
+        // Validate routing weights
+        if (routingWeights == null) {
+            routingWeights = defaultRoutingWeights();
+        }
+        Map<String, Double> validWeights = new LinkedHashMap<>();
+        routingWeights.forEach((provider, weight) -> {
+            if (!isValidProvider(provider) || weight == null) {
+                LOGGER.warning("Ignoring routing weight for unknown provider '" + provider + "'");
+            } else {
+                validWeights.put(provider, Math.max(0.0, Math.min(weight, 100.0)));
+            }
+        });
+        routingWeights = validWeights;
+
+        // Validate hedge provider (empty means no hedging target)
+        if (hedgeProvider == null || (!hedgeProvider.isEmpty() && !isValidProvider(hedgeProvider))) {
+            LOGGER.warning("Invalid hedge provider '" + hedgeProvider + "', hedging disabled");
+            hedgeProvider = "";
+        }
+
+        // Validate disk cache path (blank turns the disk cache off)
+        if (diskCachePath == null || diskCachePath.isBlank()) {
+            diskCacheEnabled = false;
+            diskCachePath = "";
+        }
+
+        // Validate HTTP transport
+        if (!isValidTransport(httpTransport)) {
+            LOGGER.warning("Invalid HTTP transport '" + httpTransport + "', defaulting to 'blocking'");
+            httpTransport = "blocking";
+        }
+
+        // Validate executor mode
+        if (!"platform".equals(executorMode) && !"virtual".equals(executorMode)) {
+            LOGGER.warning("Invalid executor mode '" + executorMode + "', defaulting to 'platform'");
+            executorMode = "platform";
+        }
 
         // Validate filter mode
         if (!isValidFilterMode(defaultFilterMode)) {
@@ -262,6 +489,19 @@ public class RandomDialogueConfig {
             result.addWarning("Very short timeout (" + timeoutSeconds + "s) may cause frequent failures");
         }
 
+        if (chatLatencySloMs > 0 && chatLatencySloMs < 1000) {
+            result.addWarning("Very short chat latency SLO (" + chatLatencySloMs
+                    + "ms) will send most messages untransformed");
+        }
+
+        if (hedgingEnabled) {
+            if (hedgeProvider.isEmpty() || hedgeProvider.equalsIgnoreCase(llmProvider)) {
+                result.addWarning("Hedging is enabled but hedge_provider is not set to a second provider");
+            } else if (!hasValidApiKey(hedgeProvider)) {
+                result.addWarning("Hedge provider '" + hedgeProvider + "' has no API key, hedging is inactive");
+            }
+        }
+
         if (rateLimitEnabled && rateLimitPerMinute > 50) {
             result.addWarning("High rate limit (" + rateLimitPerMinute + "/min) may be expensive");
         }
@@ -295,6 +535,19 @@ public class RandomDialogueConfig {
                 provider.equals("local"));
     }
 
+    private static Map<String, Double> defaultRoutingWeights() {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        weights.put("openai", 1.0);
+        weights.put("anthropic", 1.0);
+        weights.put("groq", 1.0);
+        weights.put("local", 0.0);
+        return weights;
+    }
+
+    private boolean isValidTransport(String transport) {
+        return transport != null && (transport.equals("blocking") || transport.equals("async"));
+    }
+
     private boolean isValidFilterMode(String mode) {
         try {
             FilterMode.valueOf(mode);
@@ -305,7 +558,11 @@ public class RandomDialogueConfig {
     }
 
     public boolean hasValidApiKey() {
-        return switch (llmProvider.toLowerCase()) {
+        return hasValidApiKey(llmProvider);
+    }
+
+    public boolean hasValidApiKey(String provider) {
+        return switch (provider.toLowerCase()) {
             case "openai" -> openaiApiKey != null && !openaiApiKey.trim().isEmpty();
             case "anthropic" -> anthropicApiKey != null && !anthropicApiKey.trim().isEmpty();
             case "groq" -> groqApiKey != null && !groqApiKey.trim().isEmpty();
@@ -315,7 +572,11 @@ public class RandomDialogueConfig {
     }
 
     public String getCurrentApiKey() {
-        String apiKey = switch (llmProvider.toLowerCase()) {
+        return getApiKey(llmProvider);
+    }
+
+    public String getApiKey(String provider) {
+        String apiKey = switch (provider.toLowerCase()) {
             case "openai" -> openaiApiKey;
             case "anthropic" -> anthropicApiKey;
             case "groq" -> groqApiKey;
@@ -326,7 +587,11 @@ public class RandomDialogueConfig {
     }
 
     public String getCurrentModel() {
-        return switch (llmProvider.toLowerCase()) {
+        return getModel(llmProvider);
+    }
+
+    public String getModel(String provider) {
+        return switch (provider.toLowerCase()) {
             case "openai" -> openaiModel;
             case "anthropic" -> anthropicModel;
             case "groq" -> groqModel;
@@ -336,7 +601,11 @@ public class RandomDialogueConfig {
     }
 
     public String getCurrentEndpoint() {
-        return switch (llmProvider.toLowerCase()) {
+        return getEndpoint(llmProvider);
+    }
+
+    public String getEndpoint(String provider) {
+        return switch (provider.toLowerCase()) {
             case "openai" -> "https://api.openai.com/v1/chat/completions";
             case "anthropic" -> "https://api.anthropic.com/v1/messages";
             case "groq" -> "https://api.groq.com/openai/v1/chat/completions";
@@ -399,6 +668,33 @@ public class RandomDialogueConfig {
         LOGGER.info("Max tokens: " + maxTokens);
         LOGGER.info("Temperature: " + temperature);
         LOGGER.info("Timeout: " + timeoutSeconds + "s");
+        LOGGER.info("Adaptive timeout: " + (adaptiveTimeoutEnabled
+                ? "p" + adaptiveTimeoutPercentile + " x " + adaptiveTimeoutFactor + " (" + adaptiveTimeoutMinMs + "ms to "
+                        + timeoutSeconds + "s)"
+                : "disabled"));
+        LOGGER.info("Chat latency SLO: " + (chatLatencySloMs > 0 ? chatLatencySloMs + "ms" : "none"));
+        LOGGER.info("HTTP transport: " + httpTransport + " (max " + maxConnectionsPerRoute + " connections per route, "
+                + maxConnectionsTotal + " total)");
+        LOGGER.info("Adaptive concurrency: " + (adaptiveConcurrencyEnabled
+                ? "enabled (initial limit " + concurrencyInitialLimit + ", queue " + concurrencyMaxQueue + ")"
+                : "disabled"));
+        LOGGER.info("Rate budget: " + (rateBudgetEnabled
+                ? (rateBudgetRpm > 0 ? rateBudgetRpm : "auto") + " RPM, " + (rateBudgetTpm > 0 ? rateBudgetTpm : "auto")
+                        + " TPM"
+                : "disabled"));
+        LOGGER.info("Executor mode: " + executorMode);
+        LOGGER.info("Streaming: " + (streamingEnabled ? "enabled" : "disabled"));
+        LOGGER.info("Prompt caching: " + (promptCachingEnabled ? "enabled" : "disabled"));
+        LOGGER.info("Batching: " + (batchingEnabled
+                ? "enabled (" + batchWindowMs + "ms window, max " + batchMaxSize + " messages)"
+                : "disabled"));
+        LOGGER.info("Circuit breaker: " + (circuitBreakerEnabled
+                ? "opens after " + circuitBreakerFailureThreshold + " failures for " + circuitBreakerOpenSeconds + "s"
+                : "disabled"));
+        LOGGER.info("Routing: " + (routingEnabled ? "enabled " + routingWeights : "disabled"));
+        LOGGER.info("Hedging: " + (hedgingEnabled
+                ? "to " + hedgeProvider + " after p" + hedgePercentile + " (max " + hedgeMaxPerMinute + "/min)"
+                : "disabled"));
         LOGGER.info("Rate limit: " + rateLimitPerMinute + " req/min");
         LOGGER.info("============================");
     }
@@ -0,0 +1,79 @@
+package com.randomdialogue.filter;
+
+import java.util.Locale;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * How a message is reduced to its canonical form before the response cache
+ * looks it up, so "hi", "Hi!" and "hiii  " share one transformation. Set per
+ * filter in filters.json as "normalization"; a filter whose output depends on
+ * e.g. capitals or punctuation can turn the matching step off.
+ */
+public class CacheNormalization {
+    // Used for filters without a "normalization" entry
+    public static final CacheNormalization DEFAULT = new CacheNormalization();
+
+    // Runs longer than this are shortened to it, so "hiii" and "hiiiiii" match but "hi" doesn't
+    private static final int MAX_REPEAT = 2;
+
+    @SerializedName("lowercase")
+    public boolean lowercase = true;
+
+    @SerializedName("collapse_whitespace")
+    public boolean collapseWhitespace = true;
+
+    @SerializedName("trim_trailing_punctuation")
+    public boolean trimTrailingPunctuation = true;
+
+    @SerializedName("collapse_repeats")
+    public boolean collapseRepeats = true;
+
+    // The canonical form; the message itself if normalizing would leave nothing
+    public String apply(String message) {
+        String text = lowercase ? message.toLowerCase(Locale.ROOT) : message;
+
+        StringBuilder canonical = new StringBuilder(text.length());
+        int run = 0;
+        int previous = -1;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (collapseWhitespace && Character.isWhitespace(codePoint)) {
+                if (canonical.length() > 0 && previous != ' ') {
+                    canonical.append(' ');
+                }
+                previous = ' ';
+                run = 1;
+                continue;
+            }
+
+            run = codePoint == previous ? run + 1 : 1;
+            previous = codePoint;
+            if (!collapseRepeats || run <= MAX_REPEAT) {
+                canonical.appendCodePoint(codePoint);
+            }
+        }
+
+        int end = canonical.length();
+        while (end > 0) {
+            char last = canonical.charAt(end - 1);
+            if ((collapseWhitespace && last == ' ') || (trimTrailingPunctuation && isTrailingPunctuation(last))) {
+                end--;
+            } else {
+                break;
+            }
+        }
+        canonical.setLength(end);
+
+        return canonical.length() > 0 ? canonical.toString() : message;
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return switch (c) {
+            case '.', '!', '?', ',', ';', ':', '~' -> true;
+            default -> false;
+        };
+    }
+}
@@ -5,12 +5,19 @@ import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import java.util.Objects;
 
+import com.google.gson.annotations.SerializedName;
+
 public class FilterDefinition {
     public String name;
     public String prompt;
     public String emoji;
     public String color;
     public boolean enabled;
+    // Null for the default cache normalization
+    public CacheNormalization normalization;
+    // Null for the server's fuzzy_cache_threshold; 1 or more turns fuzzy lookups off for this filter
+    @SerializedName("fuzzy_threshold")
+    public Double fuzzyThreshold;
 
     public FilterDefinition() {
         // Default constructor for JSON deserialization
@@ -47,6 +54,15 @@ public class FilterDefinition {
                 originalMessage + "\"";
     }
 
+    public CacheNormalization getNormalization() {
+        return normalization != null ? normalization : CacheNormalization.DEFAULT;
+    }
+
+    // Least similarity at which another message's cached transformation is reused
+    public double getFuzzyThreshold(double serverDefault) {
+        return fuzzyThreshold != null ? Math.max(0.5, fuzzyThreshold) : serverDefault;
+    }
+
     public String getDisplayName() {
         return name.toLowerCase().replace('_', ' ');
     }
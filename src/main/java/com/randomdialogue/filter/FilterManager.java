@@ -22,6 +22,9 @@ public class FilterManager {
 
     private final Path dataFolderPath;
     private Map<String, FilterDefinition> filters = new HashMap<>();
+    // Bumped whenever a filter is loaded, added or removed, so users of the
+    // prompts can tell their copies are stale
+    private volatile int version;
 
     public FilterManager(Path dataFolderPath) {
         this.dataFolderPath = dataFolderPath;
@@ -93,6 +96,7 @@ public class FilterManager {
             createDefaultFilters();
         }
         saveFilters();
+        version++;
 
         // Result: this.filters contains exactly what was loaded/merged
     }
@@ -244,6 +248,10 @@ public class FilterManager {
                 enabled));
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public FilterDefinition getFilter(String name) {
         return filters.get(name.toUpperCase());
     }
@@ -275,6 +283,7 @@ public class FilterManager {
                 emoji,
                 color,
                 true));
+        version++;
         saveFilters();
         LOGGER.info("Added custom filter: " + name);
     }
@@ -282,6 +291,7 @@ public class FilterManager {
     public boolean removeFilter(String name) {
         FilterDefinition removed = filters.remove(name.toUpperCase());
         if (removed != null) {
+            version++;
             saveFilters();
             LOGGER.info("Removed filter: " + name);
             return true;
@@ -0,0 +1,207 @@
+package com.randomdialogue.service;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of provider requests in flight with a limit that adapts
+ * AIMD-style: it creeps up by one per limit's worth of healthy responses and is
+ * cut back when latency climbs well above the observed baseline or the provider
+ * answers 429/5xx or times out. Requests over the limit wait in a bounded queue,
+ * earliest deadline first.
+ */
+class AdaptiveConcurrencyLimiter {
+    // Latency above baseline * this counts as congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double OVERLOAD_BACKOFF = 0.75;
+    // How quickly the baseline forgets an old, lower latency
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final DeadlineQueue<Pending> queue = new DeadlineQueue<>();
+
+    private double limit;
+    private int inFlight;
+    private double baselineMillis = -1;
+    private long lastDecreaseNanos;
+    private long rejected;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Executor executor) {
+        this(initialLimit, minLimit, maxLimit, maxQueue, executor, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Executor executor,
+            LongSupplier nanoClock) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.executor = executor;
+        this.clock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    // Runs the request now if under the limit, otherwise queues it. Cancelling the
+    // returned future cancels the exchange, or drops the request if still queued.
+    CompletableFuture<TransportResponse> submit(Supplier<CompletableFuture<TransportResponse>> request,
+            long deadlineNanos) {
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight >= (int) limit) {
+                if (queue.size() >= maxQueue) {
+                    rejected++;
+                    return CompletableFuture.failedFuture(new RejectedExecutionException(
+                            "Too many provider requests waiting (" + queue.size() + " queued)"));
+                }
+                queue.add(new Pending(request, result), deadlineNanos);
+                return result;
+            }
+            inFlight++;
+        }
+
+        start(request, result);
+        return result;
+    }
+
+    private void start(Supplier<CompletableFuture<TransportResponse>> request,
+            CompletableFuture<TransportResponse> result) {
+        if (result.isDone()) {
+            // Cancelled while queued
+            release(-1, false);
+            return;
+        }
+
+        long startNanos = clock.getAsLong();
+        CompletableFuture<TransportResponse> exchange;
+        try {
+            exchange = request.get();
+        } catch (RuntimeException e) {
+            release(-1, false);
+            result.completeExceptionally(e);
+            return;
+        }
+
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        exchange.whenComplete((response, error) -> {
+            long latencyMillis = (clock.getAsLong() - startNanos) / 1_000_000L;
+            if (exchange.isCancelled()) {
+                release(-1, false);
+            } else if (error != null) {
+                release(-1, isTimeout(error));
+            } else if (response.statusCode == 429 || response.statusCode >= 500) {
+                release(-1, true);
+            } else {
+                release(latencyMillis, false);
+            }
+
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    // latencyMillis is -1 when the request gives no latency signal
+    private void release(long latencyMillis, boolean overloaded) {
+        ArrayDeque<Pending> toStart = new ArrayDeque<>();
+        synchronized (this) {
+            inFlight--;
+            adjustLimit(latencyMillis, overloaded);
+
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                inFlight++;
+                toStart.add(queue.poll());
+            }
+        }
+
+        // Queued requests start on the executor, never on an HTTP I/O thread
+        for (Pending pending : toStart) {
+            executor.execute(() -> start(pending.request, pending.result));
+        }
+    }
+
+    // Must hold the lock
+    private void adjustLimit(long latencyMillis, boolean overloaded) {
+        long now = clock.getAsLong();
+        if (overloaded) {
+            decrease(OVERLOAD_BACKOFF, now);
+            return;
+        }
+        if (latencyMillis < 0) {
+            return;
+        }
+
+        if (baselineMillis < 0 || latencyMillis < baselineMillis) {
+            baselineMillis = latencyMillis;
+        } else {
+            baselineMillis += BASELINE_DRIFT * (latencyMillis - baselineMillis);
+        }
+
+        if (latencyMillis > baselineMillis * LATENCY_TOLERANCE) {
+            decrease(LATENCY_BACKOFF, now);
+        } else if (inFlight + 1 >= (int) limit) {
+            // Only grow while the current limit is actually being used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private void decrease(double factor, long now) {
+        // At most one cut per baseline round trip, so one burst of slow
+        // responses doesn't collapse the limit
+        long interval = (long) Math.max(baselineMillis, 0) * 1_000_000L;
+        if (now - lastDecreaseNanos < interval) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * factor);
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether nothing is queued and at least this share of the limit is unused
+    synchronized boolean hasSpare(double share) {
+        return queue.isEmpty() && inFlight <= limit * (1 - share);
+    }
+
+    synchronized double getLimit() {
+        return limit;
+    }
+
+    // e.g. "limit 12.4, 3 in flight, 0 queued, 0 rejected, baseline 420ms"
+    synchronized String describe() {
+        return String.format("limit %.1f, %d in flight, %d queued, %d rejected, baseline %s", limit, inFlight,
+                queue.size(), rejected, baselineMillis < 0 ? "n/a" : Math.round(baselineMillis) + "ms");
+    }
+
+    private static final class Pending {
+        final Supplier<CompletableFuture<TransportResponse>> request;
+        final CompletableFuture<TransportResponse> result;
+
+        Pending(Supplier<CompletableFuture<TransportResponse>> request, CompletableFuture<TransportResponse> result) {
+            this.request = request;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.randomdialogue.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+
+import com.randomdialogue.config.RandomDialogueConfig;
+
+/**
+ * Non-blocking transport built on the httpclient5 async client. Requests are
+ * multiplexed over a small, fixed set of I/O reactor threads, so the number of
+ * threads does not grow with the number of messages in flight.
+ */
+class AsyncHttpTransport implements HttpTransport {
+    private static final int IO_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    AsyncHttpTransport(RandomDialogueConfig config) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(config.timeoutSeconds))
+                .setResponseTimeout(Timeout.ofSeconds(config.timeoutSeconds))
+                .build();
+
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setMaxConnPerRoute(config.maxConnectionsPerRoute)
+                        .setMaxConnTotal(config.maxConnectionsTotal)
+                        .build())
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(IO_THREADS)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                // LLMService retries with its own backoff and deadline, the client's
+                // built-in retry of 429/503 would stack on top of it
+                .disableAutomaticRetries()
+                .build();
+        this.httpClient.start();
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> post(String endpoint, byte[] body, Map<String, String> headers) {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.post(endpoint)
+                .setBody(body, ContentType.APPLICATION_JSON);
+        headers.forEach(builder::setHeader);
+        SimpleHttpRequest request = builder.build();
+
+        CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = httpClient.execute(SimpleRequestProducer.create(request),
+                SimpleResponseConsumer.create(), new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        future.complete(new TransportResponse(response.getCode(), response.getBodyBytes(),
+                                response.getHeaders()));
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+
+        // Abort the exchange if the caller gives up on it
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postStreaming(String endpoint, byte[] body,
+            Map<String, String> headers, SseParser.Listener listener) {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.post(endpoint)
+                .setBody(body, ContentType.APPLICATION_JSON);
+        headers.forEach(builder::setHeader);
+        builder.setHeader("Accept", "text/event-stream");
+
+        CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        AtomicReference<Future<TransportResponse>> exchangeRef = new AtomicReference<>();
+        StreamingConsumer consumer = new StreamingConsumer(new SseParser(listener), future, () -> {
+            Future<TransportResponse> exchange = exchangeRef.get();
+            if (exchange != null) {
+                exchange.cancel(true);
+            }
+        });
+
+        Future<TransportResponse> exchange = httpClient.execute(SimpleRequestProducer.create(builder.build()),
+                consumer, new FutureCallback<>() {
+                    @Override
+                    public void completed(TransportResponse response) {
+                        future.complete(response);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+        exchangeRef.set(exchange);
+
+        // Abort the exchange if the caller gives up, or if the listener stopped
+        // the stream before the exchange reference was available
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled() || consumer.stopped) {
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public String getName() {
+        return "async";
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    // Feeds response bytes into an SseParser as they arrive from the reactor
+    private static class StreamingConsumer implements AsyncResponseConsumer<TransportResponse> {
+        private final SseParser parser;
+        private final CompletableFuture<TransportResponse> future;
+        private final Runnable abort;
+        private final ByteArrayOutputStream errorBody = new ByteArrayOutputStream();
+
+        private int statusCode;
+        private Header[] headers;
+        private FutureCallback<TransportResponse> resultCallback;
+        volatile boolean stopped;
+
+        StreamingConsumer(SseParser parser, CompletableFuture<TransportResponse> future, Runnable abort) {
+            this.parser = parser;
+            this.future = future;
+            this.abort = abort;
+        }
+
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                FutureCallback<TransportResponse> resultCallback) {
+            this.statusCode = response.getCode();
+            this.headers = response.getHeaders();
+            this.resultCallback = resultCallback;
+            if (entityDetails == null) {
+                resultCallback.completed(buildResult());
+            }
+        }
+
+        @Override
+        public void informationResponse(HttpResponse response, HttpContext context) {
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            capacityChannel.update(Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void consume(ByteBuffer src) {
+            if (stopped) {
+                src.position(src.limit());
+                return;
+            }
+
+            if (statusCode != 200) {
+                while (src.hasRemaining()) {
+                    errorBody.write(src.get());
+                }
+                return;
+            }
+
+            if (!parser.feed(src)) {
+                // Hand the result over now and drop the connection
+                stopped = true;
+                src.position(src.limit());
+                future.complete(buildResult());
+                abort.run();
+            }
+        }
+
+        @Override
+        public void streamEnd(List<? extends Header> trailers) {
+            if (stopped) {
+                return;
+            }
+            if (statusCode == 200) {
+                parser.finish();
+            }
+            resultCallback.completed(buildResult());
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+
+        private TransportResponse buildResult() {
+            String body = statusCode == 200 ? "" : errorBody.toString(StandardCharsets.UTF_8);
+            return new TransportResponse(statusCode, body, headers);
+        }
+    }
+}
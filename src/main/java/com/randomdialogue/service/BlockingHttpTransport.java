@@ -0,0 +1,157 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.util.Timeout;
+
+import com.randomdialogue.config.RandomDialogueConfig;
+
+/**
+ * Classic transport: each request occupies an executor thread for the whole
+ * exchange.
+ */
+class BlockingHttpTransport implements HttpTransport {
+    private static final int STREAM_BUFFER_SIZE = 1024;
+
+    private final CloseableHttpClient httpClient;
+    private final Executor executor;
+
+    BlockingHttpTransport(RandomDialogueConfig config, Executor executor) {
+        this.executor = executor;
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(config.timeoutSeconds))
+                .setResponseTimeout(Timeout.ofSeconds(config.timeoutSeconds))
+                .build();
+
+        this.httpClient = HttpClientBuilder.create()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnPerRoute(config.maxConnectionsPerRoute)
+                        .setMaxConnTotal(config.maxConnectionsTotal)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                // LLMService retries with its own backoff and deadline, the client's
+                // built-in retry of 429/503 would stack on top of it
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> post(String endpoint, byte[] body, Map<String, String> headers) {
+        HttpPost request = new HttpPost(endpoint);
+        request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        headers.forEach(request::setHeader);
+
+        CompletableFuture<TransportResponse> future = CompletableFuture.supplyAsync(() -> {
+            try (ClassicHttpResponse response = httpClient.executeOpen(null, request, null)) {
+                byte[] responseBody = response.getEntity().getContent().readAllBytes();
+                return new TransportResponse(response.getCode(), responseBody, response.getHeaders());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        // Abort the exchange if the caller gives up on it
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                request.cancel();
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postStreaming(String endpoint, byte[] body,
+            Map<String, String> headers, SseParser.Listener listener) {
+        HttpPost request = new HttpPost(endpoint);
+        request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        headers.forEach(request::setHeader);
+        request.setHeader("Accept", "text/event-stream");
+
+        CompletableFuture<TransportResponse> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                ClassicHttpResponse response = httpClient.executeOpen(null, request, null);
+                TransportResponse result;
+                try {
+                    result = readStream(response, request, listener);
+                } finally {
+                    closeResponse(response, request);
+                }
+                return result;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                request.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static TransportResponse readStream(ClassicHttpResponse response, HttpPost request,
+            SseParser.Listener listener) throws IOException {
+        if (response.getEntity() == null) {
+            return new TransportResponse(response.getCode(), "", response.getHeaders());
+        }
+
+        InputStream content = response.getEntity().getContent();
+        if (response.getCode() != 200) {
+            String errorBody = new String(content.readAllBytes(), StandardCharsets.UTF_8);
+            return new TransportResponse(response.getCode(), errorBody, response.getHeaders());
+        }
+
+        SseParser parser = new SseParser(listener);
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            if (!parser.feed(buffer, 0, read)) {
+                // Drop the connection instead of draining the rest of the stream
+                request.cancel();
+                break;
+            }
+        }
+        if (!parser.isStopped()) {
+            parser.finish();
+        }
+
+        return new TransportResponse(response.getCode(), "", response.getHeaders());
+    }
+
+    private static void closeResponse(ClassicHttpResponse response, HttpPost request) throws IOException {
+        try {
+            response.close();
+        } catch (IOException e) {
+            // Closing an aborted exchange fails on the dead socket, which is expected
+            if (!request.isCancelled()) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "blocking";
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.randomdialogue.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.randomdialogue.filter.FilterDefinition;
+
+/**
+ * Response cache keys: the first 128 bits of a SHA-256 over the prompt version,
+ * the system prompt, the filter and the message's canonical form. Two messages
+ * only share a key if they normalize to the same text under the same prompts;
+ * a changed prompt gives every message a new key, so stale transformations
+ * are never served. The digest state after the prompts is kept per filter and
+ * cloned per message, so only the message itself is hashed each time.
+ */
+class CacheKeys {
+    // Bump when the prompt wording in LLMService changes what a message turns into
+    static final int PROMPT_VERSION = 2;
+    private static final int KEY_BYTES = 16;
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Filter name -> digest of everything but the message
+    private final Map<String, Prefix> prefixes = new ConcurrentHashMap<>();
+
+    // filterVersion is FilterManager's, so edited filters get new prefixes
+    String keyFor(String message, FilterDefinition filter, String systemPrompt, int filterVersion) {
+        Prefix prefix = prefixes.get(filter.name);
+        if (prefix == null || prefix.filterVersion != filterVersion || !Objects.equals(prefix.systemPrompt, systemPrompt)) {
+            prefix = new Prefix(filterVersion, systemPrompt, prefixFor(filter, systemPrompt));
+            prefixes.put(filter.name, prefix);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) prefix.digest.clone();
+        } catch (CloneNotSupportedException e) {
+            digest = prefixFor(filter, systemPrompt);
+        }
+        update(digest, filter.getNormalization().apply(message));
+        return HEX.formatHex(digest.digest(), 0, KEY_BYTES);
+    }
+
+    private static MessageDigest prefixFor(FilterDefinition filter, String systemPrompt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+        digest.update(ByteBuffer.allocate(4).putInt(PROMPT_VERSION).array());
+        update(digest, systemPrompt);
+        update(digest, filter.name);
+        update(digest, filter.prompt);
+        return digest;
+    }
+
+    // Length-prefixed, so field boundaries can't be shifted to forge a match
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private record Prefix(int filterVersion, String systemPrompt, MessageDigest digest) {
+    }
+}
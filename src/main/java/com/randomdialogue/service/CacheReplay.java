@@ -0,0 +1,96 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.randomdialogue.filter.FilterDefinition;
+
+/**
+ * Replays logged chat through a response cache of the configured size, once
+ * with the old keys (String.hashCode of the raw message) and once with
+ * CacheKeys, to show what normalized keys do to the hit rate. Hits under the
+ * old keys on a different message are hash collisions, which would have shown
+ * a player someone else's transformation.
+ */
+final class CacheReplay {
+    // "[12:00:00] [Async Chat Thread - #3/INFO]: <Steve> hello there" in a server log
+    private static final Pattern CHAT_LINE = Pattern.compile("<([^>\\s]+)> (.+)$");
+
+    private CacheReplay() {
+    }
+
+    // Chat messages from a server log, or every non-blank line of a plain text file
+    static List<String> readMessages(Path log) throws IOException {
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        List<String> chat = new ArrayList<>();
+        for (String line : lines) {
+            Matcher matcher = CHAT_LINE.matcher(line);
+            if (matcher.find()) {
+                chat.add(matcher.group(2));
+            }
+        }
+        if (!chat.isEmpty()) {
+            return chat;
+        }
+        return lines.stream().map(String::strip).filter(line -> !line.isEmpty()).toList();
+    }
+
+    static Map<String, String> replay(List<String> messages, FilterDefinition filter, int cacheSize,
+            Function<String, String> key) {
+        Run legacy = run(messages, cacheSize, message -> message.hashCode() + ":" + filter.name);
+        Run normalized = run(messages, cacheSize, key);
+
+        Map<String, String> report = new LinkedHashMap<>();
+        report.put("Messages", String.valueOf(messages.size()));
+        report.put("Distinct messages", legacy.distinctKeys + " raw, " + normalized.distinctKeys + " normalized");
+        report.put("Hit rate (old keys)", percent(legacy.hits, messages.size()) + " (" + legacy.hits + " hits, "
+                + legacy.wrongHits + " hash collisions)");
+        report.put("Hit rate (normalized keys)", percent(normalized.hits, messages.size()) + " (" + normalized.hits
+                + " hits, " + normalized.wrongHits + " on a differently written message)");
+        report.put("Cache size", String.valueOf(cacheSize));
+        return report;
+    }
+
+    private static Run run(List<String> messages, int cacheSize, Function<String, String> key) {
+        // The time to live doesn't apply to a replay
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(cacheSize, Long.MAX_VALUE / 1_000_000L);
+        Set<String> seen = new HashSet<>();
+        Run run = new Run();
+        for (String message : messages) {
+            String k = key.apply(message);
+            seen.add(k);
+            String cachedFor = cache.get(k);
+            if (cachedFor != null) {
+                run.hits++;
+                if (!cachedFor.equals(message)) {
+                    run.wrongHits++;
+                }
+            } else {
+                cache.put(k, message);
+            }
+        }
+        run.distinctKeys = seen.size();
+        return run;
+    }
+
+    private static String percent(long part, long whole) {
+        return whole > 0 ? String.format("%.1f%%", part * 100.0 / whole) : "n/a";
+    }
+
+    private static final class Run {
+        long hits;
+        long wrongHits;
+        int distinctKeys;
+    }
+}
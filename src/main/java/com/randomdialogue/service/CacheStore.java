@@ -0,0 +1,39 @@
+package com.randomdialogue.service;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * Where the response cache keeps its entries: TinyLfuCache on the heap, or
+ * OffHeapCache outside it for caches too large to be worth the garbage
+ * collector's time. Entries are dropped a fixed time after they were written.
+ */
+interface CacheStore<K, V> {
+
+    // Null if absent or expired
+    V get(K key);
+
+    // Without counting as a use of the entry
+    boolean containsKey(K key);
+
+    void put(K key, V value);
+
+    // For a value stored elsewhere ageMillis ago, which expires that much sooner
+    void put(K key, V value, long ageMillis);
+
+    // Combines value with the live entry for key, if any, keeping the entry's
+    // time to live. Returns what is now stored, or would be if the cache had room.
+    V merge(K key, V value, BinaryOperator<V> combine);
+
+    int size();
+
+    int maximumSize();
+
+    // Evicts down to the new size if it is smaller
+    void resize(int maximumSize);
+
+    // Drops expired entries even if the cache isn't being used
+    void cleanUp();
+
+    // Size and hit rate, for llm_stats
+    String describe();
+}
@@ -0,0 +1,98 @@
+package com.randomdialogue.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a provider after a run of consecutive failures. While open,
+ * requests fail immediately. Once the open period has passed a single probe
+ * request is let through: success closes the breaker, failure opens it again.
+ */
+class CircuitBreaker {
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    // Claims permission for one request. Every successful claim must be followed
+    // by recordSuccess, recordFailure or release.
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    // Same as tryAcquire but without claiming anything
+    synchronized boolean allowsRequests() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> clock.getAsLong() - openedAt >= openMillis;
+            case HALF_OPEN -> !probeInFlight;
+        };
+    }
+
+    synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            probeInFlight = false;
+        }
+    }
+
+    // Gives back a claim without a verdict, e.g. when the request was cancelled
+    synchronized void release() {
+        probeInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    // e.g. "open (retry in 12s)"
+    synchronized String describe() {
+        return switch (state) {
+            case CLOSED -> consecutiveFailures > 0 ? "closed (" + consecutiveFailures + " recent failures)" : "closed";
+            case OPEN -> "open (retry in "
+                    + Math.max(0, (openMillis - (clock.getAsLong() - openedAt) + 999) / 1000) + "s)";
+            case HALF_OPEN -> "half-open (probing)";
+        };
+    }
+}
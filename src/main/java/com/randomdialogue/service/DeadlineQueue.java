@@ -0,0 +1,57 @@
+package com.randomdialogue.service;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Pending work ordered earliest-deadline-first, ties (including work with no
+ * deadline) in arrival order. Not thread-safe, owners guard it with their own lock.
+ */
+class DeadlineQueue<T> {
+    // Deadline for work that has none
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final PriorityQueue<Entry<T>> entries = new PriorityQueue<>(
+            Comparator.<Entry<T>>comparingLong(e -> e.deadlineNanos).thenComparingLong(e -> e.sequence));
+    private long nextSequence;
+
+    void add(T item, long deadlineNanos) {
+        entries.add(new Entry<>(item, deadlineNanos, nextSequence++));
+    }
+
+    T peek() {
+        Entry<T> head = entries.peek();
+        return head != null ? head.item : null;
+    }
+
+    // NO_DEADLINE when empty
+    long peekDeadline() {
+        Entry<T> head = entries.peek();
+        return head != null ? head.deadlineNanos : NO_DEADLINE;
+    }
+
+    T poll() {
+        Entry<T> head = entries.poll();
+        return head != null ? head.item : null;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final long deadlineNanos;
+        final long sequence;
+
+        Entry(T item, long deadlineNanos, long sequence) {
+            this.item = item;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+        }
+    }
+}
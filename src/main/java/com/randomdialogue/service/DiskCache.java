@@ -0,0 +1,331 @@
+package com.randomdialogue.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Response cache tier on disk, so restarts and config reloads start with the
+ * transformations already paid for. Entries are appended to a log file, an
+ * in-memory index points each key at its latest record, and values are read
+ * back with positional reads. There is no memory mapping, since a mapped file
+ * stays open until the mapping is garbage collected and Windows won't replace
+ * it in compact() until then. Rewriting a key leaves
+ * the old record behind; compact() rewrites the log with only the live,
+ * unexpired entries once dead records make up most of it, or once it is over
+ * its size limit, keeping the newest entries.
+ *
+ * A record is: int length of the rest, int CRC32 of what follows it, long
+ * time written (epoch millis, so ages carry over restarts), unsigned short key
+ * length, then the key and value in UTF-8. A record cut short by a crash fails
+ * its checksum on open, and the log is truncated there.
+ *
+ * Services on the same file share one instance through open(), since a config
+ * reload or a test command creates a service while the old one is still running.
+ */
+final class DiskCache {
+    private static final Logger LOGGER = Logger.getLogger(DiskCache.class.getName());
+    // CRC, time written and key length, after the length itself
+    private static final int HEADER_BYTES = 4 + 8 + 2;
+    // Below this, dead records aren't worth a rewrite
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+    private static final Map<Path, DiskCache> OPEN = new HashMap<>();
+
+    private final Path path;
+    private final LongSupplier clock;
+    private final Map<String, Entry> index = new HashMap<>();
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+    private int references;
+
+    private long hits;
+    private long misses;
+    private long compactions;
+    private long writeFailures;
+
+    DiskCache(Path path, LongSupplier millisClock) throws IOException {
+        this.path = path;
+        this.clock = millisClock;
+        load();
+    }
+
+    // The shared cache for this file, opened if no service has it yet. Each
+    // call must be matched by a release().
+    static DiskCache open(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            DiskCache cache = OPEN.get(key);
+            if (cache == null) {
+                cache = new DiskCache(key, System::currentTimeMillis);
+                OPEN.put(key, cache);
+            }
+            cache.references++;
+            return cache;
+        }
+    }
+
+    void release() {
+        synchronized (OPEN) {
+            if (--references <= 0) {
+                OPEN.remove(path, this);
+                close();
+            }
+        }
+    }
+
+    // Null if absent or written maxAgeMillis or longer ago
+    synchronized Hit get(String key, long maxAgeMillis) {
+        Entry entry = index.get(key);
+        if (entry == null || channel == null) {
+            misses++;
+            return null;
+        }
+        long age = clock.getAsLong() - entry.writtenAt;
+        if (age >= maxAgeMillis) {
+            index.remove(key);
+            liveBytes -= entry.recordBytes();
+            misses++;
+            return null;
+        }
+
+        try {
+            ByteBuffer value = read(entry.offset + 4 + HEADER_BYTES + entry.keyLength, entry.valueLength());
+            hits++;
+            return new Hit(new String(value.array(), StandardCharsets.UTF_8), Math.max(0, age));
+        } catch (IOException e) {
+            LOGGER.warning("Failed to read cached transformation from " + path + ": " + e.getMessage());
+            misses++;
+            return null;
+        }
+    }
+
+    synchronized void put(String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        if (channel == null || keyBytes.length > 0xFFFF) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        int length = HEADER_BYTES + keyBytes.length + valueBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length).putInt(0).putLong(now).putShort((short) keyBytes.length).put(keyBytes).put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, length - 4);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        try {
+            long offset = size;
+            // A failed write is overwritten by the next one, which starts at the same offset
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            size += record.capacity();
+            Entry previous = index.put(key, new Entry(offset, length, now, keyBytes.length));
+            if (previous != null) {
+                liveBytes -= previous.recordBytes();
+            }
+            liveBytes += record.capacity();
+        } catch (IOException e) {
+            if (writeFailures++ == 0) {
+                LOGGER.warning("Failed to write cached transformation to " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Drops expired entries and, if it's worth it, rewrites the log without dead records
+    synchronized void compact(long maxAgeMillis, long maxBytes) {
+        if (channel == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        for (Iterator<Entry> it = index.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (now - entry.writtenAt >= maxAgeMillis) {
+                it.remove();
+                liveBytes -= entry.recordBytes();
+            }
+        }
+
+        boolean mostlyDead = size > MIN_COMPACT_BYTES && size - liveBytes > liveBytes;
+        if (!mostlyDead && size <= maxBytes) {
+            return;
+        }
+
+        // Newest first; over the limit, fill three quarters of it so there's room to grow
+        List<Map.Entry<String, Entry>> live = new ArrayList<>(index.entrySet());
+        live.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().writtenAt).reversed());
+        long keepBytes = liveBytes > maxBytes ? maxBytes * 3 / 4 : liveBytes;
+
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            Map<String, Entry> newIndex = new HashMap<>();
+            long offset = 0;
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Map.Entry<String, Entry> e : live) {
+                    Entry entry = e.getValue();
+                    if (offset + entry.recordBytes() > keepBytes) {
+                        break;
+                    }
+                    ByteBuffer record = read(entry.offset, entry.recordBytes());
+                    while (record.hasRemaining()) {
+                        out.write(record, offset + record.position());
+                    }
+                    newIndex.put(e.getKey(), new Entry(offset, entry.length, entry.writtenAt, entry.keyLength));
+                    offset += entry.recordBytes();
+                }
+                out.force(false);
+            }
+
+            // Closed first, as Windows won't replace a file that is still open
+            channel.close();
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            index.putAll(newIndex);
+            size = offset;
+            liveBytes = offset;
+            compactions++;
+        } catch (IOException e) {
+            LOGGER.warning("Failed to compact " + path + ": " + e.getMessage());
+            reload();
+        }
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long fileSize() {
+        return size;
+    }
+
+    // e.g. "812 entries, 96 KB on disk, 40 hits, 10 misses, 1 compactions"
+    synchronized String describe() {
+        return index.size() + " entries, " + (size + 1023) / 1024 + " KB on disk, " + hits + " hits, " + misses
+                + " misses, " + compactions + " compactions"
+                + (writeFailures > 0 ? ", " + writeFailures + " failed writes" : "");
+    }
+
+    synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Failed to close " + path + ": " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void load() throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        size = channel.size();
+        liveBytes = 0;
+        index.clear();
+
+        long offset = 0;
+        while (offset + 4 <= size) {
+            Entry entry = readRecord(offset);
+            if (entry == null) {
+                break;
+            }
+            String key = new String(keyBytes(entry), StandardCharsets.UTF_8);
+            Entry previous = index.put(key, entry);
+            if (previous != null) {
+                liveBytes -= previous.recordBytes();
+            }
+            liveBytes += entry.recordBytes();
+            offset += entry.recordBytes();
+        }
+
+        if (offset < size) {
+            LOGGER.warning("Dropping " + (size - offset) + " unreadable bytes at the end of " + path);
+            channel.truncate(offset);
+            size = offset;
+        }
+    }
+
+    // After a failed compaction the file on disk is either the old log or the new one
+    private void reload() {
+        try {
+            close();
+            load();
+        } catch (IOException e) {
+            LOGGER.warning("Disk cache " + path + " is unavailable: " + e.getMessage());
+            close();
+            index.clear();
+        }
+    }
+
+    // The record at offset, or null if it is cut short or corrupt
+    private Entry readRecord(long offset) throws IOException {
+        int length = read(offset, 4).getInt();
+        if (length < HEADER_BYTES || offset + 4 + length > size) {
+            return null;
+        }
+        ByteBuffer record = read(offset + 4, length);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 4);
+        if ((int) crc.getValue() != record.getInt(0)) {
+            return null;
+        }
+        long writtenAt = record.getLong(4);
+        int keyLength = Short.toUnsignedInt(record.getShort(12));
+        if (keyLength > length - HEADER_BYTES) {
+            return null;
+        }
+        return new Entry(offset, length, writtenAt, keyLength);
+    }
+
+    private byte[] keyBytes(Entry entry) throws IOException {
+        return read(entry.offset + 4 + HEADER_BYTES, entry.keyLength).array();
+    }
+
+    // Exactly length bytes from position, ready to read
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Cache file ends at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    record Hit(String value, long ageMillis) {
+    }
+
+    private record Entry(long offset, int length, long writtenAt, int keyLength) {
+        int recordBytes() {
+            return 4 + length;
+        }
+
+        int valueLength() {
+            return length - HEADER_BYTES - keyLength;
+        }
+    }
+}
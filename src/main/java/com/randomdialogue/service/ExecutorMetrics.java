@@ -0,0 +1,90 @@
+package com.randomdialogue.service;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Thread counters for the transformation executor, so the platform and virtual
+ * executor modes can be compared under load.
+ */
+class ExecutorMetrics implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ExecutorMetrics.class.getName());
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final AtomicInteger liveThreads = new AtomicInteger();
+    private final AtomicInteger peakThreads = new AtomicInteger();
+    private final AtomicLong threadsStarted = new AtomicLong();
+    private final AtomicLong pinnedEvents = new AtomicLong();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+
+    private RecordingStream pinningStream;
+
+    ThreadFactory instrument(ThreadFactory delegate) {
+        return r -> delegate.newThread(() -> {
+            threadsStarted.incrementAndGet();
+            peakThreads.accumulateAndGet(liveThreads.incrementAndGet(), Math::max);
+            try {
+                r.run();
+            } finally {
+                liveThreads.decrementAndGet();
+            }
+        });
+    }
+
+    // Counts JFR pinning events raised by our own virtual threads
+    void startPinningMonitor(String threadNamePrefix) {
+        try {
+            RecordingStream stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(1));
+            stream.onEvent(PINNED_EVENT, event -> {
+                RecordedThread thread = event.getThread();
+                if (thread != null && thread.getJavaName() != null
+                        && thread.getJavaName().startsWith(threadNamePrefix)) {
+                    pinnedEvents.incrementAndGet();
+                    pinnedNanos.addAndGet(event.getDuration().toNanos());
+                }
+            });
+            stream.startAsync();
+            pinningStream = stream;
+        } catch (Exception | LinkageError e) {
+            LOGGER.warning("Carrier pinning monitor unavailable: " + e.getMessage());
+        }
+    }
+
+    int getLiveThreads() {
+        return liveThreads.get();
+    }
+
+    int getPeakThreads() {
+        return peakThreads.get();
+    }
+
+    long getThreadsStarted() {
+        return threadsStarted.get();
+    }
+
+    boolean isPinningMonitored() {
+        return pinningStream != null;
+    }
+
+    long getPinnedEvents() {
+        return pinnedEvents.get();
+    }
+
+    long getPinnedMillis() {
+        return pinnedNanos.get() / 1_000_000L;
+    }
+
+    @Override
+    public void close() {
+        if (pinningStream != null) {
+            pinningStream.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.randomdialogue.service;
+
+import java.util.Arrays;
+
+/**
+ * Approximate access counts for the keys of a cache holding up to maximumSize
+ * entries, in fixed memory. A count-min sketch of 4-bit counters (four rows,
+ * sixteen counters per long) sits behind a doorkeeper bloom filter, so a key
+ * seen only once costs a bit instead of four counters. After 10 * maximumSize
+ * increments all counts are halved and the doorkeeper cleared, so old
+ * popularity fades. Not thread-safe, the owning cache guards it.
+ */
+class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final long[] doorkeeper;
+    private final int doorkeeperMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int size = Math.max(16, Integer.highestOneBit(Math.max(1, maximumSize) - 1) << 1);
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        // Eight bits per expected key keeps false positives around 2%
+        this.doorkeeper = new long[Math.max(1, size / 8)];
+        this.doorkeeperMask = doorkeeper.length * 64 - 1;
+        this.sampleSize = Math.max(10, 10 * maximumSize);
+    }
+
+    // Estimated number of recent accesses, at most 16
+    int frequency(Object key) {
+        return frequencyOf(spread(key.hashCode()));
+    }
+
+    // Same as frequency(Object) for a boxed long, without the boxing
+    int frequency(long key) {
+        return frequencyOf(spread(Long.hashCode(key)));
+    }
+
+    void increment(Object key) {
+        incrementHash(spread(key.hashCode()));
+    }
+
+    void increment(long key) {
+        incrementHash(spread(Long.hashCode(key)));
+    }
+
+    private int frequencyOf(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency + (inDoorkeeper(hash) ? 1 : 0);
+    }
+
+    private void incrementHash(int hash) {
+        if (!inDoorkeeper(hash)) {
+            addToDoorkeeper(hash);
+        } else {
+            int start = (hash & 3) << 2;
+            for (int i = 0; i < 4; i++) {
+                incrementAt(indexOf(hash, i), start + i);
+            }
+        }
+
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        Arrays.fill(doorkeeper, 0L);
+        additions /= 2;
+    }
+
+    private boolean inDoorkeeper(int hash) {
+        int first = hash & doorkeeperMask;
+        int second = (hash >>> 16 | hash << 16) * 0x9E3779B9 & doorkeeperMask;
+        return (doorkeeper[first >>> 6] & (1L << first)) != 0 && (doorkeeper[second >>> 6] & (1L << second)) != 0;
+    }
+
+    private void addToDoorkeeper(int hash) {
+        int first = hash & doorkeeperMask;
+        int second = (hash >>> 16 | hash << 16) * 0x9E3779B9 & doorkeeperMask;
+        doorkeeper[first >>> 6] |= 1L << first;
+        doorkeeper[second >>> 6] |= 1L << second;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
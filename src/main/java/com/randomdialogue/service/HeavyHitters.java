@@ -0,0 +1,106 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The most frequent items of a stream in fixed memory, by the Space-Saving
+ * algorithm: at most capacity items are counted, and a new item replaces the
+ * one with the lowest count, inheriting that count. Any item seen more than
+ * 1/capacity of the time is guaranteed to be counted, so with capacity a few
+ * times the number of items wanted the top of the list is reliable. Counts are
+ * halved every 10 * capacity additions so yesterday's phrases fade out.
+ *
+ * Items are grouped by a key, and each keeps the latest value added under it.
+ * Counters are also kept ordered by count, so finding the one to replace
+ * doesn't scan them all on the chat thread. All methods take the lock.
+ */
+class HeavyHitters {
+    private final int capacity;
+    private final int sampleSize;
+    private final Map<String, Counter> counters;
+    // Lowest count first, oldest counter first among equal counts
+    private final TreeSet<Counter> byCount = new TreeSet<>(
+            Comparator.comparingLong((Counter c) -> c.count).thenComparingLong(c -> c.id));
+    private int additions;
+    private long nextId;
+
+    HeavyHitters(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.sampleSize = this.capacity * 10;
+        this.counters = new HashMap<>(this.capacity * 4 / 3 + 1);
+    }
+
+    synchronized void add(String key, String value) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            long inherited = 0;
+            if (counters.size() >= capacity) {
+                Counter least = byCount.pollFirst();
+                counters.remove(least.key);
+                inherited = least.count;
+            }
+            counter = new Counter(key, inherited, nextId++);
+            counters.put(key, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count++;
+        counter.value = value;
+        byCount.add(counter);
+
+        if (++additions >= sampleSize) {
+            additions = 0;
+            // Halving keeps the order, but the set is rebuilt rather than edited in place
+            byCount.clear();
+            for (Iterator<Counter> it = counters.values().iterator(); it.hasNext();) {
+                Counter c = it.next();
+                c.count /= 2;
+                if (c.count == 0) {
+                    it.remove();
+                } else {
+                    byCount.add(c);
+                }
+            }
+        }
+    }
+
+    // Latest values of the n most frequent keys seen at least minCount times, most frequent first
+    synchronized List<String> top(int n, long minCount) {
+        List<Counter> ranked = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            if (counter.count >= minCount) {
+                ranked.add(counter);
+            }
+        }
+        ranked.sort(Comparator.comparingLong((Counter c) -> c.count).reversed());
+
+        List<String> top = new ArrayList<>(Math.min(n, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < n; i++) {
+            top.add(ranked.get(i).value);
+        }
+        return top;
+    }
+
+    synchronized int size() {
+        return counters.size();
+    }
+
+    private static final class Counter {
+        final String key;
+        final long id;
+        long count;
+        String value;
+
+        Counter(String key, long count, long id) {
+            this.key = key;
+            this.count = count;
+            this.id = id;
+        }
+    }
+}
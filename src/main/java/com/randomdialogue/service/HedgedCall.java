@@ -0,0 +1,91 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Races a primary request against hedge requests started later, keeps the first
+ * successful answer and cancels the rest. The call only fails once every
+ * request that was started has failed, with the first error seen. Cancelling
+ * the result cancels every request, which aborts their HTTP exchanges.
+ */
+class HedgedCall {
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private final List<CompletableFuture<String>> legs = new ArrayList<>();
+    private final Runnable onHedgeWin;
+
+    private int running;
+    private Throwable firstError;
+
+    HedgedCall(CompletableFuture<String> primary, Runnable onHedgeWin) {
+        this.onHedgeWin = onHedgeWin;
+        addLeg(primary);
+        result.whenComplete((content, error) -> {
+            if (result.isCancelled()) {
+                cancelOthers(null);
+            }
+        });
+    }
+
+    // False once the race is decided, e.g. the primary answered or already failed
+    boolean canHedge() {
+        return !result.isDone();
+    }
+
+    void addHedge(CompletableFuture<String> hedge) {
+        addLeg(hedge);
+        if (result.isDone()) {
+            hedge.cancel(true);
+        }
+    }
+
+    CompletableFuture<String> getResult() {
+        return result;
+    }
+
+    private void addLeg(CompletableFuture<String> leg) {
+        synchronized (this) {
+            legs.add(leg);
+            running++;
+        }
+        leg.whenComplete((content, error) -> onLegDone(leg, content, error));
+    }
+
+    private void onLegDone(CompletableFuture<String> leg, String content, Throwable error) {
+        boolean allFailed;
+        boolean isHedge;
+        synchronized (this) {
+            running--;
+            if (error != null && firstError == null) {
+                firstError = error;
+            }
+            allFailed = error != null && running == 0;
+            isHedge = legs.indexOf(leg) > 0;
+        }
+
+        if (error == null) {
+            if (result.complete(content)) {
+                if (isHedge) {
+                    onHedgeWin.run();
+                }
+                cancelOthers(leg);
+            }
+        } else if (allFailed) {
+            result.completeExceptionally(firstError);
+        }
+    }
+
+    // Cancels every leg but the winner, which is null to cancel them all
+    private void cancelOthers(CompletableFuture<String> winner) {
+        List<CompletableFuture<String>> losers;
+        synchronized (this) {
+            losers = new ArrayList<>(legs);
+        }
+        for (CompletableFuture<String> leg : losers) {
+            if (leg != winner) {
+                leg.cancel(true);
+            }
+        }
+    }
+}
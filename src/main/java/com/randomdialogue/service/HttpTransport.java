@@ -0,0 +1,24 @@
+package com.randomdialogue.service;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends provider requests with a UTF-8 JSON body. Implementations complete the returned future with the
+ * raw response, or exceptionally with an IOException if the exchange failed.
+ * Cancelling the future aborts the underlying HTTP exchange.
+ */
+interface HttpTransport extends Closeable {
+
+    CompletableFuture<TransportResponse> post(String endpoint, byte[] body, Map<String, String> headers);
+
+    // Streams a server-sent event response into the listener. The exchange is
+    // aborted as soon as the listener returns false. A successful stream completes
+    // with an empty body; error responses carry the raw body as usual.
+    CompletableFuture<TransportResponse> postStreaming(String endpoint, byte[] body, Map<String, String> headers,
+            SseParser.Listener listener);
+
+    // Short name shown in llm_info/debug output
+    String getName();
+}
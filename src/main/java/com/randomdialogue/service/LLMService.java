@@ -1,7 +1,7 @@
 package com.randomdialogue.service;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,18 +11,13 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
-
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
-import org.apache.hc.core5.http.ClassicHttpResponse;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.entity.StringEntity;
-import org.apache.hc.core5.util.Timeout;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import com.randomdialogue.config.RandomDialogueConfig;
 import com.randomdialogue.filter.FilterDefinition;
@@ -30,12 +25,101 @@ import com.randomdialogue.filter.FilterManager;
 
 public class LLMService {
     private static final Logger LOGGER = Logger.getLogger(LLMService.class.getName());
-    private static final Gson GSON = new Gson();
-
-    private final CloseableHttpClient httpClient;
+    // Upper bound for max_tokens on a batched request
+    private static final int MAX_BATCH_TOKENS = 4000;
+    // Comes first in every batch prompt, so it is cached like filter instructions
+    private static final String BATCH_INSTRUCTIONS = "Below are numbered chat messages. "
+            + "Transform each one independently, using the style given for that item "
+            + "and following all the rules above.\n"
+            + "Respond with ONLY a JSON object of the form {\"items\": [{\"id\": 1, \"text\": \"...\"}]} "
+            + "with one entry per item, where \"text\" is the transformed message.\n";
+    private static final byte[] ENCODED_BATCH_INSTRUCTIONS = RequestTemplate.encode(BATCH_INSTRUCTIONS);
+    // Latency samples needed before a provider's latency distribution is used
+    // to time hedges or predict deadline misses
+    private static final int LATENCY_MIN_SAMPLES = 20;
+    // Rough characters-per-token ratio for estimating request size
+    private static final int CHARS_PER_TOKEN = 4;
+    // Per-player rate limiters idle this long are dropped by the cleanup task
+    private static final long IDLE_LIMITER_NANOS = TimeUnit.MINUTES.toNanos(10);
+    // Stands in for the player in background requests (pregeneration, variant top-ups);
+    // can't be a Minecraft name, so has no history
+    private static final String BACKGROUND_PLAYER = "[background]";
+    // Background requests only run while at least this share of the rate budget
+    // and of the concurrency limit is unused
+    private static final double BACKGROUND_SPARE_BUDGET = 0.5;
+    // Without a rate budget, background requests also wait this long after a live call
+    private static final long BACKGROUND_QUIET_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Cache sizes and times to live the hit rate is predicted for, besides the configured ones
+    private static final int[] CANDIDATE_CACHE_SIZES = {
+            100, 250, 500, 1000, 2500, 5000, 10_000, 25_000, 50_000, 100_000 };
+    private static final long[] CANDIDATE_CACHE_TTL_MINUTES = { 5, 15, 30, 60, 240, 1440 };
+    // Keys tracked for the predictions, however many the server sees
+    private static final int MISS_RATIO_SAMPLES = 4096;
+    // Lookups needed before the cache is resized on the predictions
+    private static final long AUTO_SIZE_MIN_LOOKUPS = 1000;
+    // A smaller cache is chosen if predicted to hit at most this much less often
+    private static final double AUTO_SIZE_TOLERANCE = 0.01;
+    // Rough memory per cache entry, key, transformation and bookkeeping included
+    private static final long HEAP_ENTRY_BYTES = 512;
+    private static final long OFF_HEAP_ENTRY_BYTES = 256;
+
+    private final HttpTransport transport;
     private final ExecutorService executor;
-    private final Map<String, CachedResponse> cache;
-    private final Map<String, RateLimiter> rateLimiters;
+    private final ExecutorMetrics executorMetrics;
+    private final LatencyRecorder providerLatency = new LatencyRecorder();
+    private final LatencyRecorder queueWait = new LatencyRecorder();
+    private final AtomicLong deadlineMisses = new AtomicLong();
+    private final LatencyRecorder timeToFirstTokenLatency = new LatencyRecorder();
+    private final AtomicLong streamsStoppedEarly = new AtomicLong();
+    // Keyed by provider/model
+    private final Map<String, LatencyRecorder> latencyByProvider = new ConcurrentHashMap<>();
+    private final AtomicLong responseTimeouts = new AtomicLong();
+    private final AtomicLong transformationTimeouts = new AtomicLong();
+    private final TokenBucket hedgeBudget;
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+    private final ProviderRouter router;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private final Map<String, RateBudget> rateBudgets = new ConcurrentHashMap<>();
+    private final AtomicLong circuitRejections = new AtomicLong();
+    private final Map<String, AtomicLong> retriesByProvider = new ConcurrentHashMap<>();
+    private final Map<String, TokenUsage> tokenUsage = new ConcurrentHashMap<>();
+    private final Map<String, RequestTemplate> requestTemplates = new ConcurrentHashMap<>();
+    private final AtomicLong requestTemplateBuilds = new AtomicLong();
+    // Filter name -> encoded instructions, valid for encodedInstructionsVersion of the filters
+    private final Map<String, byte[]> encodedInstructions = new ConcurrentHashMap<>();
+    private volatile int encodedInstructionsVersion = -1;
+    // Cache key -> time of the last failed transformation
+    private final Map<String, Long> recentFailures = new ConcurrentHashMap<>();
+    private final AtomicLong negativeCacheHits = new AtomicLong();
+    private final MessageBatcher batcher;
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong batchedMessages = new AtomicLong();
+    private final AtomicLong batchItemsRetried = new AtomicLong();
+    private final CacheStore<String, ResponseVariants> cache;
+    // Null unless both the cache and the disk cache are enabled
+    private final DiskCache diskCache;
+    private final CacheKeys cacheKeys = new CacheKeys();
+    // Null unless cache size estimation is enabled
+    private final MissRatioCurve missRatioCurve;
+    private final AtomicLong cacheResizes = new AtomicLong();
+    // Null unless fuzzy cache lookups are enabled
+    private final SimilarityIndex similarityIndex;
+    private final AtomicLong fuzzyCacheHits = new AtomicLong();
+    // Null unless pregeneration is enabled
+    private final Pregenerator pregenerator;
+    private final TokenBucket variantTopUpBudget;
+    // Cache keys with a variant top-up pending, so a popular message gets one at a time
+    private final Set<String> variantTopUpsInFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong variantTopUps = new AtomicLong();
+    private final AtomicLong variantChoices = new AtomicLong();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    // When the last live request went to the provider, for hasSpareCapacity()
+    private final AtomicLong lastLiveCallNanos = new AtomicLong(System.nanoTime() - BACKGROUND_QUIET_NANOS);
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final Map<String, TokenBucket> rateLimiters;
     private final RandomDialogueConfig config;
     private final FilterManager filterManager;
 
@@ -52,17 +136,31 @@ public class LLMService {
             .ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
     public LLMService(RandomDialogueConfig config, FilterManager filterManager) {
+        this(config, filterManager, null);
+    }
+
+    // transport stands in for the configured one when not null, e.g. a stub in tests
+    LLMService(RandomDialogueConfig config, FilterManager filterManager, HttpTransport transport) {
         this.config = config;
         this.filterManager = filterManager;
-        this.httpClient = createHttpClient();
-        this.executor = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "LLM-Service");
-            t.setDaemon(true);
-            return t;
-        });
-        this.cache = new ConcurrentHashMap<>();
+        this.executorMetrics = new ExecutorMetrics();
+        this.executor = createExecutor();
+        this.transport = transport != null ? transport : createTransport();
+        this.router = createRouter();
+        this.hedgeBudget = new TokenBucket(config.hedgeMaxPerMinute, 60000);
+        this.batcher = config.batchingEnabled
+                ? new MessageBatcher(config.batchWindowMs, config.batchMaxSize, executor, this::sendBatch)
+                : null;
+        this.cache = createCache();
+        this.missRatioCurve = createMissRatioCurve();
+        this.diskCache = openDiskCache();
+        this.similarityIndex = config.cacheEnabled && config.fuzzyCacheEnabled
+                ? new SimilarityIndex(config.cacheSize)
+                : null;
         this.rateLimiters = new ConcurrentHashMap<>();
         this.conversationHistory = new ConcurrentHashMap<>();
+        this.pregenerator = createPregenerator();
+        this.variantTopUpBudget = new TokenBucket(config.cacheVariantTopUpsPerMinute, 60000);
 
         // Initialize debug log
         initializeDebugLog();
@@ -71,15 +169,102 @@ public class LLMService {
         startCacheCleanup();
     }
 
-    private CloseableHttpClient createHttpClient() {
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(Timeout.ofSeconds(config.timeoutSeconds))
-                .setResponseTimeout(Timeout.ofSeconds(config.timeoutSeconds))
-                .build();
+    private ExecutorService createExecutor() {
+        if ("virtual".equals(config.executorMode)) {
+            // One virtual thread per transformation, blocking I/O no longer pins a platform thread
+            executorMetrics.startPinningMonitor("LLM-Service");
+            return Executors.newThreadPerTaskExecutor(
+                    executorMetrics.instrument(Thread.ofVirtual().name("LLM-Service-", 0).factory()));
+        }
+
+        return Executors.newCachedThreadPool(executorMetrics.instrument(r -> {
+            Thread t = new Thread(r, "LLM-Service");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    // Executor for stages chained onto transformation futures, so they never run
+    // on an HTTP I/O thread
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private HttpTransport createTransport() {
+        return switch (config.httpTransport) {
+            case "async" -> new AsyncHttpTransport(config);
+            default -> new BlockingHttpTransport(config, executor);
+        };
+    }
+
+    private ProviderRouter createRouter() {
+        if (!config.routingEnabled) {
+            return null;
+        }
+
+        // Only route to providers that can actually be called
+        Map<String, Double> weights = new LinkedHashMap<>();
+        config.routingWeights.forEach((provider, weight) -> {
+            if (weight > 0 && config.hasValidApiKey(provider)) {
+                weights.put(provider.toLowerCase(), weight);
+            }
+        });
+        if (weights.isEmpty()) {
+            LOGGER.warning("Routing enabled but no weighted provider has an API key, using " + config.llmProvider);
+            return null;
+        }
+        return new ProviderRouter(weights, config.llmProvider.toLowerCase());
+    }
+
+    private CacheStore<String, ResponseVariants> createCache() {
+        int size = config.cacheEnabled ? config.cacheSize : 0;
+        long ttlMillis = config.cacheTtlMinutes * 60_000L;
+        return switch (config.cacheStorage) {
+            case "off_heap" -> new OffHeapCache<>(size, config.cacheOffHeapMb * 1024L * 1024L, ttlMillis,
+                    ResponseVariants::encode, ResponseVariants::decode);
+            default -> new TinyLfuCache<>(size, ttlMillis);
+        };
+    }
+
+    private MissRatioCurve createMissRatioCurve() {
+        // Auto sizing needs the predictions even if they aren't wanted in llm_stats
+        if (!config.cacheEnabled || (!config.cacheSizeEstimationEnabled && !config.cacheAutoSizeEnabled)) {
+            return null;
+        }
+        int[] sizes = IntStream.concat(Arrays.stream(CANDIDATE_CACHE_SIZES),
+                IntStream.of(Math.max(1, config.cacheSize))).distinct().sorted().toArray();
+        long[] ttls = LongStream.concat(Arrays.stream(CANDIDATE_CACHE_TTL_MINUTES),
+                LongStream.of(config.cacheTtlMinutes)).distinct().sorted()
+                .map(minutes -> minutes * 60_000L).toArray();
+        return new MissRatioCurve(sizes, ttls, MISS_RATIO_SAMPLES);
+    }
+
+    private DiskCache openDiskCache() {
+        if (!config.cacheEnabled || !config.diskCacheEnabled) {
+            return null;
+        }
+        try {
+            return DiskCache.open(Paths.get(config.diskCachePath));
+        } catch (IOException e) {
+            LOGGER.warning("Disk cache unavailable, caching in memory only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Pregenerator createPregenerator() {
+        if (!config.cacheEnabled || !config.pregenerationEnabled || filterManager == null) {
+            return null;
+        }
+        Pregenerator pregenerator = new Pregenerator(config.pregenerationTopPhrases,
+                filterManager::getEnabledFilters, this::isCachedOrRecentlyFailed, this::pregenerate,
+                this::hasSpareCapacity);
+        pregenerator.start(config.pregenerationPerMinute);
+        return pregenerator;
+    }
 
-        return HttpClientBuilder.create()
-                .setDefaultRequestConfig(requestConfig)
-                .build();
+    // Provider -> current routing summary, empty when routing is off
+    public Map<String, String> getRoutingStatus() {
+        return router != null ? router.describe() : Map.of();
     }
 
     private void initializeDebugLog() {
@@ -358,7 +543,14 @@ public class LLMService {
         writeToDebugLog("Conversation history for player: " + playerName);
     }
 
+    // Static instructions first and per-message context last, so the start of the
+    // prompt is the same for every message with the filter and providers can cache it
     private String buildContextPrompt(String playerName, String currentMessage, FilterDefinition filter) {
+        return buildFilterInstructions(filter) + buildMessageContext(playerName, currentMessage) + currentMessage;
+    }
+
+    // The part of the prompt that depends on this player and message, up to the message itself
+    private String buildMessageContext(String playerName, String currentMessage) {
         LinkedList<ChatMessage> history = conversationHistory.get(playerName);
         StringBuilder contextBuilder = new StringBuilder();
 
@@ -374,8 +566,8 @@ public class LLMService {
 
         // Check if message contains quoted text that should be preserved
         if (currentMessage.contains("\"")) {
-            contextBuilder.append(
-                    "IMPORTANT: This message contains quoted text in \"quotes\" - preserve ALL quoted sections exactly as written!\n\n");
+            contextBuilder.append("IMPORTANT: This message contains quoted text in \"quotes\" - "
+                    + "preserve ALL quoted sections exactly as written!\n\n");
         }
 
         // Check if message is complaining about the mod
@@ -386,17 +578,27 @@ public class LLMService {
                     .append("Make it sound like the player LOVES the mod instead of complaining about it!\n\n");
         }
 
-        contextBuilder.append("Transform the following message using the \"")
-                .append(filter.name)
-                .append("\" style:\n\n")
-                .append("Style instructions: ")
-                .append(filter.prompt)
-                .append("\n\nMessage to transform: ")
-                .append(currentMessage);
-
+        contextBuilder.append("Message to transform: ");
         return contextBuilder.toString();
     }
 
+    // The part of the prompt that only changes when filters.json does
+    private static String buildFilterInstructions(FilterDefinition filter) {
+        return "Transform the following message using the \"" + filter.name + "\" style:\n\n"
+                + "Style instructions: " + filter.prompt + "\n\n";
+    }
+
+    // Filter instructions pre-encoded for RequestTemplate, dropped whenever the filters change
+    private byte[] encodedInstructionsFor(FilterDefinition filter) {
+        int version = filterManager != null ? filterManager.getVersion() : 0;
+        if (version != encodedInstructionsVersion) {
+            encodedInstructions.clear();
+            encodedInstructionsVersion = version;
+        }
+        return encodedInstructions.computeIfAbsent(filter.name,
+                k -> RequestTemplate.encode(buildFilterInstructions(filter)));
+    }
+
     private boolean isModComplaint(String message) {
         String lower = message.toLowerCase();
         String[] modKeywords = { "chat filter", "filter mod", "mod", "transformation", "transform", "this", "it" };
@@ -426,77 +628,130 @@ public class LLMService {
 
     public CompletableFuture<TransformationResult> transformMessageAsync(String originalMessage,
             FilterDefinition filter, String playerName) {
-        return CompletableFuture.supplyAsync(() -> {
-            long startTime = System.currentTimeMillis();
-            Exception lastError = null;
-            String transformed = null;
-
-            // Check if message is fully quoted - if so, skip transformation
-            if (isFullyQuoted(originalMessage)) {
-                if (isDoubleQuoted(originalMessage)) {
-                    // Double quoted; ""message"" -> "message" (remove outer quotes only)
-                    String result = removeOuterQuotes(originalMessage);
-                    writeToDebugLog("DOUBLE QUOTED - Removing outer quotes: " + originalMessage + " -> " + result);
-                    return new TransformationResult(result, null);
-                } else {
-                    // Single quoted: "message" -> message (remove quotes entirely)
-                    String result = removeOuterQuotes(originalMessage);
-                    writeToDebugLog("SINGLE QUOTED - Removing quotes entirely: " + originalMessage + " -> " + result);
-                    return new TransformationResult(result, null);
-                }
-            }
+        long startTime = System.currentTimeMillis();
+        long deadlineNanos = config.chatLatencySloMs > 0
+                ? System.nanoTime() + config.chatLatencySloMs * 1_000_000L
+                : DeadlineQueue.NO_DEADLINE;
+
+        return CompletableFuture.supplyAsync(() -> resolveWithoutApi(originalMessage, filter, playerName, startTime),
+                executor)
+                .thenComposeAsync(resolved -> {
+                    if (resolved != null) {
+                        return CompletableFuture.completedFuture(resolved);
+                    }
+                    return requestTransformation(originalMessage, filter, playerName, startTime, deadlineNanos);
+                }, executor);
+    }
 
-            // Check for empty/whitespace-only messages EARLY
-            if (originalMessage.trim().isEmpty()) {
-                return new TransformationResult(originalMessage, null);
+    // Handles everything that can be answered without calling the provider.
+    // Returns null if an API call is needed.
+    private TransformationResult resolveWithoutApi(String originalMessage, FilterDefinition filter,
+            String playerName, long startTime) {
+        // Check if message is fully quoted - if so, skip transformation
+        if (isFullyQuoted(originalMessage)) {
+            if (isDoubleQuoted(originalMessage)) {
+                // Double quoted; ""message"" -> "message" (remove outer quotes only)
+                String result = removeOuterQuotes(originalMessage);
+                writeToDebugLog("DOUBLE QUOTED - Removing outer quotes: " + originalMessage + " -> " + result);
+                return new TransformationResult(result, null);
+            } else {
+                // Single quoted: "message" -> message (remove quotes entirely)
+                String result = removeOuterQuotes(originalMessage);
+                writeToDebugLog("SINGLE QUOTED - Removing quotes entirely: " + originalMessage + " -> " + result);
+                return new TransformationResult(result, null);
             }
+        }
 
-            if (config.rateLimitEnabled && !checkRateLimit(playerName)) {
-                writeToDebugLog("RATE LIMIT EXCEEDED - Returning original message for player: " + playerName);
-                return new TransformationResult(originalMessage, null);
-            }
+        // Check for empty/whitespace-only messages EARLY
+        if (originalMessage.trim().isEmpty()) {
+            return new TransformationResult(originalMessage, null);
+        }
 
-            try {
-                // CHECK CACHE FIRST
-                String cacheKey = getCacheKey(originalMessage, filter, playerName);
-                CachedResponse cached = cache.get(cacheKey);
-                if (cached != null && !cached.isExpired()) {
-                    writeToDebugLog("CACHE HIT for " + playerName + ": " + originalMessage);
+        if (pregenerator != null) {
+            pregenerator.record(originalMessage);
+        }
 
-                    // Add cached result to history
-                    addMessageToHistory(playerName, cached.response, true);
+        if (config.rateLimitEnabled && !checkRateLimit(playerName)) {
+            writeToDebugLog("RATE LIMIT EXCEEDED - Returning original message for player: " + playerName);
+            return new TransformationResult(originalMessage, null);
+        }
 
-                    // Check for quote preservation issues
-                    String cacheFollowUpMessage = checkQuotePreservation(originalMessage, cached.response, playerName);
+        // CHECK CACHE FIRST
+        String cacheKey = getCacheKey(originalMessage, filter, playerName);
+        if (missRatioCurve != null) {
+            missRatioCurve.record(cacheKey, System.currentTimeMillis());
+        }
+        ResponseVariants variants = config.cacheEnabled ? cache.get(cacheKey) : null;
+        if (variants == null && diskCache != null) {
+            // Transformations from before a restart or reload, kept for the rest of their time to live
+            DiskCache.Hit hit = diskCache.get(cacheKey, config.cacheTtlMinutes * 60_000L);
+            if (hit != null) {
+                variants = ResponseVariants.decode(hit.value());
+                cache.put(cacheKey, variants, hit.ageMillis());
+                indexForFuzzyLookup(originalMessage, filter, cacheKey);
+            }
+        }
+        String cached;
+        if (variants != null) {
+            cached = variants.pick();
+            topUpVariants(cacheKey, originalMessage, filter, variants);
+        } else {
+            cached = findSimilarCached(originalMessage, filter, playerName);
+        }
+        if (cached != null) {
+            writeToDebugLog("CACHE HIT for " + playerName + ": " + originalMessage);
 
-                    // Log successful transformation from cache
-                    logTransformationResult(playerName, originalMessage, cached.response, filter, startTime, true,
-                            null);
+            // Add cached result to history
+            addMessageToHistory(playerName, cached, true);
 
-                    return new TransformationResult(cached.response, cacheFollowUpMessage);
-                }
+            // Check for quote preservation issues
+            String cacheFollowUpMessage = checkQuotePreservation(originalMessage, cached, playerName);
 
-                // Call the LLM API
-                transformed = callLLMAPI(originalMessage, filter, playerName);
+            // Log successful transformation from cache
+            logTransformationResult(playerName, originalMessage, cached, filter, startTime, true, null);
 
-                // Cache the result
-                if (config.cacheEnabled && transformed != null) {
-                    cache.put(cacheKey, new CachedResponse(transformed, System.currentTimeMillis(), config));
-                }
+            return new TransformationResult(cached, cacheFollowUpMessage);
+        }
 
-                // Add transformed message to history
-                addMessageToHistory(playerName, transformed, true);
+        // Don't retry a message that just failed, it would most likely fail again
+        Long failedAt = recentFailures.get(cacheKey);
+        if (failedAt != null && System.currentTimeMillis() - failedAt < config.negativeCacheSeconds * 1000L) {
+            negativeCacheHits.incrementAndGet();
+            writeToDebugLog("NEGATIVE CACHE HIT for " + playerName + ": " + originalMessage);
+            String fallback = config.enableFallback ? originalMessage : "[Message transformation failed]";
+            return new TransformationResult(fallback, null);
+        }
 
-                // Check for quote preservation issues
-                String apiFollowUpMessage = checkQuotePreservation(originalMessage, transformed, playerName);
+        return null;
+    }
 
-                // Log successful transformation
-                logTransformationResult(playerName, originalMessage, transformed, filter, startTime, false, null);
+    private CompletableFuture<TransformationResult> requestTransformation(String originalMessage,
+            FilterDefinition filter, String playerName, long startTime, long deadlineNanos) {
+        String cacheKey = getCacheKey(originalMessage, filter, playerName);
 
-                return new TransformationResult(transformed, apiFollowUpMessage);
-            } catch (Exception e) {
-                lastError = e;
-                LOGGER.severe("Failed to transform message: " + originalMessage + " - " + e.getMessage());
+        CompletableFuture<String> apiCall = joinOrStartCall(cacheKey, originalMessage, filter, playerName,
+                deadlineNanos);
+
+        CompletableFuture<TransformationResult> transformation = apiCall.handleAsync((transformed, throwable) -> {
+            if (apiCall.isCancelled()) {
+                // Timed out below, the fallback has already been returned
+                return null;
+            }
+            if (throwable != null) {
+                Exception e = unwrapException(throwable);
+                if (isCausedBy(e, DeadlineExceededException.class)) {
+                    // Too late to be worth showing, not a provider failure
+                    deadlineMisses.incrementAndGet();
+                    writeToDebugLog("DEADLINE MISSED for " + playerName + ": " + originalMessage);
+                } else if (isCausedBy(e, CircuitOpenException.class)) {
+                    // Counted in llm_stats instead of logged per message during an outage.
+                    // Not negatively cached, so it goes through once the circuit closes.
+                } else {
+                    LOGGER.severe("Failed to transform message: " + originalMessage + " - " + e.getMessage());
+                    if (config.negativeCacheSeconds > 0) {
+                        recentFailures.put(cacheKey, System.currentTimeMillis());
+                    }
+                }
                 String fallback = config.enableFallback ? originalMessage : "[Message transformation failed]";
 
                 // Log failed transformation
@@ -504,7 +759,102 @@ public class LLMService {
 
                 return new TransformationResult(fallback, null);
             }
+
+            // Add transformed message to history
+            addMessageToHistory(playerName, transformed, true);
+
+            // Check for quote preservation issues
+            String apiFollowUpMessage = checkQuotePreservation(originalMessage, transformed, playerName);
+
+            // Log successful transformation
+            logTransformationResult(playerName, originalMessage, transformed, filter, startTime, false, null);
+
+            return new TransformationResult(transformed, apiFollowUpMessage);
         }, executor);
+
+        // End-to-end bound: the SLO if set, otherwise timeout_seconds. Whatever is still
+        // pending then goes out as the fallback. The provider call itself carries on
+        // (bounded by its response timeout) so its answer can still be cached.
+        long budgetMillis = config.chatLatencySloMs > 0 ? config.chatLatencySloMs : config.timeoutSeconds * 1000L;
+        long remainingMillis = Math.max(0, budgetMillis - (System.currentTimeMillis() - startTime));
+        String fallback = config.enableFallback ? originalMessage : "[Message transformation failed]";
+        TransformationResult timedOut = new TransformationResult(fallback, null, true);
+
+        transformation.completeOnTimeout(timedOut, remainingMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    if (result == timedOut) {
+                        transformationTimeouts.incrementAndGet();
+                        apiCall.cancel(true);
+                        writeToDebugLog("TRANSFORMATION TIMEOUT after " + budgetMillis + "ms for " + playerName
+                                + ": " + originalMessage);
+                        logTransformationResult(playerName, originalMessage, fallback, filter, startTime, false,
+                                new TimeoutException("No response within " + budgetMillis + "ms"));
+                    }
+                });
+        return transformation;
+    }
+
+    // Single-flight: identical requests made while one is already pending attach
+    // to it instead of calling the provider again
+    private CompletableFuture<String> joinOrStartCall(String cacheKey, String originalMessage,
+            FilterDefinition filter, String playerName, long deadlineNanos) {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        CompletableFuture<String> pending = inFlight.putIfAbsent(cacheKey, shared);
+        if (pending != null) {
+            coalescedRequests.incrementAndGet();
+            writeToDebugLog("COALESCED with in-flight request for " + playerName + ": " + originalMessage);
+            return pending.copy();
+        }
+
+        // The call this request missed may have finished since the cache was checked.
+        // It stored its reply before leaving the map, so one more look catches it.
+        ResponseVariants stored = config.cacheEnabled ? cache.get(cacheKey) : null;
+        if (stored != null) {
+            inFlight.remove(cacheKey, shared);
+            String cached = stored.pick();
+            shared.complete(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        lastLiveCallNanos.set(System.nanoTime());
+        if (pregenerator != null) {
+            pregenerator.yieldToLive();
+        }
+
+        CompletableFuture<String> apiCall;
+        try {
+            // Call the LLM API, sharing a request with other messages if batching is on
+            apiCall = batcher != null
+                    ? batcher.submit(originalMessage, filter, playerName, deadlineNanos)
+                    : callLLMAPI(originalMessage, filter, playerName, deadlineNanos);
+        } catch (Exception e) {
+            apiCall = CompletableFuture.failedFuture(e);
+        }
+
+        apiCall.whenComplete((transformed, error) -> {
+            // Cache before leaving the in-flight map, so a request arriving in
+            // between sees one or the other
+            if (error == null && config.cacheEnabled && transformed != null) {
+                storeInCache(cacheKey, originalMessage, filter, transformed);
+            }
+            inFlight.remove(cacheKey, shared);
+
+            if (error != null) {
+                shared.completeExceptionally(error);
+            } else {
+                shared.complete(transformed);
+            }
+        });
+        return shared.copy();
+    }
+
+    private static Exception unwrapException(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new LLMException(cause.toString(), cause);
     }
 
     private String checkQuotePreservation(String originalMessage, String transformedMessage, String playerName) {
@@ -569,115 +919,680 @@ public class LLMService {
         return preview + "...";
     }
 
-    private String callLLMAPI(String originalMessage, FilterDefinition filter, String playerName) throws LLMException {
+    private CompletableFuture<String> callLLMAPI(String originalMessage, FilterDefinition filter, String playerName,
+            long deadlineNanos) throws LLMException {
+        // Extra choices would turn streaming off, which matters more for latency than variety
+        int choices = config.streamingEnabled ? 1 : variantTarget();
+        UserPrompt userPrompt = new UserPrompt(encodedInstructionsFor(filter),
+                buildMessageContext(playerName, originalMessage), originalMessage, choices,
+                alternativesFor(originalMessage, filter));
+        String provider = selectProvider();
+        CompletableFuture<String> primaryCall = callProvider(provider, userPrompt, config.maxTokens,
+                originalMessage, deadlineNanos);
+
+        long hedgeDelay = hedgeDelayMillis(provider);
+        if (hedgeDelay < 0) {
+            return primaryCall;
+        }
+
+        HedgedCall call = new HedgedCall(primaryCall, hedgesWon::incrementAndGet);
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            if (!call.canHedge()) {
+                return;
+            }
+            // Hedges have their own budget so a slow primary can't double our spend
+            if (!hedgeBudget.tryAcquire()) {
+                hedgesSkipped.incrementAndGet();
+                return;
+            }
 
-        return switch (config.llmProvider.toLowerCase()) {
-            case "openai" -> callOpenAI(originalMessage, filter, playerName);
-            case "anthropic" -> callAnthropic(originalMessage, filter, playerName);
-            case "groq" -> callGroq(originalMessage, filter, playerName);
-            case "local" -> callLocalAPI(originalMessage, filter, playerName);
-            default -> throw new LLMException("Unsupported LLM provider: " + config.llmProvider);
+            hedgesSent.incrementAndGet();
+            writeToDebugLog("HEDGE to " + config.hedgeProvider + " after " + hedgeDelay + "ms for: "
+                    + originalMessage);
+            CompletableFuture<String> hedge;
+            try {
+                hedge = callProvider(config.hedgeProvider.toLowerCase(), userPrompt, config.maxTokens,
+                        originalMessage, deadlineNanos);
+            } catch (Exception e) {
+                hedge = CompletableFuture.failedFuture(e);
+            }
+            call.addHedge(hedge);
+        });
+        return call.getResult();
+    }
+
+    private String selectProvider() {
+        return router != null ? router.choose(this::isProviderAvailable) : config.llmProvider.toLowerCase();
+    }
+
+    private static boolean isValidProviderName(String provider) {
+        return switch (provider) {
+            case "openai", "anthropic", "groq", "local" -> true;
+            default -> false;
         };
     }
 
-    private String callOpenAI(String originalMessage, FilterDefinition filter, String playerName) throws LLMException {
+    // Null when circuit breaking is disabled
+    private CircuitBreaker circuitBreakerFor(String provider) {
+        if (!config.circuitBreakerEnabled) {
+            return null;
+        }
+        return circuitBreakers.computeIfAbsent(provider, k -> new CircuitBreaker(
+                config.circuitBreakerFailureThreshold, config.circuitBreakerOpenSeconds * 1000L));
+    }
+
+    private boolean isProviderAvailable(String provider) {
+        CircuitBreaker breaker = circuitBreakerFor(provider);
+        return breaker == null || breaker.allowsRequests();
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", config.getCurrentModel());
-        requestBody.put("messages", Arrays.asList(
-                Map.of("role", "system", "content", config.systemPrompt),
-                Map.of("role", "user", "content", buildContextPrompt(playerName, originalMessage, filter))));
-        requestBody.put("max_tokens", config.maxTokens);
-        requestBody.put("temperature", config.temperature);
+    // Provider -> circuit breaker state, for providers that have been called
+    public Map<String, String> getCircuitStates() {
+        Map<String, String> states = new TreeMap<>();
+        circuitBreakers.forEach((provider, breaker) -> states.put(provider, breaker.describe()));
+        return states;
+    }
+
+    // How long to wait for the primary before hedging, or -1 if no hedge should be sent
+    private long hedgeDelayMillis(String provider) {
+        if (!config.hedgingEnabled || config.hedgeProvider.isEmpty()
+                || config.hedgeProvider.equalsIgnoreCase(provider)
+                || !config.hasValidApiKey(config.hedgeProvider)) {
+            return -1;
+        }
+
+        // Wait until the primary's latency distribution means something
+        LatencyRecorder primaryLatency = latencyFor(provider);
+        if (primaryLatency.getSampleCount() < LATENCY_MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(config.hedgeMinDelayMs, primaryLatency.percentile(config.hedgePercentile));
+    }
+
+    private LatencyRecorder latencyFor(String provider) {
+        return latencyByProvider.computeIfAbsent(provider + "/" + config.getModel(provider),
+                k -> new LatencyRecorder());
+    }
+
+    // Percentile of the observed latency times the configured factor, between the
+    // minimum and timeout_seconds. timeout_seconds until there are enough samples.
+    private long responseTimeoutMillis(LatencyRecorder latency) {
+        long max = config.timeoutSeconds * 1000L;
+        if (!config.adaptiveTimeoutEnabled || latency.getSampleCount() < LATENCY_MIN_SAMPLES) {
+            return max;
+        }
+        long adaptive = (long) (latency.percentile(config.adaptiveTimeoutPercentile) * config.adaptiveTimeoutFactor);
+        return Math.max(config.adaptiveTimeoutMinMs, Math.min(adaptive, max));
+    }
+
+    // Fails the exchange with a TimeoutException, and aborts it, once it has run
+    // longer than the provider's response timeout
+    private CompletableFuture<TransportResponse> withResponseTimeout(String provider,
+            CompletableFuture<TransportResponse> call) {
+        LatencyRecorder latency = latencyFor(provider);
+        long timeoutMillis = responseTimeoutMillis(latency);
+        CompletableFuture<TransportResponse> timed = call.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        timed.whenComplete((response, error) -> {
+            if (timed.isCancelled()) {
+                call.cancel(true);
+            } else if (error != null && isCausedBy(error, TimeoutException.class) && !call.isDone()) {
+                responseTimeouts.incrementAndGet();
+                // Only successes are recorded otherwise. Without this sample a provider
+                // that slows down would keep timing out against its old percentile.
+                latency.record(timeoutMillis);
+                writeToDebugLog("RESPONSE TIMEOUT from " + provider + " after " + timeoutMillis + "ms");
+                call.cancel(true);
+            }
+        });
+        return timed;
+    }
+
+    // Median provider latency, or 0 until there are enough samples to go on
+    private long expectedLatencyNanos(String provider) {
+        LatencyRecorder latency = latencyFor(provider);
+        if (latency.getSampleCount() < LATENCY_MIN_SAMPLES) {
+            return 0;
+        }
+        return latency.percentile(50) * 1_000_000L;
+    }
+
+    private void sendBatch(List<MessageBatcher.BatchItem> items) {
+        if (items.size() == 1) {
+            sendSingly(items.get(0));
+            return;
+        }
+
+        batchesSent.incrementAndGet();
+        batchedMessages.addAndGet(items.size());
+        writeToDebugLog("BATCH of " + items.size() + " messages");
+
+        CompletableFuture<String> batchCall;
+        try {
+            int maxTokens = Math.min(config.maxTokens * items.size(), MAX_BATCH_TOKENS);
+            // The batch has to make it in time for its most urgent message
+            long deadlineNanos = items.stream().mapToLong(item -> item.deadlineNanos).min()
+                    .orElse(DeadlineQueue.NO_DEADLINE);
+            UserPrompt userPrompt = new UserPrompt(ENCODED_BATCH_INSTRUCTIONS, buildBatchItems(items), "");
+            batchCall = callProvider(selectProvider(), userPrompt, maxTokens, null, deadlineNanos);
+        } catch (Exception e) {
+            batchCall = CompletableFuture.failedFuture(e);
+        }
+
+        batchCall.whenCompleteAsync((content, error) -> {
+            if (error != null) {
+                items.forEach(item -> item.result.completeExceptionally(error));
+                return;
+            }
 
-        return executeRequest(config.getCurrentEndpoint(), requestBody, config.getCurrentApiKey(), "Bearer ");
+            Map<Integer, String> replies = MessageBatcher.parseReply(content);
+            if (replies.isEmpty()) {
+                writeToDebugLog("BATCH reply had no readable items: " + content);
+            }
+            // Missing or unreadable entries are asked for on their own
+            for (MessageBatcher.BatchItem item : MessageBatcher.completeFromReply(items, replies,
+                    LLMService::stripSurroundingQuotes)) {
+                batchItemsRetried.incrementAndGet();
+                writeToDebugLog("BATCH item missing from reply, retrying singly: " + item.originalMessage);
+                sendSingly(item);
+            }
+        }, executor);
     }
 
-    private String callAnthropic(String originalMessage, FilterDefinition filter, String playerName)
-            throws LLMException {
+    private void sendSingly(MessageBatcher.BatchItem item) {
+        CompletableFuture<String> call;
+        try {
+            call = callLLMAPI(item.originalMessage, item.filter, item.playerName, item.deadlineNanos);
+        } catch (Exception e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((transformed, error) -> {
+            if (error != null) {
+                item.result.completeExceptionally(error);
+            } else {
+                item.result.complete(transformed);
+            }
+        });
+    }
+
+    // Follows BATCH_INSTRUCTIONS in the prompt
+    private String buildBatchItems(List<MessageBatcher.BatchItem> items) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            MessageBatcher.BatchItem item = items.get(i);
+            prompt.append("\n### Item ").append(i + 1).append("\n")
+                    .append(buildContextPrompt(item.playerName, item.originalMessage, item.filter))
+                    .append("\n");
+        }
+
+        return prompt.toString();
+    }
+
+    // originalMessage is null for batched requests, which are never streamed and ask for one choice
+    private CompletableFuture<String> callProvider(String provider, UserPrompt userPrompt, int maxTokens,
+            String originalMessage, long deadlineNanos) throws LLMException {
+        if (!isValidProviderName(provider)) {
+            throw new LLMException("Unsupported LLM provider: " + provider);
+        }
+
+        boolean batch = originalMessage == null;
+        int choices = batch || userPrompt.alternatives == null || !supportsChoices(provider) ? 1 : userPrompt.choices;
+        boolean streaming = config.streamingEnabled && !batch && choices == 1;
+        byte[] body = requestTemplateFor(provider).render(userPrompt.instructions, userPrompt.context,
+                userPrompt.message, maxTokens, batch, streaming, choices);
+        String endpoint = config.getEndpoint(provider);
+        Consumer<List<String>> alternatives = choices > 1 ? userPrompt.alternatives : null;
+        // Providers count max_tokens once per choice up front
+        int reservedTokens = maxTokens * choices;
+
+        // Claimed only once nothing before the request can throw, since a claimed
+        // half-open breaker lets no other request through until this one settles
+        CircuitBreaker breaker = circuitBreakerFor(provider);
+        if (breaker != null && !breaker.tryAcquire()) {
+            // Provider looks down, go straight to the fallback instead of waiting for a timeout
+            circuitRejections.incrementAndGet();
+            writeToDebugLog("CIRCUIT OPEN for " + provider + ", failing fast");
+            return CompletableFuture.failedFuture(new CircuitOpenException(provider));
+        }
+
+        try {
+            return switch (provider) {
+                case "openai", "groq" -> executeRequest(provider, endpoint, body, reservedTokens, streaming,
+                        config.getApiKey(provider), "Bearer ", originalMessage, deadlineNanos, alternatives);
+                case "anthropic" -> executeRequest(provider, endpoint, body, reservedTokens, streaming,
+                        config.getApiKey(provider), "x-api-key", originalMessage, deadlineNanos, alternatives);
+                case "local" -> executeRequest(provider, endpoint, body, reservedTokens, streaming, null, null,
+                        originalMessage, deadlineNanos, alternatives);
+                default -> throw new LLMException("Unsupported LLM provider: " + provider);
+            };
+        } catch (LLMException | RuntimeException e) {
+            // Failed before the request could settle the claim
+            if (breaker != null) {
+                breaker.release();
+            }
+            throw e;
+        }
+    }
+
+    // Whether the provider returns several completions for "n". Groq only accepts
+    // n=1 and Anthropic has no such parameter.
+    private static boolean supportsChoices(String provider) {
+        return provider.equals("openai") || provider.equals("local");
+    }
+
+    // Rebuilt only when the provider's model, the system prompt or the temperature change
+    private RequestTemplate requestTemplateFor(String provider) {
+        String model = config.getModel(provider);
+        RequestTemplate template = requestTemplates.get(provider);
+        if (template != null && template.isBuiltFrom(model, config.systemPrompt, config.temperature,
+                config.promptCachingEnabled)) {
+            return template;
+        }
+        // Under compute so the first burst of requests builds it once
+        return requestTemplates.compute(provider, (k, current) -> {
+            if (current != null && current.isBuiltFrom(model, config.systemPrompt, config.temperature,
+                    config.promptCachingEnabled)) {
+                return current;
+            }
+            requestTemplateBuilds.incrementAndGet();
+            return switch (provider) {
+                case "openai" -> openAITemplate(model);
+                case "anthropic" -> anthropicTemplate(model);
+                case "groq" -> groqTemplate(model);
+                default -> localAPITemplate(model);
+            };
+        });
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", config.getCurrentModel());
-        requestBody.put("max_tokens", config.maxTokens);
-        requestBody.put("system", config.systemPrompt);
+    private RequestTemplate openAITemplate(String model) {
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", model);
         requestBody.put("messages", Arrays.asList(
-                Map.of("role", "user", "content", buildContextPrompt(playerName, originalMessage, filter))));
+                Map.of("role", "system", "content", config.systemPrompt),
+                Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
+        requestBody.put("temperature", config.temperature);
 
-        return executeRequest(config.getCurrentEndpoint(), requestBody, config.getCurrentApiKey(), "x-api-key");
+        return new RequestTemplate(requestBody, model, config.systemPrompt, config.temperature,
+                config.promptCachingEnabled, false, true, true);
     }
 
-    private String callGroq(String originalMessage, FilterDefinition filter, String playerName) throws LLMException {
-        String currentModel = config.getCurrentModel();
+    private RequestTemplate anthropicTemplate(String model) {
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", model);
+        if (config.promptCachingEnabled) {
+            // Cache breakpoints after the system prompt and after the filter instructions,
+            // so messages with any filter share the first and messages with the same filter
+            // share both. Prefixes below the model's minimum cacheable length are sent as usual.
+            Map<String, String> ephemeral = Map.of("type", "ephemeral");
+            requestBody.put("system", List.of(
+                    Map.of("type", "text", "text", config.systemPrompt, "cache_control", ephemeral)));
+            requestBody.put("messages", List.of(Map.of("role", "user", "content", List.of(
+                    Map.of("type", "text", "text", RequestTemplate.INSTRUCTIONS, "cache_control", ephemeral),
+                    Map.of("type", "text", "text", RequestTemplate.USER_CONTENT)))));
+        } else {
+            requestBody.put("system", config.systemPrompt);
+            requestBody.put("messages", Arrays.asList(
+                    Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
+        }
+
+        return new RequestTemplate(requestBody, model, config.systemPrompt, config.temperature,
+                config.promptCachingEnabled, false, false, false);
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", currentModel);
+    private RequestTemplate groqTemplate(String model) {
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", model);
         requestBody.put("messages", Arrays.asList(
                 Map.of("role", "system", "content", config.systemPrompt),
-                Map.of("role", "user", "content", buildContextPrompt(playerName, originalMessage, filter))));
+                Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
 
-        switch (currentModel) {
+        switch (model) {
             case "qwen/qwen3-32b":
                 requestBody.put("reasoning_effort", "none");
                 break;
         }
 
-        return executeRequest(config.getCurrentEndpoint(), requestBody, config.getCurrentApiKey(), "Bearer ");
+        // max_tokens only for batched replies, which are longer than the provider default allows for
+        return new RequestTemplate(requestBody, model, config.systemPrompt, config.temperature,
+                config.promptCachingEnabled, true, false, true);
     }
 
-    private String callLocalAPI(String originalMessage, FilterDefinition filter, String playerName)
-            throws LLMException {
-
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", config.getCurrentModel());
+    private RequestTemplate localAPITemplate(String model) {
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", model);
         requestBody.put("messages", Arrays.asList(
                 Map.of("role", "system", "content", config.systemPrompt),
-                Map.of("role", "user", "content", buildContextPrompt(playerName, originalMessage, filter))));
-        requestBody.put("max_tokens", config.maxTokens);
+                Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
         requestBody.put("temperature", config.temperature);
 
-        return executeRequest(config.getCurrentEndpoint(), requestBody, null, null);
+        return new RequestTemplate(requestBody, model, config.systemPrompt, config.temperature,
+                config.promptCachingEnabled, false, false, true);
     }
 
-    private String executeRequest(String endpoint, Map<String, Object> requestBody, String apiKey, String authHeader)
-            throws LLMException {
-        try {
-            HttpPost request = new HttpPost(endpoint);
-            request.setEntity(new StringEntity(GSON.toJson(requestBody), ContentType.APPLICATION_JSON));
-
-            if (apiKey != null && authHeader != null) {
-                if (authHeader.equals("Bearer ")) {
-                    request.setHeader("Authorization", "Bearer " + apiKey);
-                } else if (authHeader.equals("x-api-key")) {
-                    request.setHeader("x-api-key", apiKey);
-                    request.setHeader("anthropic-version", "2023-06-01");
-                    request.setHeader("Content-Type", "application/json");
-                } else {
-                    request.setHeader(authHeader, apiKey);
+    // alternatives receives any choices beyond the first, null when only one was asked for
+    private CompletableFuture<String> executeRequest(String provider, String endpoint, byte[] body, int maxTokens,
+            boolean streaming, String apiKey, String authHeader, String originalMessage, long deadlineNanos,
+            Consumer<List<String>> alternatives) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (apiKey != null && authHeader != null) {
+            if (authHeader.equals("Bearer ")) {
+                headers.put("Authorization", "Bearer " + apiKey);
+            } else if (authHeader.equals("x-api-key")) {
+                headers.put("x-api-key", apiKey);
+                headers.put("anthropic-version", "2023-06-01");
+                headers.put("Content-Type", "application/json");
+            } else {
+                headers.put(authHeader, apiKey);
+            }
+        }
+
+        boolean isAnthropic = apiKey != null && authHeader.equals("x-api-key");
+
+        // Log the raw request for debugging
+        writeToDebugLog("API REQUEST to " + endpoint + " (" + transport.getName() + " transport"
+                + (streaming ? ", streaming" : "") + "):");
+        writeToDebugLog("Headers: " + headers.keySet());
+        if (config.enableDetailedLlmLogging) {
+            writeToDebugLog("Body: " + new String(body, StandardCharsets.UTF_8));
+        }
+
+        // Rough count of what this request uses against the provider's token limit.
+        // Providers count the requested max_tokens up front.
+        int estimatedTokens = body.length / CHARS_PER_TOKEN + maxTokens;
+
+        CircuitBreaker breaker = circuitBreakerFor(provider);
+        // Set when the request leaves the queues, so provider latency excludes queue wait
+        AtomicLong sentAt = new AtomicLong();
+        CompletableFuture<TransportResponse> exchange;
+        CompletableFuture<String> result;
+
+        if (streaming) {
+            AtomicReference<StreamingResponseAssembler> current = new AtomicReference<>();
+
+            exchange = sendWithRetries(provider, estimatedTokens, deadlineNanos, () -> {
+                // Fresh assembler per attempt, so a retry doesn't append to a failed stream
+                StreamingResponseAssembler attempt = new StreamingResponseAssembler(isAnthropic, originalMessage,
+                        config.maxTokens, config.streamingStopAtSentence);
+                current.set(attempt);
+                sentAt.set(System.nanoTime());
+                return transport.postStreaming(endpoint, body, headers, attempt);
+            });
+            result = exchange
+                    .handleAsync((response, error) -> {
+                        try {
+                            checkResponse(response, error);
+                            StreamingResponseAssembler assembler = current.get();
+
+                            if (assembler.getError() != null) {
+                                throw new LLMException("Streaming request failed: " + assembler.getError());
+                            }
+
+                            String content = assembler.getContent();
+                            if (content.trim().isEmpty()) {
+                                throw new LLMException("Streamed response contained no content");
+                            }
+
+                            long timeToFirstToken = assembler.getTimeToFirstTokenMillis();
+                            if (timeToFirstToken >= 0) {
+                                timeToFirstTokenLatency.record(timeToFirstToken);
+                            }
+                            if (assembler.isStoppedEarly()) {
+                                streamsStoppedEarly.incrementAndGet();
+                            }
+                            int[] usage = assembler.getUsage();
+                            TokenUsage tokens = tokenUsage.computeIfAbsent(provider, k -> new TokenUsage());
+                            if (usage != null) {
+                                tokens.record(usage[0], usage[1], usage[2], usage[3]);
+                            } else {
+                                tokens.recordEstimate(body.length / CHARS_PER_TOKEN,
+                                        content.length() / CHARS_PER_TOKEN);
+                            }
+
+                            writeToDebugLog("STREAMED RESPONSE (first token after " + timeToFirstToken
+                                    + "ms, stopped early: " + assembler.isStoppedEarly() + "): " + content);
+                            return finishContent(content);
+                        } catch (LLMException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor);
+        } else {
+            exchange = sendWithRetries(provider, estimatedTokens, deadlineNanos, () -> {
+                sentAt.set(System.nanoTime());
+                return transport.post(endpoint, body, headers);
+            });
+            result = exchange
+                    .handleAsync((response, error) -> {
+                        try {
+                            checkResponse(response, error);
+
+                            // Log the raw response
+                            if (config.enableDetailedLlmLogging) {
+                                writeToDebugLog("Raw Response: " + response.getBody());
+                            }
+
+                            return parseResponse(provider, response, isAnthropic, alternatives);
+                        } catch (LLMException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor);
+        }
+
+        CompletableFuture<String> content = result.whenComplete((text, error) -> {
+            if (error == null) {
+                long elapsed = (System.nanoTime() - sentAt.get()) / 1_000_000L;
+                providerLatency.record(elapsed);
+                latencyFor(provider).record(elapsed);
+                if (router != null) {
+                    router.recordSuccess(provider, elapsed);
+                }
+                if (breaker != null) {
+                    breaker.recordSuccess();
                 }
+            } else if (exchange.isCancelled() || isCausedBy(error, RejectedExecutionException.class)
+                    || isCausedBy(error, DeadlineExceededException.class)) {
+                // A cancelled exchange (e.g. a losing hedge), a request turned away by
+                // the concurrency limiter or one dropped as too late says nothing about
+                // provider health
+                if (breaker != null) {
+                    breaker.release();
+                }
+            } else if (isProviderFailure(exchange)) {
+                if (router != null) {
+                    router.recordFailure(provider);
+                }
+                if (breaker != null) {
+                    breaker.recordFailure();
+                }
+            } else if (breaker != null) {
+                // A rejected key or request, or a reply we couldn't read, would fail
+                // the same way against a healthy provider
+                breaker.release();
             }
+        });
 
-            // Log the raw request for debugging
-            writeToDebugLog("API REQUEST to " + endpoint + ":");
-            writeToDebugLog("Headers: " + Arrays.toString(request.getHeaders()));
-            writeToDebugLog("Body: " + GSON.toJson(requestBody));
+        // Cancelling the returned future (e.g. a losing hedge) aborts the HTTP exchange
+        content.whenComplete((text, error) -> {
+            if (content.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return content;
+    }
+
+    // Sends the request, retrying transient failures (I/O errors, 408, 429, 5xx) up
+    // to retry_attempts times. Each retry waits for the longer of the backoff and
+    // the provider's Retry-After, and is only made if it can still finish within
+    // the message's deadline, or timeout_seconds from now without one.
+    private CompletableFuture<TransportResponse> sendWithRetries(String provider, int estimatedTokens,
+            long deadlineNanos, Supplier<CompletableFuture<TransportResponse>> request) {
+        long retryDeadline = deadlineNanos != DeadlineQueue.NO_DEADLINE
+                ? deadlineNanos
+                : System.nanoTime() + config.timeoutSeconds * 1_000_000_000L;
+        CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        attempt(provider, estimatedTokens, deadlineNanos, retryDeadline, request, result, 0, 0);
+        return result;
+    }
 
-            try (ClassicHttpResponse response = httpClient.executeOpen(null, request, null)) {
-                String responseBody = new String(response.getEntity().getContent().readAllBytes(),
-                        StandardCharsets.UTF_8);
+    private void attempt(String provider, int estimatedTokens, long deadlineNanos, long retryDeadline,
+            Supplier<CompletableFuture<TransportResponse>> request, CompletableFuture<TransportResponse> result,
+            int retry, long previousDelayMillis) {
+        if (result.isDone()) {
+            // Cancelled while waiting to retry
+            return;
+        }
 
-                // Log the raw response
-                writeToDebugLog("API RESPONSE (Status " + response.getCode() + "):");
-                writeToDebugLog("Raw Response: " + responseBody);
+        CompletableFuture<TransportResponse> exchange = send(provider, estimatedTokens, deadlineNanos, request);
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
 
-                if (response.getCode() != 200) {
-                    throw new LLMException(
-                            "API request failed with status " + response.getCode() + ": " + responseBody);
+        exchange.whenComplete((response, error) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (retry < config.retryAttempts && RetryPolicy.isRetryable(response, error)
+                    && isProviderAvailable(provider)) {
+                long delay = RetryPolicy.nextDelayMillis(previousDelayMillis);
+                long retryAfter = RetryPolicy.retryAfterMillis(response, System.currentTimeMillis());
+                if (retryAfter >= 0) {
+                    delay = Math.max(delay, retryAfter);
                 }
 
-                return parseResponse(responseBody, apiKey != null && authHeader.equals("x-api-key"));
+                long finishBy = System.nanoTime() + delay * 1_000_000L + expectedLatencyNanos(provider);
+                if (finishBy < retryDeadline) {
+                    retriesByProvider.computeIfAbsent(provider, k -> new AtomicLong()).incrementAndGet();
+                    writeToDebugLog("RETRY " + (retry + 1) + "/" + config.retryAttempts + " to " + provider + " in "
+                            + delay + "ms after " + (error != null ? unwrapException(error) : "status "
+                                    + response.statusCode));
+                    long waited = delay;
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(
+                            () -> attempt(provider, estimatedTokens, deadlineNanos, retryDeadline, request, result,
+                                    retry + 1, waited));
+                    return;
+                }
+            }
+
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    // Dispatches once the provider's rate budget allows it, through its
+    // concurrency limiter. Either stage is skipped when disabled. Both queues are
+    // earliest-deadline-first, and a request that can no longer make its deadline
+    // fails with DeadlineExceededException instead of being sent.
+    private CompletableFuture<TransportResponse> send(String provider, int estimatedTokens, long deadlineNanos,
+            Supplier<CompletableFuture<TransportResponse>> request) {
+        long queuedAt = System.nanoTime();
+        Supplier<CompletableFuture<TransportResponse>> checked = () -> {
+            long now = System.nanoTime();
+            queueWait.record((now - queuedAt) / 1_000_000L);
+            long expected = expectedLatencyNanos(provider);
+            if (deadlineNanos != DeadlineQueue.NO_DEADLINE && deadlineNanos - now < expected) {
+                return CompletableFuture.failedFuture(new DeadlineExceededException(
+                        (deadlineNanos - now) / 1_000_000L + "ms left, " + provider + " usually takes "
+                                + expected / 1_000_000L + "ms"));
+            }
+            return withResponseTimeout(provider, request.get());
+        };
+
+        Supplier<CompletableFuture<TransportResponse>> limited = !config.adaptiveConcurrencyEnabled
+                ? checked
+                : () -> concurrencyLimiters.computeIfAbsent(provider, k -> new AdaptiveConcurrencyLimiter(
+                        config.concurrencyInitialLimit, 1, config.maxConnectionsPerRoute, config.concurrencyMaxQueue,
+                        executor)).submit(checked, deadlineNanos);
+
+        if (!config.rateBudgetEnabled) {
+            return limited.get();
+        }
+
+        RateBudget budget = rateBudgets.computeIfAbsent(provider,
+                k -> new RateBudget(config.rateBudgetRpm, config.rateBudgetTpm, executor));
+        CompletableFuture<TransportResponse> exchange = composeCancellable(
+                budget.acquire(estimatedTokens, deadlineNanos), limited);
+        exchange.thenAccept(budget::onResponse);
+        return exchange;
+    }
+
+    // Like thenCompose, but cancelling the returned future also cancels whichever
+    // stage is still pending, so a cancelled request gives up its place in line or
+    // aborts its exchange
+    private <T> CompletableFuture<T> composeCancellable(CompletableFuture<Void> first,
+            Supplier<CompletableFuture<T>> next) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                first.cancel(true);
+            }
+        });
+
+        first.whenCompleteAsync((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+
+            CompletableFuture<T> second;
+            try {
+                second = next.get();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((value, e) -> {
+                if (result.isCancelled()) {
+                    second.cancel(true);
+                }
+            });
+            second.whenComplete((value, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }, executor);
+        return result;
+    }
+
+    private static boolean isCausedBy(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
             }
-        } catch (IOException e) {
-            throw new LLMException("HTTP request failed", e);
+        }
+        return false;
+    }
+
+    // Whether a failed exchange says the provider is struggling: the same I/O errors,
+    // timeouts, 429 and 5xx that are worth a retry
+    private static boolean isProviderFailure(CompletableFuture<TransportResponse> exchange) {
+        TransportResponse response;
+        try {
+            response = exchange.getNow(null);
+        } catch (CompletionException e) {
+            return RetryPolicy.isRetryable(null, e);
+        }
+        return response != null && RetryPolicy.isRetryable(response, null);
+    }
+
+    private void checkResponse(TransportResponse response, Throwable error) throws LLMException {
+        if (error != null) {
+            throw new LLMException("HTTP request failed", unwrapException(error));
+        }
+
+        writeToDebugLog("API RESPONSE (Status " + response.statusCode + ")");
+
+        if (response.statusCode != 200) {
+            throw new LLMException("API request failed with status " + response.statusCode + ": "
+                    + response.getBody());
         }
     }
 
@@ -703,58 +1618,252 @@ public class LLMService {
         return trimmed;
     }
 
-    private String parseResponse(String responseBody, boolean isAnthropic) throws LLMException {
+    private String parseResponse(String provider, TransportResponse response, boolean isAnthropic,
+            Consumer<List<String>> alternatives) throws LLMException {
+        ResponseDecoder.Decoded decoded;
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> responseData = GSON.fromJson(responseBody, Map.class);
-
-            String content = null;
+            decoded = ResponseDecoder.decode(response.openBody(), isAnthropic);
+        } catch (IOException e) {
+            throw new LLMException("Failed to parse JSON response: " + response.getBody(), e);
+        }
 
-            if (isAnthropic) {
-                // Anthropic format
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> contentList = (List<Map<String, Object>>) responseData.get("content");
-                if (contentList != null && !contentList.isEmpty()) {
-                    content = (String) contentList.get(0).get("text");
-                }
-            } else {
-                // OpenAI/Local format
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> choices = (List<Map<String, Object>>) responseData.get("choices");
-                if (choices != null && !choices.isEmpty()) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                    if (message != null) {
-                        content = (String) message.get("content");
-                    }
+        if (decoded.content == null) {
+            throw new LLMException("Unexpected response format: " + response.getBody());
+        }
+        tokenUsage.computeIfAbsent(provider, k -> new TokenUsage()).record(decoded.inputTokens, decoded.outputTokens,
+                decoded.cacheReadTokens, decoded.cacheWriteTokens);
+
+        if (alternatives != null && !decoded.alternatives.isEmpty()) {
+            List<String> extra = new ArrayList<>(decoded.alternatives.size());
+            for (String alternative : decoded.alternatives) {
+                String text = stripSurroundingQuotes(alternative);
+                if (!text.isBlank()) {
+                    extra.add(text);
                 }
             }
+            variantChoices.addAndGet(extra.size());
+            writeToDebugLog("ALTERNATIVE CHOICES: " + extra);
+            alternatives.accept(extra);
+        }
 
-            if (content == null) {
-                throw new LLMException("Unexpected response format: " + responseBody);
-            }
-
-            // Strip surrounding quotes before returning
-            String finalResult = stripSurroundingQuotes(content);
+        return finishContent(decoded.content);
+    }
 
-            // Log the parsed response
-            writeToDebugLog("PARSED RESPONSE: \"" + finalResult + "\"");
+    private String finishContent(String content) {
+        // Strip surrounding quotes before returning
+        String finalResult = stripSurroundingQuotes(content);
 
-            return finalResult;
+        // Log the parsed response
+        writeToDebugLog("PARSED RESPONSE: \"" + finalResult + "\"");
 
-        } catch (JsonSyntaxException e) {
-            throw new LLMException("Failed to parse JSON response: " + responseBody, e);
-        }
+        return finalResult;
     }
 
     private boolean checkRateLimit(String playerName) {
-        RateLimiter limiter = rateLimiters.computeIfAbsent(playerName,
-                k -> new RateLimiter(config.rateLimitPerMinute, 60000));
+        TokenBucket limiter = rateLimiters.computeIfAbsent(playerName,
+                k -> new TokenBucket(config.rateLimitPerMinute, 60000));
         return limiter.tryAcquire();
     }
 
     private String getCacheKey(String message, FilterDefinition filter, String playerName) {
-        return message.hashCode() + ":" + filter.name;
+        return cacheKeys.keyFor(message, filter, config.systemPrompt,
+                filterManager != null ? filterManager.getVersion() : 0);
+    }
+
+    private void storeInCache(String cacheKey, String message, FilterDefinition filter, String transformed) {
+        storeInCache(cacheKey, message, filter, List.of(transformed));
+    }
+
+    // Adds to the entry's variants, up to cache_variants of them
+    private void storeInCache(String cacheKey, String message, FilterDefinition filter, List<String> transformed) {
+        if (transformed.isEmpty()) {
+            return;
+        }
+        int target = variantTarget();
+        ResponseVariants added = ResponseVariants.of(transformed.get(0))
+                .plus(transformed.subList(1, transformed.size()), target);
+        ResponseVariants merged = cache.merge(cacheKey, added, (current, more) -> current.plus(more, target));
+        if (diskCache != null) {
+            diskCache.put(cacheKey, merged.encode());
+        }
+        indexForFuzzyLookup(message, filter, cacheKey);
+    }
+
+    // Variants kept per cache entry. With temperature 0 every completion is the same.
+    private int variantTarget() {
+        return config.temperature > 0 ? config.cacheVariants : 1;
+    }
+
+    // Where a request's extra choices go, null when there's nothing to store them in
+    private Consumer<List<String>> alternativesFor(String message, FilterDefinition filter) {
+        if (!config.cacheEnabled || variantTarget() == 1) {
+            return null;
+        }
+        String cacheKey = getCacheKey(message, filter, BACKGROUND_PLAYER);
+        return alternatives -> storeInCache(cacheKey, message, filter, alternatives);
+    }
+
+    // Asks in the background for the variants a cache entry is still missing:
+    // in one request where the provider takes "n", otherwise one per hit
+    private void topUpVariants(String cacheKey, String message, FilterDefinition filter, ResponseVariants variants) {
+        int target = variantTarget();
+        if (!variants.wantsMore(target) || !hasSpareCapacity() || !variantTopUpsInFlight.add(cacheKey)) {
+            return;
+        }
+        if (!variantTopUpBudget.tryAcquire()) {
+            variantTopUpsInFlight.remove(cacheKey);
+            return;
+        }
+
+        variantTopUps.incrementAndGet();
+        UserPrompt userPrompt = new UserPrompt(encodedInstructionsFor(filter),
+                buildMessageContext(BACKGROUND_PLAYER, message), message, target - variants.size(),
+                alternatives -> storeInCache(cacheKey, message, filter, alternatives));
+        long deadlineNanos = System.nanoTime() + config.timeoutSeconds * 1_000_000_000L;
+        CompletableFuture<String> call;
+        try {
+            call = callProvider(selectProvider(), userPrompt, config.maxTokens, message, deadlineNanos);
+        } catch (Exception e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((transformed, error) -> {
+            if (error == null && transformed != null) {
+                storeInCache(cacheKey, message, filter, transformed);
+                writeToDebugLog("VARIANT TOP-UP " + filter.name + ": " + message + " -> " + transformed);
+            }
+            variantTopUpsInFlight.remove(cacheKey);
+        });
+    }
+
+    // Nothing to pregenerate if cached, or if it just failed and would most likely fail again
+    private boolean isCachedOrRecentlyFailed(String message, FilterDefinition filter) {
+        String cacheKey = getCacheKey(message, filter, BACKGROUND_PLAYER);
+        if (cache.containsKey(cacheKey)) {
+            return true;
+        }
+        if (diskCache != null) {
+            DiskCache.Hit hit = diskCache.get(cacheKey, config.cacheTtlMinutes * 60_000L);
+            if (hit != null) {
+                cache.put(cacheKey, ResponseVariants.decode(hit.value()), hit.ageMillis());
+                return true;
+            }
+        }
+        Long failedAt = recentFailures.get(cacheKey);
+        return failedAt != null && System.currentTimeMillis() - failedAt < config.negativeCacheSeconds * 1000L;
+    }
+
+    // Returns the provider call itself, so Pregenerator can cancel it for live chat
+    private CompletableFuture<String> pregenerate(String message, FilterDefinition filter) {
+        String cacheKey = getCacheKey(message, filter, BACKGROUND_PLAYER);
+        long deadlineNanos = System.nanoTime() + config.timeoutSeconds * 1_000_000_000L;
+        CompletableFuture<String> call;
+        try {
+            call = callLLMAPI(message, filter, BACKGROUND_PLAYER, deadlineNanos);
+        } catch (LLMException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((transformed, error) -> {
+            if (error == null && transformed != null) {
+                storeInCache(cacheKey, message, filter, transformed);
+                writeToDebugLog("PREGENERATED " + filter.name + ": " + message + " -> " + transformed);
+            } else if (error != null && !call.isCancelled() && !isCausedBy(error, CircuitOpenException.class)
+                    && config.negativeCacheSeconds > 0) {
+                recentFailures.put(cacheKey, System.currentTimeMillis());
+            }
+        });
+        return call;
+    }
+
+    // No live request waits on the provider, and the rate budgets and concurrency
+    // limits are mostly unused. Without a rate budget nothing else tells how busy
+    // chat is, so a recent live call counts as busy too.
+    private boolean hasSpareCapacity() {
+        if (!inFlight.isEmpty()) {
+            return false;
+        }
+        for (RateBudget budget : rateBudgets.values()) {
+            if (!budget.hasSpare(BACKGROUND_SPARE_BUDGET)) {
+                return false;
+            }
+        }
+        for (AdaptiveConcurrencyLimiter limiter : concurrencyLimiters.values()) {
+            if (!limiter.hasSpare(BACKGROUND_SPARE_BUDGET)) {
+                return false;
+            }
+        }
+        return !rateBudgets.isEmpty() || System.nanoTime() - lastLiveCallNanos.get() >= BACKGROUND_QUIET_NANOS;
+    }
+
+    // Short messages are indexed so near-duplicates can reuse their transformation
+    private void indexForFuzzyLookup(String message, FilterDefinition filter, String cacheKey) {
+        if (similarityIndex == null) {
+            return;
+        }
+        String canonical = filter.getNormalization().apply(message);
+        if (canonical.length() <= config.fuzzyCacheMaxLength) {
+            similarityIndex.add(filter.name, canonical, cacheKey);
+        }
+    }
+
+    // The cached transformation of a short message similar enough to this one, or null
+    private String findSimilarCached(String message, FilterDefinition filter, String playerName) {
+        if (similarityIndex == null) {
+            return null;
+        }
+        double threshold = filter.getFuzzyThreshold(config.fuzzyCacheThreshold);
+        String canonical = filter.getNormalization().apply(message);
+        if (threshold >= 1.0 || canonical.length() > config.fuzzyCacheMaxLength) {
+            return null;
+        }
+
+        SimilarityIndex.Match match = similarityIndex.find(filter.name, canonical, threshold);
+        if (match == null) {
+            return null;
+        }
+        ResponseVariants variants = cache.get(match.cacheKey());
+        if (variants == null) {
+            // Evicted or expired since it was indexed
+            similarityIndex.remove(match.cacheKey());
+            return null;
+        }
+        String cached = variants.pick();
+
+        fuzzyCacheHits.incrementAndGet();
+        String audit = String.format("Fuzzy cache hit (%s, %.2f similar) for %s: \"%s\" reused \"%s\" -> \"%s\"",
+                filter.name, match.similarity(), playerName, message, match.canonical(), cached);
+        LOGGER.info(audit);
+        writeToDebugLog(audit);
+        return cached;
+    }
+
+    // Replays the chat in a server log (or a file of one message per line) through
+    // a cache of the configured size, comparing old and normalized cache keys
+    public Map<String, String> replayChatLog(Path log, FilterDefinition filter) throws IOException {
+        List<String> messages = CacheReplay.readMessages(log);
+        return CacheReplay.replay(messages, filter, config.cacheSize,
+                message -> getCacheKey(message, filter, null));
+    }
+
+    // Moves the cache to the smallest candidate size predicted to hit about as
+    // often as the largest that fits in cache_auto_size_max_mb
+    private void autoSizeCache() {
+        if (missRatioCurve.lookups() < AUTO_SIZE_MIN_LOOKUPS) {
+            return;
+        }
+        long entryBytes = "off_heap".equals(config.cacheStorage) ? OFF_HEAP_ENTRY_BYTES : HEAP_ENTRY_BYTES;
+        long maxEntries = config.cacheAutoSizeMaxMb * 1024L * 1024L / entryBytes;
+        int ttl = Arrays.binarySearch(missRatioCurve.ttlMillis(), config.cacheTtlMinutes * 60_000L);
+        int target = missRatioCurve.recommend(ttl, maxEntries, AUTO_SIZE_TOLERANCE);
+        int current = cache.maximumSize();
+        if (target <= 0 || target == current) {
+            return;
+        }
+
+        cache.resize(target);
+        cacheResizes.incrementAndGet();
+        int[] sizes = missRatioCurve.capacities();
+        LOGGER.info(String.format("Resized the response cache from %d to %d entries, predicted hit rate %.0f%%",
+                current, target, missRatioCurve.hitRate(Arrays.binarySearch(sizes, target), ttl) * 100));
     }
 
     private void startCacheCleanup() {
@@ -765,8 +1874,19 @@ public class LLMService {
         });
 
         cleanup.scheduleAtFixedRate(() -> {
-            long expireTime = System.currentTimeMillis() - (config.cacheTtlMinutes * 60 * 1000L);
-            cache.entrySet().removeIf(entry -> entry.getValue().timestamp < expireTime);
+            // Lookups already drop expired entries, this covers a quiet server
+            cache.cleanUp();
+            if (config.cacheAutoSizeEnabled && missRatioCurve != null) {
+                autoSizeCache();
+            }
+            if (diskCache != null) {
+                diskCache.compact(config.cacheTtlMinutes * 60_000L, config.diskCacheMaxMb * 1024L * 1024L);
+            }
+            long failureExpireTime = System.currentTimeMillis() - config.negativeCacheSeconds * 1000L;
+            recentFailures.values().removeIf(failedAt -> failedAt < failureExpireTime);
+            // A player chatting right now may keep the evicted bucket for one more
+            // message, which at worst lets a single extra message through
+            rateLimiters.values().removeIf(limiter -> limiter.isIdle(IDLE_LIMITER_NANOS));
 
             // Also clean up old conversation history (older than 30 minutes)
             long historyExpireTime = System.currentTimeMillis() - (30 * 60 * 1000L);
@@ -774,14 +1894,104 @@ public class LLMService {
         }, 5, 5, TimeUnit.MINUTES);
     }
 
+    public Map<String, String> getStatistics() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("Executor mode", config.executorMode);
+        stats.put("HTTP transport", transport.getName());
+        stats.put("Live executor threads", String.valueOf(executorMetrics.getLiveThreads()));
+        stats.put("Peak executor threads", String.valueOf(executorMetrics.getPeakThreads()));
+        stats.put("Executor threads started", String.valueOf(executorMetrics.getThreadsStarted()));
+        stats.put("JVM live threads", String.valueOf(ManagementFactory.getThreadMXBean().getThreadCount()));
+        stats.put("Carrier pinning events", executorMetrics.isPinningMonitored()
+                ? executorMetrics.getPinnedEvents() + " (" + executorMetrics.getPinnedMillis() + "ms pinned)"
+                : "n/a");
+        stats.put("Streaming", config.streamingEnabled ? "enabled" : "disabled");
+        stats.put("Chat latency SLO", config.chatLatencySloMs > 0 ? config.chatLatencySloMs + "ms" : "none");
+        stats.put("Queue wait", queueWait.describe());
+        stats.put("Provider latency (total)", providerLatency.describe());
+        stats.put("Deadline misses", String.valueOf(deadlineMisses.get()));
+        stats.put("Time to first token", timeToFirstTokenLatency.describe());
+        stats.put("Streams stopped early", String.valueOf(streamsStoppedEarly.get()));
+        long hedgeDelay = hedgeDelayMillis(config.llmProvider.toLowerCase());
+        if (!config.hedgingEnabled) {
+            stats.put("Hedging", "disabled");
+        } else if (hedgeDelay < 0) {
+            stats.put("Hedging", "inactive (needs a second provider and " + LATENCY_MIN_SAMPLES + " latency samples)");
+        } else {
+            stats.put("Hedging", "to " + config.hedgeProvider + " after " + hedgeDelay + "ms");
+        }
+        stats.put("Hedges sent", hedgesSent.get() + " (" + hedgesWon.get() + " won, " + hedgesSkipped.get()
+                + " skipped by budget)");
+        latencyByProvider.forEach((model, latency) -> stats.put("Latency (" + model + ")",
+                latency.describe() + ", timeout " + responseTimeoutMillis(latency) + "ms"));
+        stats.put("Response timeouts", String.valueOf(responseTimeouts.get()));
+        stats.put("Transformation timeouts", String.valueOf(transformationTimeouts.get()));
+        stats.put("Circuit breakers", config.circuitBreakerEnabled
+                ? (circuitBreakers.isEmpty() ? "no calls yet" : getCircuitStates().toString())
+                : "disabled");
+        if (!config.adaptiveConcurrencyEnabled) {
+            stats.put("Concurrency limit", "disabled");
+        }
+        new TreeMap<>(concurrencyLimiters).forEach(
+                (provider, limiter) -> stats.put("Concurrency (" + provider + ")", limiter.describe()));
+        if (!config.rateBudgetEnabled) {
+            stats.put("Rate budget", "disabled");
+        }
+        new TreeMap<>(rateBudgets).forEach(
+                (provider, budget) -> stats.put("Rate budget (" + provider + ")", budget.describe()));
+        stats.put("Fast failures (circuit open)", String.valueOf(circuitRejections.get()));
+        tokenUsage.forEach((provider, usage) -> stats.put("Tokens (" + provider + ")", usage.describe()));
+        retriesByProvider.forEach((provider, retries) -> stats.put("Retries (" + provider + ")",
+                String.valueOf(retries.get())));
+        stats.put("Response cache", config.cacheEnabled ? cache.describe() : "disabled");
+        stats.put("Disk cache", diskCache != null ? diskCache.describe() : "disabled");
+        if (missRatioCurve != null) {
+            stats.put("Cache size estimation", String.format("%d lookups, %d keys tracked (%.1f%% sampled)%s",
+                    missRatioCurve.lookups(), missRatioCurve.trackedKeys(), missRatioCurve.samplingRate() * 100,
+                    config.cacheAutoSizeEnabled ? ", " + cacheResizes.get() + " resizes" : ""));
+            long[] ttls = missRatioCurve.ttlMillis();
+            for (int ttl = 0; ttl < ttls.length; ttl++) {
+                stats.put("Predicted hit rate (" + ttls[ttl] / 60_000 + " min TTL)", missRatioCurve.describe(ttl));
+            }
+        }
+        stats.put("Fuzzy cache", similarityIndex != null
+                ? fuzzyCacheHits.get() + " hits, " + similarityIndex.size() + " messages indexed"
+                : "disabled");
+        stats.put("Pregeneration", pregenerator != null ? pregenerator.describe() : "disabled");
+        stats.put("Cache variants", config.cacheEnabled && variantTarget() > 1
+                ? "up to " + variantTarget() + ", " + variantChoices.get() + " extra choices, "
+                        + variantTopUps.get() + " top-ups"
+                : "disabled");
+        stats.put("Negative cache hits", String.valueOf(negativeCacheHits.get()));
+        stats.put("Coalesced requests", String.valueOf(coalescedRequests.get()));
+        stats.put("Batching", config.batchingEnabled
+                ? "enabled (" + config.batchWindowMs + "ms window, max " + config.batchMaxSize + ")"
+                : "disabled");
+        stats.put("Batches sent", batchesSent.get() + " (" + batchedMessages.get() + " messages)");
+        stats.put("Batch items retried singly", String.valueOf(batchItemsRetried.get()));
+        stats.put("Player rate limiters tracked", String.valueOf(rateLimiters.size()));
+        stats.put("Request templates built", String.valueOf(requestTemplateBuilds.get()));
+        return stats;
+    }
+
     public void shutdown() {
         try {
             writeToDebugLog("LLM Service shutting down...");
+            if (pregenerator != null) {
+                pregenerator.close();
+            }
+            if (batcher != null) {
+                batcher.close();
+            }
             executor.shutdown();
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
                 executor.shutdownNow();
             }
-            httpClient.close();
+            transport.close();
+            executorMetrics.close();
+            if (diskCache != null) {
+                diskCache.release();
+            }
             writeToDebugLog("LLM Service shutdown complete.");
         } catch (Exception e) {
             LOGGER.severe("Error shutting down LLM service: " + e.getMessage());
@@ -807,46 +2017,27 @@ public class LLMService {
         }
     }
 
-    private static class CachedResponse {
-        final String response;
-        final long timestamp;
-        private final RandomDialogueConfig config;
-
-        CachedResponse(String response, long timestamp, RandomDialogueConfig config) {
-            this.response = response;
-            this.timestamp = timestamp;
-            this.config = config;
+    // User message content in the pieces RequestTemplate splices together
+    private static class UserPrompt {
+        final byte[] instructions;
+        final String context;
+        final String message;
+        // Completions wanted, where the provider can return several
+        final int choices;
+        // Receives the completions after the first; null to ask for one only
+        final Consumer<List<String>> alternatives;
+
+        UserPrompt(byte[] instructions, String context, String message) {
+            this(instructions, context, message, 1, null);
         }
 
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > (this.config.cacheTtlMinutes * 60 * 1000L);
-        }
-    }
-
-    private static class RateLimiter {
-        private final Queue<Long> requests = new ConcurrentLinkedQueue<>();
-        private final int maxRequests;
-        private final long windowMs;
-
-        RateLimiter(int maxRequests, long windowMs) {
-            this.maxRequests = maxRequests;
-            this.windowMs = windowMs;
-        }
-
-        synchronized boolean tryAcquire() {
-            long now = System.currentTimeMillis();
-
-            // Remove old requests outside the window
-            while (!requests.isEmpty() && now - requests.peek() > windowMs) {
-                requests.poll();
-            }
-
-            if (requests.size() < maxRequests) {
-                requests.offer(now);
-                return true;
-            }
-
-            return false;
+        UserPrompt(byte[] instructions, String context, String message, int choices,
+                Consumer<List<String>> alternatives) {
+            this.instructions = instructions;
+            this.context = context;
+            this.message = message;
+            this.choices = choices;
+            this.alternatives = alternatives;
         }
     }
 
@@ -854,10 +2045,16 @@ public class LLMService {
     public static class TransformationResult {
         public final String transformedMessage;
         public final String followUpMessage; // null if no follow-up needed
+        public final boolean timedOut; // transformedMessage is the fallback
 
         public TransformationResult(String transformedMessage, String followUpMessage) {
+            this(transformedMessage, followUpMessage, false);
+        }
+
+        public TransformationResult(String transformedMessage, String followUpMessage, boolean timedOut) {
             this.transformedMessage = transformedMessage;
             this.followUpMessage = followUpMessage;
+            this.timedOut = timedOut;
         }
 
         public boolean hasFollowUp() {
@@ -874,4 +2071,18 @@ public class LLMService {
             super(message, cause);
         }
     }
+
+    // The transformation could no longer arrive within the chat latency SLO
+    public static class DeadlineExceededException extends LLMException {
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    // Turned away without a request because the provider's circuit breaker is open
+    public static class CircuitOpenException extends LLMException {
+        public CircuitOpenException(String provider) {
+            super("Circuit breaker open for provider " + provider);
+        }
+    }
 }
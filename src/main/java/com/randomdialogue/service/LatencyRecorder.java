@@ -0,0 +1,59 @@
+package com.randomdialogue.service;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and answers percentile
+ * queries over them.
+ */
+class LatencyRecorder {
+    private static final int DEFAULT_WINDOW = 512;
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long totalCount;
+
+    LatencyRecorder() {
+        this(DEFAULT_WINDOW);
+    }
+
+    LatencyRecorder(int window) {
+        this.samples = new long[window];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        totalCount++;
+    }
+
+    // Returns -1 when no samples have been recorded yet
+    synchronized long percentile(double percentile) {
+        if (size == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+
+    synchronized int getSampleCount() {
+        return size;
+    }
+
+    synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    // e.g. "p50 420ms, p95 1300ms (812 samples)"
+    String describe() {
+        if (getSampleCount() == 0) {
+            return "no samples";
+        }
+        return "p50 " + percentile(50) + "ms, p95 " + percentile(95) + "ms, p99 " + percentile(99) + "ms ("
+                + getTotalCount() + " samples)";
+    }
+}
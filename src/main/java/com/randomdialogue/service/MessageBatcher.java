@@ -0,0 +1,200 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.randomdialogue.filter.FilterDefinition;
+
+/**
+ * Collects messages that arrive within a short window and hands them to the
+ * sender as one batch. A batch is flushed when the window expires or as soon as
+ * it reaches the maximum size, whichever comes first. Also reads the
+ * provider's combined reply back into per-item results.
+ */
+class MessageBatcher implements AutoCloseable {
+    private final long windowMillis;
+    private final int maxSize;
+    private final Executor executor;
+    private final Consumer<List<BatchItem>> sender;
+    private final ScheduledExecutorService timer;
+
+    private List<BatchItem> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+
+    MessageBatcher(long windowMillis, int maxSize, Executor executor, Consumer<List<BatchItem>> sender) {
+        this.windowMillis = windowMillis;
+        this.maxSize = maxSize;
+        this.executor = executor;
+        this.sender = sender;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LLM-Batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    CompletableFuture<String> submit(String originalMessage, FilterDefinition filter, String playerName,
+            long deadlineNanos) {
+        BatchItem item = new BatchItem(originalMessage, filter, playerName, deadlineNanos);
+        List<BatchItem> full = null;
+
+        synchronized (this) {
+            pending.add(item);
+            if (pending.size() >= maxSize) {
+                full = takePending();
+            } else if (flushTask == null) {
+                flushTask = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null) {
+            dispatch(full);
+        }
+        return item.result;
+    }
+
+    private void flush() {
+        List<BatchItem> items;
+        synchronized (this) {
+            items = takePending();
+        }
+        dispatch(items);
+    }
+
+    // Must hold the lock
+    private List<BatchItem> takePending() {
+        List<BatchItem> items = pending;
+        pending = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return items;
+    }
+
+    private void dispatch(List<BatchItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                sender.accept(items);
+            } catch (Exception e) {
+                items.forEach(item -> item.result.completeExceptionally(e));
+            }
+        });
+    }
+
+    // Maps item id to transformed text, from a reply that follows the batch
+    // instructions. Entries that can't be read are left out.
+    static Map<Integer, String> parseReply(String content) {
+        Map<Integer, String> replies = new HashMap<>();
+
+        // Tolerate code fences or chatter around the JSON
+        int start = -1;
+        int end = -1;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '{' || c == '[') {
+                start = i;
+                break;
+            }
+        }
+        for (int i = content.length() - 1; i > start; i--) {
+            char c = content.charAt(i);
+            if (c == '}' || c == ']') {
+                end = i;
+                break;
+            }
+        }
+        if (start < 0 || end < 0) {
+            return replies;
+        }
+
+        try {
+            JsonElement parsed = JsonParser.parseString(content.substring(start, end + 1));
+            JsonArray entries = null;
+            if (parsed.isJsonArray()) {
+                entries = parsed.getAsJsonArray();
+            } else if (parsed.isJsonObject() && parsed.getAsJsonObject().has("items")
+                    && parsed.getAsJsonObject().get("items").isJsonArray()) {
+                entries = parsed.getAsJsonObject().getAsJsonArray("items");
+            }
+            if (entries == null) {
+                return replies;
+            }
+
+            for (JsonElement entry : entries) {
+                if (!entry.isJsonObject()) {
+                    continue;
+                }
+                JsonObject object = entry.getAsJsonObject();
+                JsonElement id = object.get("id");
+                JsonElement text = object.get("text");
+                if (id != null && id.isJsonPrimitive() && text != null && text.isJsonPrimitive()) {
+                    try {
+                        replies.put(id.getAsInt(), text.getAsString());
+                    } catch (NumberFormatException e) {
+                        // Skip entries with a non-numeric id
+                    }
+                }
+            }
+        } catch (JsonSyntaxException e) {
+            // Not JSON after all, nothing usable
+        }
+
+        return replies;
+    }
+
+    // Completes each item with its entry in the reply, ids counting from 1, and
+    // returns the items the reply has no usable text for
+    static List<BatchItem> completeFromReply(List<BatchItem> items, Map<Integer, String> replies,
+            UnaryOperator<String> clean) {
+        List<BatchItem> missing = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            String text = replies.get(i + 1);
+            if (text != null && !text.trim().isEmpty()) {
+                items.get(i).result.complete(clean.apply(text));
+            } else {
+                missing.add(items.get(i));
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    static final class BatchItem {
+        final String originalMessage;
+        final FilterDefinition filter;
+        final String playerName;
+        final long deadlineNanos;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        BatchItem(String originalMessage, FilterDefinition filter, String playerName, long deadlineNanos) {
+            this.originalMessage = originalMessage;
+            this.filter = filter;
+            this.playerName = playerName;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.randomdialogue.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Predicts the response cache's hit rate at other sizes and times to live,
+ * from the keys it is asked for. It follows SHARDS (Waldspurger et al., FAST
+ * '15): only keys whose hash falls under a threshold are tracked, so every
+ * reference to a tracked key is seen and the rest are ignored, and the reuse
+ * distance of a tracked reference (how many other keys were used since the
+ * last use of this one) is the sampled distance divided by the sampling rate.
+ * An LRU cache of capacity C hits exactly the references with a distance
+ * below C. At most maxSamples keys are tracked: past that, the threshold is
+ * lowered to drop the keys with the highest hashes, so a busy server is
+ * sampled more sparsely and a quiet one fully. The counts so far are scaled
+ * down by the same ratio, so references sampled at the old rate don't
+ * outweigh the new ones.
+ *
+ * For each time to live, a tracked key also keeps when it was last written,
+ * and a reference more than that long after it only counts as a miss, which
+ * rewrites it. Capacity misses don't restart that clock here, which they do
+ * in the cache, so the predictions for a short TTL with a small capacity are
+ * a little optimistic. TinyLfuCache usually does somewhat better than LRU.
+ *
+ * Reuse distances come from a Fenwick tree over the time of each key's last
+ * use, renumbered when it fills. Counts are halved every HALVING_REFERENCES
+ * tracked references, so the predictions follow what players are saying now.
+ * All methods take the lock.
+ */
+class MissRatioCurve {
+    // Keys are identified by 63 bits of their hash and sampled on the top 24 of those
+    private static final int HASH_BITS = 24;
+    private static final int FULL_THRESHOLD = 1 << HASH_BITS;
+    private static final long HALVING_REFERENCES = 100_000;
+
+    private final int[] capacities;
+    private final long[] ttlMillis;
+    private final int maxSamples;
+    // Key id -> tracked key, ordered so the highest hashes can be dropped
+    private final TreeMap<Long, Sample> samples = new TreeMap<>();
+    private int threshold = FULL_THRESHOLD;
+
+    // Marks the last-use time of every tracked key
+    private final int[] tree;
+    private int time;
+
+    // hits[ttl][c]: references that hit with that TTL at capacities[c] but no smaller candidate
+    private final double[][] hits;
+    private double references;
+    private long lookups;
+
+    // capacities and ttlMillis in ascending order
+    MissRatioCurve(int[] capacities, long[] ttlMillis, int maxSamples) {
+        this.capacities = capacities.clone();
+        this.ttlMillis = ttlMillis.clone();
+        this.maxSamples = Math.max(1, maxSamples);
+        this.tree = new int[this.maxSamples * 4 + 1];
+        this.hits = new double[ttlMillis.length][capacities.length];
+    }
+
+    synchronized void record(String key, long nowMillis) {
+        lookups++;
+        long id = OffHeapCache.hash(key.getBytes(StandardCharsets.UTF_8)) >>> 1;
+        if (bucket(id) >= threshold) {
+            return;
+        }
+        references++;
+
+        Sample sample = samples.get(id);
+        if (sample == null) {
+            sample = new Sample(ttlMillis.length);
+            samples.put(id, sample);
+            for (int t = 0; t < ttlMillis.length; t++) {
+                sample.writtenAt[t] = nowMillis;
+            }
+            touch(sample);
+            if (samples.size() > maxSamples) {
+                lowerThreshold();
+            }
+        } else {
+            int sampled = count(sample.lastUse + 1, time - 1);
+            double distance = sampled * (double) FULL_THRESHOLD / threshold;
+            int firstHit = 0;
+            while (firstHit < capacities.length && distance >= capacities[firstHit]) {
+                firstHit++;
+            }
+            for (int t = 0; t < ttlMillis.length; t++) {
+                if (nowMillis - sample.writtenAt[t] >= ttlMillis[t]) {
+                    sample.writtenAt[t] = nowMillis;
+                } else if (firstHit < capacities.length) {
+                    hits[t][firstHit]++;
+                }
+            }
+            touch(sample);
+        }
+
+        if (references >= HALVING_REFERENCES) {
+            scale(0.5);
+        }
+    }
+
+    // Predicted share of lookups that hit, at capacities[capacity] and ttlMillis[ttl]
+    synchronized double hitRate(int capacity, int ttl) {
+        if (references == 0) {
+            return 0;
+        }
+        double hit = 0;
+        for (int c = 0; c <= capacity; c++) {
+            hit += hits[ttl][c];
+        }
+        return hit / references;
+    }
+
+    // The smallest capacity up to maxEntries predicted to hit within tolerance
+    // of the best one up to maxEntries, or -1 if none fits
+    synchronized int recommend(int ttl, long maxEntries, double tolerance) {
+        int best = -1;
+        for (int c = 0; c < capacities.length && capacities[c] <= maxEntries; c++) {
+            best = c;
+        }
+        if (best < 0) {
+            return -1;
+        }
+        double bestRate = hitRate(best, ttl);
+        for (int c = 0; c <= best; c++) {
+            if (hitRate(c, ttl) >= bestRate - tolerance) {
+                return capacities[c];
+            }
+        }
+        return capacities[best];
+    }
+
+    int[] capacities() {
+        return capacities.clone();
+    }
+
+    long[] ttlMillis() {
+        return ttlMillis.clone();
+    }
+
+    // Lookups seen since the estimation started, tracked or not
+    synchronized long lookups() {
+        return lookups;
+    }
+
+    // Tracked references the predictions are currently based on
+    synchronized double references() {
+        return references;
+    }
+
+    synchronized double samplingRate() {
+        return (double) threshold / FULL_THRESHOLD;
+    }
+
+    synchronized int trackedKeys() {
+        return samples.size();
+    }
+
+    // e.g. "100: 41%, 1000: 63%, 10000: 70%" for one TTL
+    synchronized String describe(int ttl) {
+        StringBuilder row = new StringBuilder();
+        for (int c = 0; c < capacities.length; c++) {
+            if (c > 0) {
+                row.append(", ");
+            }
+            row.append(capacities[c]).append(": ").append(Math.round(hitRate(c, ttl) * 100)).append('%');
+        }
+        return row.toString();
+    }
+
+    // Moves the key's mark to now
+    private void touch(Sample sample) {
+        if (time == tree.length - 1) {
+            renumber();
+        }
+        if (sample.lastUse >= 0) {
+            update(sample.lastUse, -1);
+        }
+        sample.lastUse = time++;
+        update(sample.lastUse, 1);
+    }
+
+    // Drops the keys with the highest hashes until maxSamples are left
+    private void lowerThreshold() {
+        int old = threshold;
+        while (samples.size() > maxSamples) {
+            threshold = bucket(samples.lastKey());
+            while (!samples.isEmpty() && bucket(samples.lastKey()) >= threshold) {
+                update(samples.pollLastEntry().getValue().lastUse, -1);
+            }
+        }
+        scale((double) threshold / old);
+    }
+
+    private void scale(double factor) {
+        references *= factor;
+        for (double[] row : hits) {
+            for (int c = 0; c < row.length; c++) {
+                row[c] *= factor;
+            }
+        }
+    }
+
+    // Last-use times run out; the tracked keys get 0..n-1 in the same order
+    private void renumber() {
+        List<Sample> byLastUse = new ArrayList<>(samples.size());
+        for (Sample sample : samples.values()) {
+            if (sample.lastUse >= 0) {
+                byLastUse.add(sample);
+            }
+        }
+        byLastUse.sort(Comparator.comparingInt(s -> s.lastUse));
+        Arrays.fill(tree, 0);
+        time = 0;
+        for (Sample sample : byLastUse) {
+            sample.lastUse = time++;
+            update(sample.lastUse, 1);
+        }
+    }
+
+    private static int bucket(long id) {
+        return (int) (id >>> (63 - HASH_BITS));
+    }
+
+    // Marks between from and to, inclusive
+    private int count(int from, int to) {
+        return to < from ? 0 : prefix(to) - prefix(from - 1);
+    }
+
+    private int prefix(int index) {
+        int sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void update(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private static final class Sample {
+        final long[] writtenAt;
+        // -1 until first marked
+        int lastUse = -1;
+
+        Sample(int ttls) {
+            this.writtenAt = new long[ttls];
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package com.randomdialogue.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache storage outside the Java heap, for caches of tens of thousands of
+ * entries that would otherwise be as many objects for the garbage collector to
+ * trace while it shares the JVM with the server tick. Keys and values are kept
+ * in UTF-8 in direct ByteBuffer slabs, which together form one ring log:
+ * records are appended at the tail and space is reclaimed from the head. The
+ * index is an open-addressing hash table (linear probing, backward-shift
+ * deletion) in another direct buffer, from a key's 64-bit hash to the position
+ * of its record. On the heap there is only the slab array; a slab is allocated
+ * when the log first reaches it.
+ *
+ * Eviction is CLOCK over the log: a hit raises the entry's 2-bit counter, and
+ * when the head is reclaimed, a record whose counter isn't zero is copied to
+ * the tail with the counter lowered instead of being dropped. An entry that
+ * is down to zero is only evicted for a new key FrequencySketch says is asked
+ * for more often; otherwise the new key is rejected, as in TinyLfuCache, and
+ * the entry goes round once more. Phrases used all day
+ * therefore outlive any number of one-off messages. The sketch is a fixed
+ * array of longs, not an object per entry. A rewrite leaves the old record
+ * dead in the log until the head reaches it.
+ *
+ * A record is: int length (padded to 8 bytes), int key length (-1 for the
+ * filler at the end of a slab), int value length, 4 unused bytes, long key
+ * hash, long time written, then the key and the value. Records never span
+ * slabs, so a value bigger than a slab isn't cached. All methods take the
+ * cache's lock.
+ */
+class OffHeapCache<V> implements CacheStore<String, V> {
+    static final int SLAB_BYTES = 1 << 20;
+    static final int HEADER_BYTES = 32;
+    // Index slot: long key hash (0 if empty), long record position + 1 with the CLOCK counter on top
+    private static final int SLOT_BYTES = 16;
+    private static final int COUNTER_SHIFT = 62;
+    private static final long POSITION_MASK = (1L << COUNTER_SHIFT) - 1;
+    private static final int MAX_COUNTER = 3;
+    private static final int FILLER = -1;
+
+    private int maximumSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Function<V, String> encoder;
+    private final Function<String, V> decoder;
+
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final long capacity;
+    private ByteBuffer index;
+    private int indexMask;
+    // Keyed by key hash
+    private FrequencySketch sketch;
+    // Positions in the log, counted from its start; the ring offset is position % capacity
+    private long head;
+    private long tail;
+    private int count;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long expirations;
+    private long oversized;
+
+    OffHeapCache(int maximumSize, long maxBytes, long ttlMillis, Function<V, String> encoder,
+            Function<String, V> decoder) {
+        this(maximumSize, maxBytes, ttlMillis, encoder, decoder, System::nanoTime);
+    }
+
+    OffHeapCache(int maximumSize, long maxBytes, long ttlMillis, Function<V, String> encoder,
+            Function<String, V> decoder, LongSupplier nanoClock) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.clock = nanoClock;
+        this.encoder = encoder;
+        this.decoder = decoder;
+
+        long bytes = Math.max(HEADER_BYTES, maxBytes);
+        this.slabSize = Math.min(SLAB_BYTES, align(bytes));
+        this.slabs = new ByteBuffer[(int) Math.max(1, bytes / slabSize)];
+        this.capacity = (long) slabs.length * slabSize;
+        this.index = allocateIndex(this.maximumSize);
+        this.indexMask = slotsFor(this.maximumSize) - 1;
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    @Override
+    public synchronized V get(String key) {
+        long now = clock.getAsLong();
+        expire(now);
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        sketch.increment(hash);
+        int slot = maximumSize == 0 ? -1 : find(hash, keyBytes);
+        if (slot >= 0 && now - writtenAt(position(slot)) >= ttlNanos) {
+            removeSlot(slot);
+            expirations++;
+            slot = -1;
+        }
+        if (slot < 0) {
+            misses++;
+            return null;
+        }
+        setCounter(slot, Math.min(MAX_COUNTER, counter(slot) + 1));
+        hits++;
+        return decoder.apply(readValue(position(slot)));
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) {
+        if (maximumSize == 0) {
+            return false;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = find(hash(keyBytes), keyBytes);
+        return slot >= 0 && clock.getAsLong() - writtenAt(position(slot)) < ttlNanos;
+    }
+
+    @Override
+    public synchronized void put(String key, V value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public synchronized void put(String key, V value, long ageMillis) {
+        if (maximumSize == 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        expire(now);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        write(keyBytes, hash(keyBytes), encode(value), now - ageMillis * 1_000_000L);
+    }
+
+    @Override
+    public synchronized V merge(String key, V value, BinaryOperator<V> combine) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        int slot = maximumSize == 0 ? -1 : find(hash, keyBytes);
+        if (slot < 0 || clock.getAsLong() - writtenAt(position(slot)) >= ttlNanos) {
+            put(key, value);
+            return value;
+        }
+        long position = position(slot);
+        V combined = combine.apply(decoder.apply(readValue(position)), value);
+        write(keyBytes, hash, encode(combined), writtenAt(position));
+        return combined;
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized int maximumSize() {
+        return maximumSize;
+    }
+
+    // The log keeps its memory limit; the index is rebuilt for the new size
+    @Override
+    public synchronized void resize(int maximumSize) {
+        int previous = this.maximumSize;
+        this.maximumSize = Math.max(0, maximumSize);
+        while (count > this.maximumSize) {
+            reclaimHead(0);
+        }
+        if (this.maximumSize == 0) {
+            // Only dead records left, which an empty index can't tell apart
+            head = tail;
+        }
+        if (this.maximumSize > previous) {
+            // Sized for the old capacity it would saturate; the counts start over
+            sketch = new FrequencySketch(this.maximumSize);
+        }
+
+        ByteBuffer old = index;
+        int oldSlots = old.capacity() / SLOT_BYTES;
+        index = allocateIndex(this.maximumSize);
+        indexMask = slotsFor(this.maximumSize) - 1;
+        for (int slot = 0; slot < oldSlots; slot++) {
+            long hash = old.getLong(slot * SLOT_BYTES);
+            if (hash != 0) {
+                long word = old.getLong(slot * SLOT_BYTES + 8);
+                insertSlot(hash, (word & POSITION_MASK) - 1, (int) (word >>> COUNTER_SHIFT));
+            }
+        }
+    }
+
+    // Reclaiming from the head only finds expired entries in write order until
+    // the first one kept by CLOCK, so this checks every entry
+    @Override
+    public synchronized void cleanUp() {
+        long now = clock.getAsLong();
+        expire(now);
+        if (maximumSize == 0) {
+            return;
+        }
+        for (int slot = 0; slot <= indexMask; slot++) {
+            // Backward shift may move an unchecked entry into this slot
+            while (slotHash(slot) != 0 && now - writtenAt(position(slot)) >= ttlNanos) {
+                removeSlot(slot);
+                expirations++;
+            }
+        }
+    }
+
+    // e.g. "12000/50000 entries, 3 of 64 MB off-heap, 1200 hits, 300 misses (80% hit rate), 12 evicted,
+    // 30 rejected, 5 expired"
+    @Override
+    public synchronized String describe() {
+        long lookups = hits + misses;
+        return count + "/" + maximumSize + " entries, " + toMegabytes(tail - head) + " of "
+                + toMegabytes(capacity) + " MB off-heap, " + hits + " hits, " + misses + " misses"
+                + (lookups > 0 ? " (" + Math.round(hits * 100.0 / lookups) + "% hit rate)" : "")
+                + ", " + evictions + " evicted, " + rejections + " rejected, " + expirations + " expired"
+                + (oversized > 0 ? ", " + oversized + " too large" : "");
+    }
+
+    synchronized long hitCount() {
+        return hits;
+    }
+
+    synchronized long evictionCount() {
+        return evictions;
+    }
+
+    synchronized long rejectionCount() {
+        return rejections;
+    }
+
+    // Bytes of the log in use, dead records included
+    synchronized long usedBytes() {
+        return tail - head;
+    }
+
+    private byte[] encode(V value) {
+        return encoder.apply(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void write(byte[] key, long hash, byte[] value, long writtenAt) {
+        int counter = 0;
+        int slot = find(hash, key);
+        if (slot >= 0) {
+            // A rewrite counts as a use, as on the heap, and is never rejected
+            counter = Math.min(MAX_COUNTER, counter(slot) + 1);
+            removeSlot(slot);
+        } else {
+            sketch.increment(hash);
+        }
+        long candidate = slot >= 0 ? 0 : hash;
+        int length = align(HEADER_BYTES + key.length + value.length);
+        if (length > slabSize) {
+            oversized++;
+            return;
+        }
+
+        while (count >= maximumSize || free() < spaceFor(length)) {
+            if (tail == head) {
+                // Nothing left to reclaim, the record can start the next slab
+                tail += slabSize - offset(tail);
+                head = tail;
+            } else if (!reclaimHead(candidate)) {
+                rejections++;
+                return;
+            }
+        }
+        long position = appendAt(length);
+        ByteBuffer slab = slabFor(position);
+        int offset = offset(position);
+        slab.putInt(offset, length);
+        slab.putInt(offset + 4, key.length);
+        slab.putInt(offset + 8, value.length);
+        slab.putLong(offset + 16, hash);
+        slab.putLong(offset + 24, writtenAt);
+        slab.put(offset + HEADER_BYTES, key);
+        slab.put(offset + HEADER_BYTES + key.length, value);
+        insertSlot(hash, position, counter);
+        count++;
+    }
+
+    // Frees the record at the head: skipped if dead, dropped if expired, moved
+    // to the tail if used since its last lap, otherwise evicted. candidate is
+    // the hash of the new key that needs the space, or 0 for a rewrite. Returns
+    // false if the candidate was rejected in favour of the record.
+    private boolean reclaimHead(long candidate) {
+        ByteBuffer slab = slabFor(head);
+        int offset = offset(head);
+        int length = slab.getInt(offset);
+        if (slab.getInt(offset + 4) == FILLER) {
+            head += length;
+            return true;
+        }
+        long hash = slab.getLong(offset + 16);
+        int slot = slotOf(hash, head);
+        if (slot < 0) {
+            head += length;
+            return true;
+        }
+        if (clock.getAsLong() - slab.getLong(offset + 24) >= ttlNanos) {
+            removeSlot(slot);
+            expirations++;
+            head += length;
+            return true;
+        }
+
+        int counter = counter(slot);
+        boolean rejected = counter == 0 && candidate != 0 && sketch.frequency(candidate) <= sketch.frequency(hash);
+        boolean roomToMove = free() + length >= spaceFor(length);
+        if (!roomToMove && rejected) {
+            return false;
+        }
+        if (!roomToMove || (counter == 0 && !rejected)) {
+            removeSlot(slot);
+            evictions++;
+            head += length;
+            return true;
+        }
+
+        // Copied out first, as the tail may land on the bytes just freed
+        byte[] record = new byte[length];
+        slab.get(offset, record);
+        head += length;
+        long moved = appendAt(length);
+        slabFor(moved).put(offset(moved), record);
+        setSlot(slot, hash, moved, Math.max(0, counter - 1));
+        return !rejected;
+    }
+
+    // Drops expired and dead records at the head
+    private void expire(long now) {
+        while (tail > head) {
+            ByteBuffer slab = slabFor(head);
+            int offset = offset(head);
+            int length = slab.getInt(offset);
+            if (slab.getInt(offset + 4) == FILLER) {
+                head += length;
+                continue;
+            }
+            int slot = slotOf(slab.getLong(offset + 16), head);
+            if (slot >= 0) {
+                if (now - slab.getLong(offset + 24) < ttlNanos) {
+                    return;
+                }
+                removeSlot(slot);
+                expirations++;
+            }
+            head += length;
+        }
+    }
+
+    // Where a record of length bytes goes, after a filler to the end of the slab if it doesn't fit there
+    private long appendAt(int length) {
+        int remaining = slabSize - offset(tail);
+        if (length > remaining) {
+            ByteBuffer slab = slabFor(tail);
+            slab.putInt(offset(tail), remaining);
+            slab.putInt(offset(tail) + 4, FILLER);
+            tail += remaining;
+        }
+        long position = tail;
+        tail += length;
+        return position;
+    }
+
+    private long free() {
+        return capacity - (tail - head);
+    }
+
+    // Including the filler it may need first
+    private long spaceFor(int length) {
+        int remaining = slabSize - offset(tail);
+        return length <= remaining ? length : remaining + length;
+    }
+
+    private ByteBuffer slabFor(long position) {
+        int i = (int) (position % capacity / slabSize);
+        if (slabs[i] == null) {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+        return slabs[i];
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity % slabSize);
+    }
+
+    private long writtenAt(long position) {
+        return slabFor(position).getLong(offset(position) + 24);
+    }
+
+    private String readValue(long position) {
+        ByteBuffer slab = slabFor(position);
+        int offset = offset(position);
+        int keyLength = slab.getInt(offset + 4);
+        byte[] value = new byte[slab.getInt(offset + 8)];
+        slab.get(offset + HEADER_BYTES + keyLength, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private boolean keyMatches(long position, byte[] key) {
+        ByteBuffer slab = slabFor(position);
+        int offset = offset(position);
+        if (slab.getInt(offset + 4) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(offset + HEADER_BYTES + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Slot of the key, or -1
+    private int find(long hash, byte[] key) {
+        for (int slot = (int) hash & indexMask;; slot = (slot + 1) & indexMask) {
+            long slotHash = slotHash(slot);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash && keyMatches(position(slot), key)) {
+                return slot;
+            }
+        }
+    }
+
+    // Slot pointing at the record, or -1 if the record is dead
+    private int slotOf(long hash, long position) {
+        for (int slot = (int) hash & indexMask;; slot = (slot + 1) & indexMask) {
+            long slotHash = slotHash(slot);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash && position(slot) == position) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertSlot(long hash, long position, int counter) {
+        int slot = (int) hash & indexMask;
+        while (slotHash(slot) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        setSlot(slot, hash, position, counter);
+    }
+
+    // Backward-shift deletion: later entries of the probe sequence move up, so lookups need no tombstones
+    private void removeSlot(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & indexMask; slotHash(next) != 0; next = (next + 1) & indexMask) {
+            int home = (int) slotHash(next) & indexMask;
+            // Can move into the hole unless its home is cyclically after the hole
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                index.putLong(hole * SLOT_BYTES, index.getLong(next * SLOT_BYTES));
+                index.putLong(hole * SLOT_BYTES + 8, index.getLong(next * SLOT_BYTES + 8));
+                hole = next;
+            }
+        }
+        index.putLong(hole * SLOT_BYTES, 0);
+        index.putLong(hole * SLOT_BYTES + 8, 0);
+        count--;
+    }
+
+    private long slotHash(int slot) {
+        return index.getLong(slot * SLOT_BYTES);
+    }
+
+    private long position(int slot) {
+        return (index.getLong(slot * SLOT_BYTES + 8) & POSITION_MASK) - 1;
+    }
+
+    private int counter(int slot) {
+        return (int) (index.getLong(slot * SLOT_BYTES + 8) >>> COUNTER_SHIFT);
+    }
+
+    private void setCounter(int slot, int counter) {
+        setSlot(slot, slotHash(slot), position(slot), counter);
+    }
+
+    private void setSlot(int slot, long hash, long position, int counter) {
+        index.putLong(slot * SLOT_BYTES, hash);
+        index.putLong(slot * SLOT_BYTES + 8, (position + 1) | (long) counter << COUNTER_SHIFT);
+    }
+
+    // FNV-1a, then the SplitMix64 finalizer; never 0, which marks an empty slot
+    static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return h != 0 ? h : 1;
+    }
+
+    // At most half full, so probe sequences stay short
+    private static int slotsFor(int maximumSize) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, maximumSize * 2 - 1)) << 1);
+    }
+
+    private static ByteBuffer allocateIndex(int maximumSize) {
+        return ByteBuffer.allocateDirect(maximumSize == 0 ? 0 : slotsFor(maximumSize) * SLOT_BYTES);
+    }
+
+    private static int align(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE & ~7, (bytes + 7) & ~7L);
+    }
+
+    private static long toMegabytes(long bytes) {
+        return (bytes + (1 << 20) - 1) >> 20;
+    }
+}
@@ -0,0 +1,136 @@
+package com.randomdialogue.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import com.randomdialogue.filter.CacheNormalization;
+import com.randomdialogue.filter.FilterDefinition;
+
+/**
+ * Fills the response cache ahead of time with the transformations of the
+ * phrases players use most ("gg", "lol", greetings), for every enabled filter,
+ * so the first use after a restart or expiry is a hit. Phrase counts come from
+ * HeavyHitters. At most one phrase is generated per tick, and only while the
+ * idle check passes, which LLMService bases on live requests and the rate
+ * budget. A live request that needs the provider calls yieldToLive(), which
+ * cancels the pregeneration in progress.
+ */
+class Pregenerator {
+    // Longer messages are too varied to be worth generating ahead
+    static final int MAX_PHRASE_LENGTH = 32;
+    // Seen fewer times than this, a phrase isn't popular yet
+    private static final long MIN_COUNT = 3;
+
+    private final HeavyHitters phrases;
+    private final int topPhrases;
+    private final Supplier<Collection<FilterDefinition>> filters;
+    private final BiPredicate<String, FilterDefinition> isCached;
+    private final BiFunction<String, FilterDefinition, CompletableFuture<String>> generate;
+    private final BooleanSupplier idle;
+    private ScheduledExecutorService scheduler;
+
+    private CompletableFuture<String> current;
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong yielded = new AtomicLong();
+
+    Pregenerator(int topPhrases, Supplier<Collection<FilterDefinition>> filters,
+            BiPredicate<String, FilterDefinition> isCached,
+            BiFunction<String, FilterDefinition, CompletableFuture<String>> generate, BooleanSupplier idle) {
+        this.topPhrases = topPhrases;
+        this.phrases = new HeavyHitters(topPhrases * 4);
+        this.filters = filters;
+        this.isCached = isCached;
+        this.generate = generate;
+        this.idle = idle;
+    }
+
+    // One phrase every 60 / perMinute seconds at most
+    void start(int perMinute) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LLM-Pregeneration");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMillis = 60_000L / Math.max(1, perMinute);
+        scheduler.scheduleWithFixedDelay(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void record(String message) {
+        String phrase = CacheNormalization.DEFAULT.apply(message);
+        if (phrase.length() <= MAX_PHRASE_LENGTH) {
+            phrases.add(phrase, message);
+        }
+    }
+
+    // Starts the next missing transformation if idle. Returns whether one was started.
+    synchronized boolean tick() {
+        if (current != null && !current.isDone()) {
+            return false;
+        }
+        if (!idle.getAsBoolean()) {
+            return false;
+        }
+
+        List<String> top = phrases.top(topPhrases, MIN_COUNT);
+        for (String phrase : top) {
+            for (FilterDefinition filter : filters.get()) {
+                if (isCached.test(phrase, filter)) {
+                    continue;
+                }
+                CompletableFuture<String> call = startGenerating(phrase, filter);
+                current = call;
+                call.whenComplete((transformed, error) -> {
+                    if (error == null) {
+                        generated.incrementAndGet();
+                    } else if (!call.isCancelled()) {
+                        failed.incrementAndGet();
+                    }
+                });
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CompletableFuture<String> startGenerating(String phrase, FilterDefinition filter) {
+        try {
+            return generate.apply(phrase, filter);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Live chat needs the provider, so the pregeneration in progress gives way
+    synchronized void yieldToLive() {
+        if (current != null && current.cancel(true)) {
+            yielded.incrementAndGet();
+        }
+    }
+
+    // e.g. "212 phrases tracked, 40 generated, 1 failed, 3 yielded to chat"
+    String describe() {
+        return phrases.size() + " phrases tracked, " + generated.get() + " generated, " + failed.get()
+                + " failed, " + yielded.get() + " yielded to chat";
+    }
+
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        synchronized (this) {
+            if (current != null) {
+                current.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.randomdialogue.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Spreads requests over several providers by weight. Each configured weight is
+ * scaled down by the provider's recent error rate and by how much slower it is
+ * than the fastest provider, so traffic drains away from a degraded provider and
+ * returns as it recovers.
+ */
+class ProviderRouter {
+    // Smoothing factor for the error rate and latency averages
+    private static final double ALPHA = 0.2;
+    // Error rate at which a provider is fully drained
+    private static final double DRAIN_ERROR_RATE = 0.5;
+    // Share of its configured weight a drained provider keeps, so it still sees
+    // enough traffic to notice when it recovers
+    private static final double MIN_SHARE = 0.02;
+
+    private final Map<String, Double> baseWeights;
+    private final String defaultProvider;
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+    // Uniform in [0, 1)
+    private final DoubleSupplier random;
+
+    ProviderRouter(Map<String, Double> baseWeights, String defaultProvider) {
+        this(baseWeights, defaultProvider, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    ProviderRouter(Map<String, Double> baseWeights, String defaultProvider, DoubleSupplier random) {
+        this.baseWeights = new LinkedHashMap<>(baseWeights);
+        this.defaultProvider = defaultProvider;
+        this.random = random;
+        this.baseWeights.keySet().forEach(provider -> health.put(provider, new Health()));
+    }
+
+    // Picks among the providers accepted by the filter, e.g. those whose circuit is closed
+    String choose(Predicate<String> available) {
+        Map<String, Double> weights = getEffectiveWeights();
+        weights.keySet().removeIf(available.negate());
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (total <= 0) {
+            return defaultProvider;
+        }
+
+        double pick = random.getAsDouble() * total;
+        for (Map.Entry<String, Double> entry : weights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return defaultProvider;
+    }
+
+    void recordSuccess(String provider, long latencyMillis) {
+        Health h = health.get(provider);
+        if (h != null) {
+            h.record(false, latencyMillis);
+        }
+    }
+
+    void recordFailure(String provider) {
+        Health h = health.get(provider);
+        if (h != null) {
+            h.record(true, -1);
+        }
+    }
+
+    Map<String, Double> getEffectiveWeights() {
+        double fastest = Double.MAX_VALUE;
+        for (Health h : health.values()) {
+            double latency = h.getLatencyEwma();
+            if (latency > 0) {
+                fastest = Math.min(fastest, latency);
+            }
+        }
+
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : baseWeights.entrySet()) {
+            double base = entry.getValue();
+            Health h = health.get(entry.getKey());
+
+            double errorFactor = Math.max(0.0, 1.0 - h.getErrorRate() / DRAIN_ERROR_RATE);
+            double latency = h.getLatencyEwma();
+            double latencyFactor = latency > 0 && fastest < Double.MAX_VALUE ? Math.sqrt(fastest / latency) : 1.0;
+
+            weights.put(entry.getKey(), Math.max(base * errorFactor * latencyFactor, base * MIN_SHARE));
+        }
+        return weights;
+    }
+
+    // Provider -> summary line for the routing command
+    Map<String, String> describe() {
+        Map<String, Double> weights = getEffectiveWeights();
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+
+        Map<String, String> lines = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : weights.entrySet()) {
+            Health h = health.get(entry.getKey());
+            double share = total > 0 ? entry.getValue() / total * 100.0 : 0.0;
+            long latency = Math.round(h.getLatencyEwma());
+            lines.put(entry.getKey(), String.format("weight %.2f -> %.2f (%.0f%% of traffic), errors %.0f%%, latency %s",
+                    baseWeights.get(entry.getKey()), entry.getValue(), share, h.getErrorRate() * 100.0,
+                    latency > 0 ? latency + "ms" : "n/a"));
+        }
+        return lines;
+    }
+
+    private static class Health {
+        private double errorRate;
+        private double latencyEwma = -1;
+
+        synchronized void record(boolean failed, long latencyMillis) {
+            errorRate += ALPHA * ((failed ? 1.0 : 0.0) - errorRate);
+            if (latencyMillis >= 0) {
+                latencyEwma = latencyEwma < 0 ? latencyMillis : latencyEwma + ALPHA * (latencyMillis - latencyEwma);
+            }
+        }
+
+        synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        synchronized double getLatencyEwma() {
+            return latencyEwma;
+        }
+    }
+}
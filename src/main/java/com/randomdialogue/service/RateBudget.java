@@ -0,0 +1,308 @@
+package com.randomdialogue.service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Account-wide requests-per-minute and tokens-per-minute budget for one
+ * provider, kept as two token buckets. Limits come from the config and from the
+ * provider's rate-limit response headers. Requests are released earliest deadline
+ * first, each once both buckets can cover it, instead of being sent into a 429.
+ * Requests whose deadline passes while waiting are dropped without using budget.
+ */
+class RateBudget {
+    private static final long MINUTE_MILLIS = 60_000L;
+    // Pause after a 429 that doesn't say how long to wait
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1_000L;
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private final int configuredRpm;
+    private final int configuredTpm;
+    private final Executor executor;
+    private final DeadlineQueue<Waiter> waiters = new DeadlineQueue<>();
+
+    // Limits of 0 mean unknown, the bucket is not enforced
+    private double rpmLimit;
+    private double tpmLimit;
+    private double requestsAvailable;
+    private double tokensAvailable;
+    private long lastRefillMillis = System.currentTimeMillis();
+    private long pausedUntilMillis;
+    private boolean pumpScheduled;
+
+    private long pacedRequests;
+    private long totalWaitMillis;
+    private long expired;
+
+    RateBudget(int configuredRpm, int configuredTpm, Executor executor) {
+        this.configuredRpm = configuredRpm;
+        this.configuredTpm = configuredTpm;
+        this.executor = executor;
+        this.rpmLimit = configuredRpm;
+        this.tpmLimit = configuredTpm;
+        this.requestsAvailable = configuredRpm;
+        this.tokensAvailable = configuredTpm;
+    }
+
+    // Completes once the request may be sent, or fails with DeadlineExceededException
+    // if its deadline passes first. Cancelling it gives up the place in line.
+    CompletableFuture<Void> acquire(int estimatedTokens, long deadlineNanos) {
+        Waiter waiter = new Waiter(estimatedTokens, deadlineNanos);
+        List<Waiter> ready;
+        synchronized (this) {
+            waiters.add(waiter, deadlineNanos);
+            ready = pump();
+        }
+        ready.forEach(Waiter::release);
+        return waiter.future;
+    }
+
+    // Must hold the lock. Returns the waiters that may go now or have expired.
+    private List<Waiter> pump() {
+        long now = System.currentTimeMillis();
+        refill(now);
+
+        List<Waiter> ready = new ArrayList<>();
+        while (!waiters.isEmpty()) {
+            Waiter waiter = waiters.peek();
+            if (waiter.future.isDone()) {
+                waiters.poll();
+                continue;
+            }
+            long nowNanos = System.nanoTime();
+            if (nowNanos >= waiter.deadlineNanos) {
+                waiters.poll();
+                expired++;
+                waiter.expired = true;
+                ready.add(waiter);
+                continue;
+            }
+
+            long wait = waitMillis(waiter.tokens, now);
+            if (wait > 0) {
+                // Wake up in time to drop the head if its deadline comes first
+                if (waiter.deadlineNanos != DeadlineQueue.NO_DEADLINE) {
+                    wait = Math.min(wait, (waiter.deadlineNanos - nowNanos) / 1_000_000L + 1);
+                }
+                schedulePump(wait);
+                break;
+            }
+
+            waiters.poll();
+            if (rpmLimit > 0) {
+                requestsAvailable -= 1;
+            }
+            if (tpmLimit > 0) {
+                tokensAvailable -= Math.min(waiter.tokens, tpmLimit);
+            }
+            long waited = now - waiter.createdMillis;
+            if (waited > 0) {
+                pacedRequests++;
+                totalWaitMillis += waited;
+            }
+            ready.add(waiter);
+        }
+        return ready;
+    }
+
+    private long waitMillis(int tokens, long now) {
+        long wait = Math.max(0, pausedUntilMillis - now);
+        if (rpmLimit > 0 && requestsAvailable < 1) {
+            wait = Math.max(wait, (long) Math.ceil((1 - requestsAvailable) * MINUTE_MILLIS / rpmLimit));
+        }
+        // A request larger than the whole bucket waits for a full bucket rather than forever
+        double needed = Math.min(tokens, tpmLimit);
+        if (tpmLimit > 0 && tokensAvailable < needed) {
+            wait = Math.max(wait, (long) Math.ceil((needed - tokensAvailable) * MINUTE_MILLIS / tpmLimit));
+        }
+        return wait;
+    }
+
+    private void schedulePump(long delayMillis) {
+        if (pumpScheduled) {
+            return;
+        }
+        pumpScheduled = true;
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            List<Waiter> ready;
+            synchronized (this) {
+                pumpScheduled = false;
+                ready = pump();
+            }
+            ready.forEach(Waiter::release);
+        });
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillMillis;
+        lastRefillMillis = now;
+        if (rpmLimit > 0) {
+            requestsAvailable = Math.min(rpmLimit, requestsAvailable + elapsed * rpmLimit / MINUTE_MILLIS);
+        }
+        if (tpmLimit > 0) {
+            tokensAvailable = Math.min(tpmLimit, tokensAvailable + elapsed * tpmLimit / MINUTE_MILLIS);
+        }
+    }
+
+    // Syncs the buckets with what the provider reports. Handles the OpenAI/Groq
+    // x-ratelimit-* headers, Anthropic's anthropic-ratelimit-* headers and retry-after.
+    void onResponse(TransportResponse response) {
+        long now = System.currentTimeMillis();
+        List<Waiter> ready;
+        synchronized (this) {
+            refill(now);
+
+            double requestLimit = firstNumber(response, "x-ratelimit-limit-requests",
+                    "anthropic-ratelimit-requests-limit");
+            double tokenLimit = firstNumber(response, "x-ratelimit-limit-tokens",
+                    "anthropic-ratelimit-tokens-limit", "anthropic-ratelimit-input-tokens-limit");
+            if (requestLimit > 0) {
+                if (rpmLimit <= 0) {
+                    requestsAvailable = requestLimit; // First time we learn the limit
+                }
+                rpmLimit = configuredRpm > 0 ? Math.min(configuredRpm, requestLimit) : requestLimit;
+            }
+            if (tokenLimit > 0) {
+                if (tpmLimit <= 0) {
+                    tokensAvailable = tokenLimit;
+                }
+                tpmLimit = configuredTpm > 0 ? Math.min(configuredTpm, tokenLimit) : tokenLimit;
+            }
+
+            // The provider's count is authoritative, but it may not include requests
+            // still in flight, so only ever lower our own figure
+            double requestsRemaining = firstNumber(response, "x-ratelimit-remaining-requests",
+                    "anthropic-ratelimit-requests-remaining");
+            double tokensRemaining = firstNumber(response, "x-ratelimit-remaining-tokens",
+                    "anthropic-ratelimit-tokens-remaining", "anthropic-ratelimit-input-tokens-remaining");
+            if (requestsRemaining >= 0 && rpmLimit > 0) {
+                requestsAvailable = Math.min(requestsAvailable, requestsRemaining);
+            }
+            if (tokensRemaining >= 0 && tpmLimit > 0) {
+                tokensAvailable = Math.min(tokensAvailable, tokensRemaining);
+            }
+
+            if (response.statusCode == 429) {
+                long retryAfter = retryAfterMillis(response, now);
+                pausedUntilMillis = Math.max(pausedUntilMillis,
+                        now + (retryAfter >= 0 ? retryAfter : DEFAULT_RETRY_AFTER_MILLIS));
+            }
+
+            ready = pump();
+        }
+        ready.forEach(Waiter::release);
+    }
+
+    private static double firstNumber(TransportResponse response, String... names) {
+        for (String name : names) {
+            String value = response.getHeader(name);
+            if (value != null) {
+                try {
+                    return Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    // Try the next header
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Returns -1 if the response doesn't say
+    static long retryAfterMillis(TransportResponse response, long now) {
+        String retryAfter = response.getHeader("retry-after");
+        if (retryAfter != null) {
+            try {
+                return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                // HTTP-date form is not used by the providers we talk to
+            }
+        }
+
+        String reset = response.getHeader("x-ratelimit-reset-requests");
+        if (reset == null) {
+            reset = response.getHeader("x-ratelimit-reset-tokens");
+        }
+        if (reset != null) {
+            return parseDurationMillis(reset);
+        }
+
+        String anthropicReset = response.getHeader("anthropic-ratelimit-requests-reset");
+        if (anthropicReset != null) {
+            try {
+                return Math.max(0, Instant.parse(anthropicReset.trim()).toEpochMilli() - now);
+            } catch (DateTimeParseException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // Parses durations like "20ms", "1.5s" or "6m0s"; -1 if unreadable
+    static long parseDurationMillis(String value) {
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "ms" -> amount;
+                case "s" -> amount * 1000;
+                case "m" -> amount * 60_000;
+                default -> amount * 3_600_000;
+            };
+        }
+        return found ? (long) millis : -1;
+    }
+
+    // Whether nothing is waiting and at least this share of each known limit is
+    // unused, i.e. there's room for work that can wait
+    synchronized boolean hasSpare(double share) {
+        long now = System.currentTimeMillis();
+        refill(now);
+        return waiters.isEmpty() && now >= pausedUntilMillis
+                && (rpmLimit <= 0 || requestsAvailable >= rpmLimit * share)
+                && (tpmLimit <= 0 || tokensAvailable >= tpmLimit * share);
+    }
+
+    // e.g. "requests 45/60, tokens 5200/6000 per minute, 0 waiting, 12 paced (avg 350ms), 1 expired"
+    synchronized String describe() {
+        refill(System.currentTimeMillis());
+        String requests = rpmLimit > 0 ? Math.round(Math.max(0, requestsAvailable)) + "/" + Math.round(rpmLimit) : "unknown";
+        String tokens = tpmLimit > 0 ? Math.round(Math.max(0, tokensAvailable)) + "/" + Math.round(tpmLimit) : "unknown";
+        return "requests " + requests + ", tokens " + tokens + " per minute, " + waiters.size() + " waiting, "
+                + pacedRequests + " paced" + (pacedRequests > 0 ? " (avg " + totalWaitMillis / pacedRequests + "ms)" : "")
+                + (expired > 0 ? ", " + expired + " expired" : "");
+    }
+
+    private static final class Waiter {
+        final int tokens;
+        final long deadlineNanos;
+        final long createdMillis = System.currentTimeMillis();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        boolean expired;
+
+        Waiter(int tokens, long deadlineNanos) {
+            this.tokens = tokens;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        // Called outside the lock
+        void release() {
+            if (expired) {
+                future.completeExceptionally(new LLMService.DeadlineExceededException(
+                        "Deadline passed while waiting for rate budget"));
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.randomdialogue.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.gson.Gson;
+
+/**
+ * Request body for one provider and model, serialized once and kept as UTF-8
+ * bytes around two slots: the instructions, which are the same for every
+ * message with a filter, and the user content after them. Sending a message
+ * only escapes the parts that change (history, notes and the chat message
+ * itself) into a per-thread scratch buffer, next to pre-encoded instructions,
+ * instead of building and serializing a map for every request.
+ */
+final class RequestTemplate {
+    // Stand in for the two slots while the template is serialized
+    static final String INSTRUCTIONS = "\u0000instructions\u0000";
+    static final String USER_CONTENT = "\u0000user_content\u0000";
+
+    private static final Gson GSON = new Gson();
+    private static final byte[] MAX_TOKENS = ascii(",\"max_tokens\":");
+    private static final byte[] JSON_MODE = ascii(",\"response_format\":{\"type\":\"json_object\"}");
+    private static final byte[] STREAM = ascii(",\"stream\":true");
+    private static final byte[] STREAM_USAGE = ascii(",\"stream_options\":{\"include_usage\":true}");
+    private static final byte[] CHOICES = ascii(",\"n\":");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    // Scratch buffers that grew past this are not kept for the next request
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<Buffer> SCRATCH = ThreadLocal.withInitial(Buffer::new);
+
+    private final String model;
+    private final String systemPrompt;
+    private final double temperature;
+    private final boolean promptCaching;
+    private final boolean maxTokensForBatchesOnly;
+    private final boolean jsonModeForBatches;
+    private final boolean streamUsage;
+
+    // Up to the instructions
+    private final byte[] head;
+    // Between the instructions and the user content, empty when they share a string
+    private final byte[] middle;
+    // After the user content up to, not including, the final brace
+    private final byte[] tail;
+
+    // body holds the fields that don't change between requests, with INSTRUCTIONS
+    // and USER_CONTENT in string values, in that order. max_tokens, response_format,
+    // stream and n are added per request. streamUsage asks an OpenAI-style provider
+    // to end a stream with a usage chunk, which a streamed reply otherwise lacks.
+    RequestTemplate(Map<String, Object> body, String model, String systemPrompt, double temperature,
+            boolean promptCaching, boolean maxTokensForBatchesOnly, boolean jsonModeForBatches,
+            boolean streamUsage) {
+        String json = GSON.toJson(body);
+        String instructions = escapedPlaceholder(INSTRUCTIONS);
+        String content = escapedPlaceholder(USER_CONTENT);
+        int instructionsAt = json.indexOf(instructions);
+        int contentAt = json.indexOf(content);
+        if (instructionsAt < 0 || contentAt < instructionsAt || !json.endsWith("}")) {
+            throw new IllegalArgumentException("Request body has no instructions and user content placeholders: "
+                    + json);
+        }
+
+        this.head = json.substring(0, instructionsAt).getBytes(StandardCharsets.UTF_8);
+        this.middle = json.substring(instructionsAt + instructions.length(), contentAt)
+                .getBytes(StandardCharsets.UTF_8);
+        this.tail = json.substring(contentAt + content.length(), json.length() - 1).getBytes(StandardCharsets.UTF_8);
+        this.model = model;
+        this.systemPrompt = systemPrompt;
+        this.temperature = temperature;
+        this.promptCaching = promptCaching;
+        this.maxTokensForBatchesOnly = maxTokensForBatchesOnly;
+        this.jsonModeForBatches = jsonModeForBatches;
+        this.streamUsage = streamUsage;
+    }
+
+    // False once the config this template was built from has changed
+    boolean isBuiltFrom(String model, String systemPrompt, double temperature, boolean promptCaching) {
+        return this.model.equals(model) && this.systemPrompt.equals(systemPrompt) && this.temperature == temperature
+                && this.promptCaching == promptCaching;
+    }
+
+    // instructions is already escaped (see encode); the user content is context + message
+    byte[] render(byte[] instructions, String context, String message, int maxTokens, boolean batch,
+            boolean streaming) {
+        return render(instructions, context, message, maxTokens, batch, streaming, 1);
+    }
+
+    // choices above 1 asks an OpenAI-style provider for that many completions
+    byte[] render(byte[] instructions, String context, String message, int maxTokens, boolean batch,
+            boolean streaming, int choices) {
+        Buffer buffer = SCRATCH.get();
+        buffer.length = 0;
+
+        buffer.write(head);
+        buffer.write(instructions);
+        buffer.write(middle);
+        writeEscaped(buffer, context);
+        writeEscaped(buffer, message);
+        buffer.write(tail);
+        if (batch || !maxTokensForBatchesOnly) {
+            buffer.write(MAX_TOKENS);
+            buffer.writeDigits(maxTokens);
+        }
+        if (batch && jsonModeForBatches) {
+            buffer.write(JSON_MODE);
+        }
+        if (streaming) {
+            buffer.write(STREAM);
+            if (streamUsage) {
+                buffer.write(STREAM_USAGE);
+            }
+        }
+        if (choices > 1) {
+            buffer.write(CHOICES);
+            buffer.writeDigits(choices);
+        }
+        buffer.write((byte) '}');
+
+        // The entity must outlive this thread's next request (retries, async send),
+        // so it gets its own exact-size copy
+        byte[] body = Arrays.copyOf(buffer.bytes, buffer.length);
+        if (buffer.bytes.length > MAX_RETAINED_BUFFER) {
+            SCRATCH.remove();
+        }
+        return body;
+    }
+
+    // Text as the UTF-8 bytes of a JSON string's contents, without the quotes
+    static byte[] encode(String text) {
+        Buffer buffer = new Buffer();
+        writeEscaped(buffer, text);
+        return Arrays.copyOf(buffer.bytes, buffer.length);
+    }
+
+    private static void writeEscaped(Buffer buffer, String text) {
+        int length = text.length();
+        buffer.ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.write((byte) '\\');
+                buffer.write((byte) c);
+            } else if (c < 0x20) {
+                writeControl(buffer, c);
+            } else if (c < 0x80) {
+                buffer.write((byte) c);
+            } else if (c < 0x800) {
+                buffer.write((byte) (0xC0 | (c >> 6)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.write((byte) (0xF0 | (codePoint >> 18)));
+                buffer.write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced like String.getBytes does
+                buffer.write((byte) '?');
+            } else {
+                buffer.write((byte) (0xE0 | (c >> 12)));
+                buffer.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static void writeControl(Buffer buffer, char c) {
+        buffer.write((byte) '\\');
+        switch (c) {
+            case '\n' -> buffer.write((byte) 'n');
+            case '\r' -> buffer.write((byte) 'r');
+            case '\t' -> buffer.write((byte) 't');
+            case '\b' -> buffer.write((byte) 'b');
+            case '\f' -> buffer.write((byte) 'f');
+            default -> {
+                buffer.write((byte) 'u');
+                buffer.write((byte) '0');
+                buffer.write((byte) '0');
+                buffer.write(HEX[c >> 4]);
+                buffer.write(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    private static String escapedPlaceholder(String placeholder) {
+        String json = GSON.toJson(placeholder);
+        return json.substring(1, json.length() - 1);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class Buffer {
+        byte[] bytes = new byte[2048];
+        int length;
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void write(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void writeDigits(int value) {
+            String digits = Integer.toString(value);
+            ensure(digits.length());
+            for (int i = 0; i < digits.length(); i++) {
+                bytes[length++] = (byte) digits.charAt(i);
+            }
+        }
+    }
+}
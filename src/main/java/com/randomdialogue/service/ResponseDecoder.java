@@ -0,0 +1,215 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Pulls the reply text and token usage out of a non-streamed completion
+ * response. Reads the JSON as a token stream and skips everything else, so no
+ * tree of maps and lists is built for fields that are thrown away.
+ *
+ * OpenAI-style: {"choices": [{"message": {"content": "..."}}, ...], "usage": {"prompt_tokens": n, "completion_tokens": n,
+ *     "prompt_tokens_details": {"cached_tokens": n}}}
+ * Anthropic: {"content": [{"text": "..."}], "usage": {"input_tokens": n, "output_tokens": n,
+ *     "cache_read_input_tokens": n, "cache_creation_input_tokens": n}}
+ */
+final class ResponseDecoder {
+    private static final int DECODE_BUFFER_SIZE = 512;
+
+    static final class Decoded {
+        // Null if the response had no reply text where expected
+        final String content;
+        // Reply texts of any further choices, when more than one was asked for
+        final List<String> alternatives;
+        // All prompt tokens, including those read from or written to the provider's prompt cache
+        final int inputTokens;
+        final int outputTokens;
+        final int cacheReadTokens;
+        // Only reported by Anthropic, OpenAI-style providers cache without being asked
+        final int cacheWriteTokens;
+
+        Decoded(String content, List<String> alternatives, int inputTokens, int outputTokens, int cacheReadTokens,
+                int cacheWriteTokens) {
+            this.content = content;
+            this.alternatives = alternatives;
+            this.inputTokens = inputTokens;
+            this.outputTokens = outputTokens;
+            this.cacheReadTokens = cacheReadTokens;
+            this.cacheWriteTokens = cacheWriteTokens;
+        }
+    }
+
+    private ResponseDecoder() {
+    }
+
+    // Throws IOException for malformed JSON or a value of an unexpected type
+    static Decoded decode(InputStream body, boolean isAnthropic) throws IOException {
+        // A plain InputStreamReader allocates an 8KB byte buffer per response, more
+        // than most whole responses; a small one is enough
+        Reader source = Channels.newReader(Channels.newChannel(body), StandardCharsets.UTF_8.newDecoder(),
+                DECODE_BUFFER_SIZE);
+        try (JsonReader reader = new JsonReader(source)) {
+            return isAnthropic ? decodeAnthropic(reader) : decodeOpenAi(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unexpected JSON structure: " + e.getMessage(), e);
+        }
+    }
+
+    private static Decoded decodeOpenAi(JsonReader reader) throws IOException {
+        String content = null;
+        List<String> alternatives = List.of();
+        int[] usage = new int[4];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "choices" -> {
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        content = readField(reader, "message", "content");
+                    }
+                    while (reader.hasNext()) {
+                        String alternative = readField(reader, "message", "content");
+                        if (alternative != null) {
+                            if (alternatives.isEmpty()) {
+                                alternatives = new ArrayList<>();
+                            }
+                            alternatives.add(alternative);
+                        }
+                    }
+                    reader.endArray();
+                }
+                case "usage" -> readOpenAiUsage(reader, usage);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Decoded(content, alternatives, usage[0], usage[1], usage[2], usage[3]);
+    }
+
+    private static Decoded decodeAnthropic(JsonReader reader) throws IOException {
+        String content = null;
+        int[] usage = new int[4];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "content" -> {
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        content = readField(reader, null, "text");
+                    }
+                    skipRest(reader);
+                    reader.endArray();
+                }
+                case "usage" -> readAnthropicUsage(reader, usage);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Decoded(content, List.of(), usage[0], usage[1], usage[2], usage[3]);
+    }
+
+    // Reads object.field, or object.parent.field when parent is given. Null if missing.
+    private static String readField(JsonReader reader, String parent, String field) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (parent != null && name.equals(parent) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                value = readField(reader, null, field);
+            } else if (parent == null && name.equals(field) && reader.peek() == JsonToken.STRING) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    // usage is {input, output, cache read, cache write}
+    private static void readOpenAiUsage(JsonReader reader, int[] usage) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "prompt_tokens" -> usage[0] = readCount(reader);
+                case "completion_tokens" -> usage[1] = readCount(reader);
+                case "prompt_tokens_details" -> usage[2] = readCachedTokens(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int readCachedTokens(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0;
+        }
+        int cached = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("cached_tokens")) {
+                cached = readCount(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cached;
+    }
+
+    // Anthropic's input_tokens leaves out cached tokens, they are added back so
+    // input means the same for every provider
+    private static void readAnthropicUsage(JsonReader reader, int[] usage) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "input_tokens" -> usage[0] += readCount(reader);
+                case "output_tokens" -> usage[1] = readCount(reader);
+                case "cache_read_input_tokens" -> {
+                    usage[2] = readCount(reader);
+                    usage[0] += usage[2];
+                }
+                case "cache_creation_input_tokens" -> {
+                    usage[3] = readCount(reader);
+                    usage[0] += usage[3];
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // 0 for null or anything else that isn't a number
+    private static int readCount(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return 0;
+        }
+        return reader.nextInt();
+    }
+
+    private static void skipRest(JsonReader reader) throws IOException {
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The cached transformations of one message and filter: a small pool of
+ * different wordings, so a repeated message doesn't get the same reply every
+ * time. Immutable; adding variants makes a new pool. Also counts how many
+ * completions went into it, duplicates included, so a filter that keeps
+ * giving the same answer stops being asked for more.
+ */
+final class ResponseVariants {
+    // Separates variants when stored as text, and is dropped from the variants themselves
+    private static final char SEPARATOR = '\u0000';
+    // Starts stored text with the number of completions, before the first separator
+    private static final char GENERATED = '\u0001';
+
+    private final List<String> texts;
+    private final int generated;
+
+    private ResponseVariants(List<String> texts, int generated) {
+        this.texts = texts;
+        this.generated = generated;
+    }
+
+    static ResponseVariants of(String text) {
+        return new ResponseVariants(List.of(text), 1);
+    }
+
+    // At most max variants, the existing ones first
+    ResponseVariants plus(Collection<String> more, int max) {
+        List<String> merged = new ArrayList<>(texts);
+        for (String text : more) {
+            if (merged.size() >= max) {
+                break;
+            }
+            if (!merged.contains(text)) {
+                merged.add(text);
+            }
+        }
+        return new ResponseVariants(List.copyOf(merged), generated + more.size());
+    }
+
+    ResponseVariants plus(ResponseVariants other, int max) {
+        ResponseVariants merged = plus(other.texts, max);
+        return new ResponseVariants(merged.texts, generated + other.generated);
+    }
+
+    // A variant at random
+    String pick() {
+        return texts.size() == 1 ? texts.get(0) : texts.get(ThreadLocalRandom.current().nextInt(texts.size()));
+    }
+
+    int size() {
+        return texts.size();
+    }
+
+    List<String> texts() {
+        return texts;
+    }
+
+    // Whether it's worth asking for more to reach target variants. After twice
+    // as many completions as wanted, the filter clearly keeps repeating itself.
+    boolean wantsMore(int target) {
+        return texts.size() < target && generated < target * 2;
+    }
+
+    // For the disk cache and off-heap storage, e.g. "\u00013\u0000Ahoy\u0000Avast"
+    String encode() {
+        StringBuilder encoded = new StringBuilder().append(GENERATED).append(generated);
+        for (String text : texts) {
+            encoded.append(SEPARATOR).append(text.replace(String.valueOf(SEPARATOR), ""));
+        }
+        return encoded.toString();
+    }
+
+    // Also reads a plain transformation, as cached before there were variants
+    static ResponseVariants decode(String encoded) {
+        String[] parts = encoded.split(String.valueOf(SEPARATOR));
+        int generated = 0;
+        int first = 0;
+        if (parts.length > 1 && parts[0].length() > 1 && parts[0].charAt(0) == GENERATED) {
+            try {
+                generated = Integer.parseInt(parts[0], 1, parts[0].length(), 10);
+                first = 1;
+            } catch (NumberFormatException e) {
+                // Not a count after all
+            }
+        }
+        List<String> texts = Arrays.stream(parts, first, parts.length)
+                .filter(text -> !text.isEmpty())
+                .toList();
+        return texts.isEmpty() ? of(encoded) : new ResponseVariants(texts, Math.max(generated, texts.size()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decides which failed provider exchanges are worth another attempt and how
+ * long to wait first. Connection errors, timeouts, 408, 429 and 5xx are
+ * transient; other 4xx (bad key, bad request) would fail the same way again.
+ * Waits use decorrelated jitter, so clients that failed together don't retry
+ * together.
+ */
+final class RetryPolicy {
+    static final long BASE_DELAY_MILLIS = 200;
+    static final long MAX_DELAY_MILLIS = 5_000;
+
+    private RetryPolicy() {
+    }
+
+    static boolean isRetryable(TransportResponse response, Throwable error) {
+        if (error != null) {
+            // Cancellation, a full limiter queue or a missed deadline are our own decisions
+            for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                if (cause instanceof CancellationException) {
+                    return false;
+                }
+                if (cause instanceof IOException || cause instanceof TimeoutException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int status = response.statusCode;
+        return status == 408 || status == 429 || (status >= 500 && status != 501);
+    }
+
+    // Random between the base delay and three times the previous delay, capped
+    static long nextDelayMillis(long previousDelayMillis) {
+        long upper = Math.min(MAX_DELAY_MILLIS, Math.max(BASE_DELAY_MILLIS, previousDelayMillis) * 3);
+        return ThreadLocalRandom.current().nextLong(BASE_DELAY_MILLIS, upper + 1);
+    }
+
+    // How long the provider asked us to wait, or -1 if it didn't say
+    static long retryAfterMillis(TransportResponse response, long nowMillis) {
+        if (response == null) {
+            return -1;
+        }
+        // The rate-limit reset headers only say when a 429 can be retried
+        if (response.statusCode == 429) {
+            return RateBudget.retryAfterMillis(response, nowMillis);
+        }
+
+        String retryAfter = response.getHeader("retry-after");
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Finds an earlier short message close enough to a new one that its cached
+ * transformation can be reused, e.g. "helloo" for "hello". Messages are
+ * compared as sets of character bigrams (with the start and end marked), by
+ * Jaccard similarity. Candidates come from MinHash locality-sensitive hashing:
+ * each message gets SIGNATURE_SIZE minimum hashes of its bigrams, cut into
+ * BANDS bands, and two messages are candidates if any band matches. With
+ * two hashes per band, messages 80% alike are candidates over 99.9% of the
+ * time and unrelated ones rarely are; the similarity of each candidate is
+ * then computed exactly.
+ *
+ * Holds at most maximumSize messages, dropping the oldest. All methods take
+ * the index's lock.
+ */
+class SimilarityIndex {
+    private static final int SIGNATURE_SIZE = 16;
+    private static final int ROWS_PER_BAND = 2;
+    private static final int BANDS = SIGNATURE_SIZE / ROWS_PER_BAND;
+    // Marks the start and end of a message, so "ab" and "abab" differ
+    private static final char BOUNDARY = '\u0000';
+    private static final long[] SEEDS = new SplittableRandom(0x5EED).longs(SIGNATURE_SIZE).toArray();
+
+    private final int maximumSize;
+    // Cache key -> indexed message, oldest first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+
+    SimilarityIndex(int maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+    }
+
+    // canonical is the message as normalized for the cache key
+    synchronized void add(String filterName, String canonical, String cacheKey) {
+        if (maximumSize == 0) {
+            return;
+        }
+        remove(cacheKey);
+        int[] bigrams = bigrams(canonical);
+        Entry entry = new Entry(filterName, canonical, cacheKey, bigrams, bandHashes(filterName, bigrams));
+        entries.put(cacheKey, entry);
+        for (long band : entry.bands) {
+            buckets.computeIfAbsent(band, k -> new ArrayList<>(2)).add(entry);
+        }
+        if (entries.size() > maximumSize) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+
+    // The most similar message for the filter at or above the threshold, if any
+    synchronized Match find(String filterName, String canonical, double threshold) {
+        int[] bigrams = bigrams(canonical);
+        Entry best = null;
+        double bestSimilarity = threshold;
+        for (long band : bandHashes(filterName, bigrams)) {
+            List<Entry> bucket = buckets.get(band);
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry entry : bucket) {
+                if (entry == best || !entry.filterName.equals(filterName) || entry.canonical.equals(canonical)) {
+                    continue;
+                }
+                double similarity = jaccard(bigrams, entry.bigrams);
+                if (similarity >= bestSimilarity && (best == null || similarity > bestSimilarity)) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        return best != null ? new Match(best.cacheKey, best.canonical, bestSimilarity) : null;
+    }
+
+    synchronized void remove(String cacheKey) {
+        Entry entry = entries.remove(cacheKey);
+        if (entry == null) {
+            return;
+        }
+        for (long band : entry.bands) {
+            List<Entry> bucket = buckets.get(band);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    buckets.remove(band);
+                }
+            }
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // Sorted and distinct, each bigram packed as two chars into an int
+    static int[] bigrams(String text) {
+        int[] codes = new int[text.length() + 1];
+        char previous = BOUNDARY;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            codes[i] = previous << 16 | c;
+            previous = c;
+        }
+        codes[text.length()] = previous << 16 | BOUNDARY;
+        Arrays.sort(codes);
+
+        int distinct = 0;
+        for (int i = 0; i < codes.length; i++) {
+            if (i == 0 || codes[i] != codes[i - 1]) {
+                codes[distinct++] = codes[i];
+            }
+        }
+        return Arrays.copyOf(codes, distinct);
+    }
+
+    static double jaccard(int[] a, int[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    private static long[] bandHashes(String filterName, int[] bigrams) {
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int bigram : bigrams) {
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                signature[i] = Math.min(signature[i], mix(bigram ^ SEEDS[i]));
+            }
+        }
+
+        long[] bands = new long[BANDS];
+        long filterHash = filterName.hashCode();
+        for (int band = 0; band < BANDS; band++) {
+            long hash = mix(filterHash * 31 + band);
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                hash = mix(hash ^ signature[band * ROWS_PER_BAND + row]);
+            }
+            bands[band] = hash;
+        }
+        return bands;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    record Match(String cacheKey, String canonical, double similarity) {
+    }
+
+    private static final class Entry {
+        final String filterName;
+        final String canonical;
+        final String cacheKey;
+        final int[] bigrams;
+        final long[] bands;
+
+        Entry(String filterName, String canonical, String cacheKey, int[] bigrams, long[] bands) {
+            this.filterName = filterName;
+            this.canonical = canonical;
+            this.cacheKey = cacheKey;
+            this.bigrams = bigrams;
+            this.bands = bands;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.randomdialogue.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser for server-sent events. Bytes are split on '\n' before
+ * decoding, which is safe for UTF-8 because '\n' never occurs inside a
+ * multi-byte sequence.
+ */
+class SseParser {
+
+    interface Listener {
+        // Called once per dispatched event. Return false to stop reading the stream.
+        boolean onEvent(String event, String data);
+    }
+
+    private final Listener listener;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private final StringBuilder data = new StringBuilder();
+    private String eventName;
+    private boolean stopped;
+
+    SseParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Returns false once the listener has asked to stop
+    boolean feed(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length && !stopped; i++) {
+            byte b = buffer[i];
+            if (b == '\n') {
+                processLine();
+            } else {
+                line.write(b);
+            }
+        }
+        return !stopped;
+    }
+
+    boolean feed(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && !stopped) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                processLine();
+            } else {
+                line.write(b);
+            }
+        }
+        return !stopped;
+    }
+
+    // Flushes a trailing event that was not followed by a blank line
+    void finish() {
+        if (line.size() > 0) {
+            processLine();
+        }
+        dispatch();
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    private void processLine() {
+        String text = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+
+        if (text.isEmpty()) {
+            dispatch();
+            return;
+        }
+
+        if (text.startsWith(":")) {
+            return; // Comment / keep-alive
+        }
+
+        int colon = text.indexOf(':');
+        String field = colon >= 0 ? text.substring(0, colon) : text;
+        String value = colon >= 0 ? text.substring(colon + 1) : "";
+        if (value.startsWith(" ")) {
+            value = value.substring(1);
+        }
+
+        switch (field) {
+            case "event" -> eventName = value;
+            case "data" -> {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(value);
+            }
+            default -> {
+                // id/retry are not used by the providers we talk to
+            }
+        }
+    }
+
+    private void dispatch() {
+        if (stopped || (data.length() == 0 && eventName == null)) {
+            return;
+        }
+
+        String event = eventName;
+        String payload = data.toString();
+        eventName = null;
+        data.setLength(0);
+
+        if (!listener.onEvent(event, payload)) {
+            stopped = true;
+        }
+    }
+}
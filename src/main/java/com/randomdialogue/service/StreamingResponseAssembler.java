@@ -0,0 +1,251 @@
+package com.randomdialogue.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Assembles streamed completion deltas (OpenAI-style chat chunks or Anthropic
+ * message events) and decides when enough text has arrived to stop reading.
+ * Also picks up the token usage the stream reports: OpenAI-style providers
+ * send it in a last chunk when asked with stream_options (Groq under x_groq),
+ * Anthropic splits it between message_start and message_delta.
+ */
+class StreamingResponseAssembler implements SseParser.Listener {
+    // Rough characters-per-token ratio used to turn max_tokens into a character budget
+    private static final int CHARS_PER_TOKEN = 4;
+    // Sentences allowed beyond the sentence count of the original message
+    private static final int SENTENCE_SLACK = 1;
+
+    private final boolean isAnthropic;
+    private final boolean stopAtSentence;
+    private final int targetSentences;
+    private final int charBudget;
+    private final long startNanos;
+
+    private final StringBuilder content = new StringBuilder();
+    private long firstTokenNanos = -1;
+    private boolean stoppedEarly;
+    private String error;
+    // {input, output, cache read, cache write} as in ResponseDecoder, input including cached tokens
+    private final int[] usage = new int[4];
+    private boolean usageReported;
+
+    StreamingResponseAssembler(boolean isAnthropic, String originalMessage, int maxTokens, boolean stopAtSentence) {
+        this.isAnthropic = isAnthropic;
+        this.stopAtSentence = stopAtSentence;
+        this.targetSentences = countSentences(originalMessage) + SENTENCE_SLACK;
+        this.charBudget = maxTokens * CHARS_PER_TOKEN;
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized boolean onEvent(String event, String data) {
+        if (!isAnthropic && "[DONE]".equals(data)) {
+            return false;
+        }
+
+        JsonObject payload;
+        try {
+            JsonElement parsed = JsonParser.parseString(data);
+            if (!parsed.isJsonObject()) {
+                return true;
+            }
+            payload = parsed.getAsJsonObject();
+        } catch (JsonSyntaxException e) {
+            return true; // Ignore keep-alives and anything else we can't read
+        }
+
+        String delta = isAnthropic ? readAnthropicEvent(event, payload) : readOpenAIChunk(payload);
+        if (error != null) {
+            return false;
+        }
+        if (delta == null) {
+            // Anthropic signals the end of the message with an explicit event
+            return !(isAnthropic && "message_stop".equals(eventType(event, payload)));
+        }
+
+        if (firstTokenNanos < 0 && !delta.isEmpty()) {
+            firstTokenNanos = System.nanoTime();
+        }
+        content.append(delta);
+
+        if (content.length() >= charBudget) {
+            stoppedEarly = true;
+            return false;
+        }
+
+        if (stopAtSentence) {
+            int boundary = findSentenceBoundary(content, targetSentences);
+            if (boundary > 0) {
+                content.setLength(boundary);
+                stoppedEarly = true;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String readOpenAIChunk(JsonObject payload) {
+        if (payload.has("error")) {
+            error = payload.get("error").toString();
+            return null;
+        }
+
+        JsonObject reported = object(payload, "usage");
+        if (reported == null && object(payload, "x_groq") != null) {
+            reported = object(payload.getAsJsonObject("x_groq"), "usage");
+        }
+        if (reported != null) {
+            usage[0] = count(reported, "prompt_tokens");
+            usage[1] = count(reported, "completion_tokens");
+            JsonObject details = object(reported, "prompt_tokens_details");
+            usage[2] = details != null ? count(details, "cached_tokens") : 0;
+            usageReported = true;
+        }
+
+        JsonArray choices = payload.has("choices") && payload.get("choices").isJsonArray()
+                ? payload.getAsJsonArray("choices")
+                : null;
+        if (choices == null || choices.isEmpty() || !choices.get(0).isJsonObject()) {
+            return null;
+        }
+
+        JsonObject choice = choices.get(0).getAsJsonObject();
+        JsonElement delta = choice.get("delta");
+        if (delta == null || !delta.isJsonObject()) {
+            return null;
+        }
+
+        JsonElement text = delta.getAsJsonObject().get("content");
+        return text != null && text.isJsonPrimitive() ? text.getAsString() : null;
+    }
+
+    private String readAnthropicEvent(String event, JsonObject payload) {
+        String type = eventType(event, payload);
+        if ("error".equals(type)) {
+            error = payload.has("error") ? payload.get("error").toString() : payload.toString();
+            return null;
+        }
+        if ("message_start".equals(type) && object(payload, "message") != null) {
+            JsonObject reported = object(payload.getAsJsonObject("message"), "usage");
+            if (reported != null) {
+                usage[2] = count(reported, "cache_read_input_tokens");
+                usage[3] = count(reported, "cache_creation_input_tokens");
+                usage[0] = count(reported, "input_tokens") + usage[2] + usage[3];
+            }
+            return null;
+        }
+        if ("message_delta".equals(type) && object(payload, "usage") != null) {
+            // The output count is final here, the input was given in message_start
+            usage[1] = count(payload.getAsJsonObject("usage"), "output_tokens");
+            usageReported = true;
+            return null;
+        }
+        if (!"content_block_delta".equals(type) || !payload.has("delta")) {
+            return null;
+        }
+
+        JsonObject delta = payload.getAsJsonObject("delta");
+        JsonElement text = delta.get("text");
+        return text != null && text.isJsonPrimitive() ? text.getAsString() : null;
+    }
+
+    // The member if it is an object, else null
+    private static JsonObject object(JsonObject parent, String name) {
+        JsonElement member = parent.get(name);
+        return member != null && member.isJsonObject() ? member.getAsJsonObject() : null;
+    }
+
+    private static int count(JsonObject usage, String name) {
+        JsonElement value = usage.get(name);
+        try {
+            return value != null && value.isJsonPrimitive() ? value.getAsInt() : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String eventType(String event, JsonObject payload) {
+        if (event != null) {
+            return event;
+        }
+        return payload.has("type") ? payload.get("type").getAsString() : null;
+    }
+
+    // Index just past the closing punctuation of the Nth complete sentence, or -1.
+    // A sentence only counts as complete once whitespace follows its terminator,
+    // so "Mr." or "3.5" at the end of a chunk doesn't end the stream.
+    static int findSentenceBoundary(CharSequence text, int sentences) {
+        int found = 0;
+        for (int i = 0; i < text.length() - 1; i++) {
+            if (!isTerminator(text.charAt(i))) {
+                continue;
+            }
+
+            int end = i + 1;
+            while (end < text.length() && (isTerminator(text.charAt(end)) || isCloser(text.charAt(end)))) {
+                end++;
+            }
+            if (end < text.length() && Character.isWhitespace(text.charAt(end))) {
+                found++;
+                if (found >= sentences) {
+                    return end;
+                }
+            }
+            i = end - 1;
+        }
+        return -1;
+    }
+
+    static int countSentences(String message) {
+        int sentences = 0;
+        boolean pendingText = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (isTerminator(c)) {
+                if (pendingText) {
+                    sentences++;
+                }
+                pendingText = false;
+            } else if (!Character.isWhitespace(c)) {
+                pendingText = true;
+            }
+        }
+        return Math.max(1, sentences + (pendingText ? 1 : 0));
+    }
+
+    private static boolean isTerminator(char c) {
+        return c == '.' || c == '!' || c == '?' || c == '…';
+    }
+
+    private static boolean isCloser(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == '”' || c == '’';
+    }
+
+    synchronized String getContent() {
+        return content.toString();
+    }
+
+    synchronized String getError() {
+        return error;
+    }
+
+    synchronized boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    // {input, output, cache read, cache write}, or null if the stream ended before
+    // the provider reported it, e.g. because it was stopped early
+    synchronized int[] getUsage() {
+        return usageReported ? usage.clone() : null;
+    }
+
+    // Returns -1 if no content arrived
+    synchronized long getTimeToFirstTokenMillis() {
+        return firstTokenNanos < 0 ? -1 : (firstTokenNanos - startNanos) / 1_000_000L;
+    }
+}
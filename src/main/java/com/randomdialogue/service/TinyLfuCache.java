@@ -0,0 +1,322 @@
+package com.randomdialogue.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of at most maximumSize entries, each dropped a fixed time after it was
+ * written. Eviction is W-TinyLFU: new entries go into a small LRU window
+ * (1% of the size); an entry pushed out of the window only enters the main
+ * segmented LRU if FrequencySketch says it is used more often than the entry
+ * it would replace. One-off messages therefore can't flush out the phrases
+ * players repeat all day. The main space is split into probation (20%) and
+ * protected (80%) segments; an entry hit again while on probation moves to
+ * protected, pushing the coldest protected entry back to probation.
+ *
+ * Expiry is amortized: entries are also kept in write order, and every access
+ * drops the expired ones from its head, so there is no full sweep. All methods
+ * take the cache's lock, which is held for a few pointer moves.
+ */
+class TinyLfuCache<K, V> implements CacheStore<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private int maximumSize;
+    private int windowMax;
+    private int protectedMax;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<K, Node<K, V>> data;
+    private FrequencySketch sketch;
+
+    // Access order, least recent first. Sentinels of circular lists.
+    private final Node<K, V> window = Node.sentinel();
+    private final Node<K, V> probation = Node.sentinel();
+    private final Node<K, V> protectedSegment = Node.sentinel();
+    // Write order, oldest first
+    private final Node<K, V> writeOrder = Node.sentinel();
+    private int windowSize;
+    private int protectedSize;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long expirations;
+
+    TinyLfuCache(int maximumSize, long ttlMillis) {
+        this(maximumSize, ttlMillis, System::nanoTime);
+    }
+
+    TinyLfuCache(int maximumSize, long ttlMillis, LongSupplier nanoClock) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        this.protectedMax = (this.maximumSize - windowMax) * 4 / 5;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.clock = nanoClock;
+        this.data = new HashMap<>(Math.max(16, this.maximumSize * 4 / 3 + 1));
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        long now = clock.getAsLong();
+        expire(now);
+        sketch.increment(key);
+
+        Node<K, V> node = data.get(key);
+        if (node != null && now - node.writtenAt >= ttlNanos) {
+            // Only possible for an entry put with an age, which can sit behind newer ones in write order
+            remove(node);
+            expirations++;
+            node = null;
+        }
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        onHit(node);
+        hits++;
+        return node.value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        Node<K, V> node = data.get(key);
+        return node != null && clock.getAsLong() - node.writtenAt < ttlNanos;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public synchronized void put(K key, V value, long ageMillis) {
+        if (maximumSize == 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        expire(now);
+        long writtenAt = now - ageMillis * 1_000_000L;
+
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            // A rewrite restarts the entry's time to live
+            node.value = value;
+            node.writtenAt = writtenAt;
+            unlinkWrite(node);
+            linkWrite(node);
+            onHit(node);
+            return;
+        }
+
+        sketch.increment(key);
+        node = new Node<>(key, value, writtenAt);
+        data.put(key, node);
+        linkLast(window, node);
+        node.segment = WINDOW;
+        windowSize++;
+        linkWrite(node);
+        evict();
+    }
+
+    @Override
+    public synchronized V merge(K key, V value, BinaryOperator<V> combine) {
+        long now = clock.getAsLong();
+        Node<K, V> node = data.get(key);
+        if (node == null || now - node.writtenAt >= ttlNanos) {
+            put(key, value);
+            return value;
+        }
+        node.value = combine.apply(node.value, value);
+        return node.value;
+    }
+
+    @Override
+    public synchronized int size() {
+        return data.size();
+    }
+
+    @Override
+    public synchronized int maximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public synchronized void resize(int maximumSize) {
+        int previous = this.maximumSize;
+        this.maximumSize = Math.max(0, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        this.protectedMax = (this.maximumSize - windowMax) * 4 / 5;
+        if (this.maximumSize > previous) {
+            // Sized for the old capacity it would saturate; the counts start over
+            sketch = new FrequencySketch(this.maximumSize);
+        }
+
+        while (protectedSize > protectedMax) {
+            Node<K, V> demoted = protectedSegment.next;
+            unlink(demoted);
+            linkLast(probation, demoted);
+            demoted.segment = PROBATION;
+            protectedSize--;
+        }
+        evict();
+        while (data.size() > this.maximumSize) {
+            // Coldest first: probation, then protected, then the window
+            Node<K, V> victim = probation.next != probation ? probation.next
+                    : protectedSegment.next != protectedSegment ? protectedSegment.next : window.next;
+            remove(victim);
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized void cleanUp() {
+        expire(clock.getAsLong());
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW -> moveToEnd(window, node);
+            case PROBATION -> {
+                unlink(node);
+                linkLast(protectedSegment, node);
+                node.segment = PROTECTED;
+                protectedSize++;
+                if (protectedSize > protectedMax) {
+                    Node<K, V> demoted = protectedSegment.next;
+                    unlink(demoted);
+                    linkLast(probation, demoted);
+                    demoted.segment = PROBATION;
+                    protectedSize--;
+                }
+            }
+            default -> moveToEnd(protectedSegment, node);
+        }
+    }
+
+    private void evict() {
+        while (windowSize > windowMax) {
+            // The window's oldest entry becomes a candidate for the main space
+            Node<K, V> candidate = window.next;
+            unlink(candidate);
+            windowSize--;
+            linkLast(probation, candidate);
+            candidate.segment = PROBATION;
+
+            if (data.size() <= maximumSize) {
+                continue;
+            }
+            Node<K, V> victim = probation.next;
+            if (victim == candidate) {
+                // Probation held nothing else, so the candidate is the only choice
+                victim = protectedSegment.next != protectedSegment ? protectedSegment.next : candidate;
+            }
+            if (victim != candidate && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                remove(victim);
+                evictions++;
+            } else {
+                remove(candidate);
+                rejections++;
+            }
+        }
+    }
+
+    private void expire(long now) {
+        while (writeOrder.writeNext != writeOrder && now - writeOrder.writeNext.writtenAt >= ttlNanos) {
+            remove(writeOrder.writeNext);
+            expirations++;
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        unlink(node);
+        unlinkWrite(node);
+        if (node.segment == WINDOW) {
+            windowSize--;
+        } else if (node.segment == PROTECTED) {
+            protectedSize--;
+        }
+    }
+
+    private static <K, V> void linkLast(Node<K, V> sentinel, Node<K, V> node) {
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+    }
+
+    private static <K, V> void moveToEnd(Node<K, V> sentinel, Node<K, V> node) {
+        unlink(node);
+        linkLast(sentinel, node);
+    }
+
+    private void linkWrite(Node<K, V> node) {
+        node.writePrev = writeOrder.writePrev;
+        node.writeNext = writeOrder;
+        writeOrder.writePrev.writeNext = node;
+        writeOrder.writePrev = node;
+    }
+
+    private static <K, V> void unlinkWrite(Node<K, V> node) {
+        node.writePrev.writeNext = node.writeNext;
+        node.writeNext.writePrev = node.writePrev;
+    }
+
+    // e.g. "87/100 entries, 1200 hits, 300 misses (80% hit rate), 12 evicted, 30 rejected, 5 expired"
+    @Override
+    public synchronized String describe() {
+        long lookups = hits + misses;
+        return data.size() + "/" + maximumSize + " entries, " + hits + " hits, " + misses + " misses"
+                + (lookups > 0 ? " (" + Math.round(hits * 100.0 / lookups) + "% hit rate)" : "")
+                + ", " + evictions + " evicted, " + rejections + " rejected, " + expirations + " expired";
+    }
+
+    synchronized long hitCount() {
+        return hits;
+    }
+
+    synchronized long evictionCount() {
+        return evictions;
+    }
+
+    synchronized long rejectionCount() {
+        return rejections;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        long writtenAt;
+        int segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+        Node<K, V> writePrev;
+        Node<K, V> writeNext;
+
+        Node(K key, V value, long writtenAt) {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> sentinel = new Node<>(null, null, 0);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            sentinel.writePrev = sentinel;
+            sentinel.writeNext = sentinel;
+            return sentinel;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.randomdialogue.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket holding up to capacity permits, refilled evenly over the period.
+ * The whole state is one long: the time at which the bucket will be full again
+ * (GCRA). Tokens left are (capacity * interval - (fullAt - now)) / interval, so
+ * acquiring is a single compare-and-set with no lock and no allocation.
+ */
+class TokenBucket {
+    private static final VarHandle FULL_AT;
+
+    static {
+        try {
+            FULL_AT = MethodHandles.lookup().findVarHandle(TokenBucket.class, "fullAt", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final LongSupplier clock;
+
+    // At or before now means the bucket is full
+    private volatile long fullAt;
+
+    TokenBucket(int capacity, long periodMillis) {
+        this(capacity, periodMillis, System::nanoTime);
+    }
+
+    TokenBucket(int capacity, long periodMillis, LongSupplier nanoClock) {
+        this.intervalNanos = capacity > 0 ? periodMillis * 1_000_000L / capacity : Long.MAX_VALUE;
+        this.capacityNanos = capacity > 0 ? intervalNanos * capacity : 0;
+        this.clock = nanoClock;
+        this.fullAt = nanoClock.getAsLong();
+    }
+
+    boolean tryAcquire() {
+        if (capacityNanos == 0) {
+            return false;
+        }
+
+        long now = clock.getAsLong();
+        while (true) {
+            long current = fullAt;
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (FULL_AT.compareAndSet(this, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // True once the bucket has been full for at least idleNanos, at which point it
+    // is no different from a new one and can be dropped
+    boolean isIdle(long idleNanos) {
+        return clock.getAsLong() - fullAt >= idleNanos;
+    }
+}
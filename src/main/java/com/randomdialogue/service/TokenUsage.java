@@ -0,0 +1,42 @@
+package com.randomdialogue.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the tokens a provider reported using. A streamed reply
+ * cut short before its usage arrived is counted from an estimate instead.
+ */
+class TokenUsage {
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong inputTokens = new AtomicLong();
+    private final AtomicLong outputTokens = new AtomicLong();
+    private final AtomicLong cacheReadTokens = new AtomicLong();
+    private final AtomicLong cacheWriteTokens = new AtomicLong();
+    private final AtomicLong estimated = new AtomicLong();
+
+    // input includes the cached tokens
+    void record(int input, int output, int cacheRead, int cacheWrite) {
+        responses.incrementAndGet();
+        inputTokens.addAndGet(input);
+        outputTokens.addAndGet(output);
+        cacheReadTokens.addAndGet(cacheRead);
+        cacheWriteTokens.addAndGet(cacheWrite);
+    }
+
+    void recordEstimate(int input, int output) {
+        estimated.incrementAndGet();
+        record(input, output, 0, 0);
+    }
+
+    // e.g. "48200 in (31000 from cache, 1200 written to cache), 3100 out over 120 responses"
+    String describe() {
+        long read = cacheReadTokens.get();
+        long written = cacheWriteTokens.get();
+        String cached = read > 0 || written > 0
+                ? " (" + read + " from cache" + (written > 0 ? ", " + written + " written to cache" : "") + ")"
+                : "";
+        long guessed = estimated.get();
+        return inputTokens.get() + " in" + cached + ", " + outputTokens.get() + " out over " + responses.get()
+                + " responses" + (guessed > 0 ? " (" + guessed + " estimated)" : "");
+    }
+}
@@ -0,0 +1,55 @@
+package com.randomdialogue.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.hc.core5.http.Header;
+
+class TransportResponse {
+    private static final byte[] EMPTY = new byte[0];
+
+    final int statusCode;
+    // Raw UTF-8 bytes, decoded straight from a stream by ResponseDecoder
+    private final byte[] body;
+    private final Map<String, String> headers;
+
+    TransportResponse(int statusCode, String body, Header[] responseHeaders) {
+        this(statusCode, body.getBytes(StandardCharsets.UTF_8), responseHeaders);
+    }
+
+    TransportResponse(int statusCode, byte[] body, Header[] responseHeaders) {
+        this.statusCode = statusCode;
+        this.body = body != null ? body : EMPTY;
+
+        Map<String, String> headerMap = new HashMap<>();
+        if (responseHeaders != null) {
+            for (Header header : responseHeaders) {
+                // Header names are case-insensitive, store them lower-cased for lookups
+                headerMap.put(header.getName().toLowerCase(Locale.ROOT), header.getValue());
+            }
+        }
+        this.headers = Collections.unmodifiableMap(headerMap);
+    }
+
+    // Decodes the body to a string, for logs and error messages
+    String getBody() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    InputStream openBody() {
+        return new ByteArrayInputStream(body);
+    }
+
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+}
@@ -10,14 +10,12 @@ import com.randomdialogue.filter.FilterManager;
 import com.randomdialogue.service.LLMService;
 
 /**
- * Rate-limited test suite that respects Groq's TPM limits
- * Runs tests with delays to avoid hitting 6,000 TPM limit
+ * Rate-limited test suite that respects the provider's RPM/TPM limits
+ * Relies on the service's rate budget when enabled, otherwise runs tests with fixed delays
  */
 public class RateLimitedLLMTester {
     private static final int DELAY_BETWEEN_TESTS_MS = 1500; // 1.5 seconds between tests
     private static final int ESTIMATED_TOKENS_PER_TEST = 400; // Conservative estimate
-    private static final int MAX_RPM = 60; // Your RPM limit
-    private static final int MAX_TPM = 6000; // Your TPM limit
 
     private final LLMService llmService;
     private final FilterManager filterManager;
@@ -33,7 +31,7 @@ public class RateLimitedLLMTester {
     public void runQuickTests() {
         System.out.println("🧪 Running Quick LLM Tests (Rate Limited)...");
         System.out.println("⏱️  Estimated time: ~1 minute (12 tests × 1.5s delay)");
-        System.out.println("📊 Your limits: 60 RPM, 6000 TPM");
+        System.out.println("📊 Your limits: " + describeLimits());
         System.out.println("📋 Available filters: " + String.join(", ", filterManager.getEnabledFilterNames()));
         System.out.println();
 
@@ -47,7 +45,7 @@ public class RateLimitedLLMTester {
     public void runAllTests() {
         System.out.println("🧪 Running Full LLM Test Suite (Rate Limited)...");
         System.out.println("⏱️  Estimated time: ~3-4 minutes (25-30 tests × 1.5s delay)");
-        System.out.println("📊 Your limits: 60 RPM, 6000 TPM");
+        System.out.println("📊 Your limits: " + describeLimits());
         System.out.println("📋 Available filters: " + String.join(", ", filterManager.getEnabledFilterNames()));
         System.out.println();
 
@@ -147,8 +145,8 @@ public class RateLimitedLLMTester {
     private void testMessageWithDelay(String player, String message, String filterName,
             java.util.function.Predicate<String> validator, String description) {
         try {
-            // Rate limiting delay
-            if (!results.isEmpty()) {
+            // Rate limiting delay, unless the service paces requests itself
+            if (!results.isEmpty() && !config.rateBudgetEnabled) {
                 System.out.print("⏳ Waiting " + (DELAY_BETWEEN_TESTS_MS / 1000) + "s for rate limits...");
                 Thread.sleep(DELAY_BETWEEN_TESTS_MS);
                 System.out.println(" Done!");
@@ -192,6 +190,14 @@ public class RateLimitedLLMTester {
         }
     }
 
+    private String describeLimits() {
+        if (!config.rateBudgetEnabled) {
+            return "rate budget disabled, using a fixed " + DELAY_BETWEEN_TESTS_MS + "ms delay";
+        }
+        return (config.rateBudgetRpm > 0 ? config.rateBudgetRpm + " RPM" : "RPM from provider headers") + ", "
+                + (config.rateBudgetTpm > 0 ? config.rateBudgetTpm + " TPM" : "TPM from provider headers");
+    }
+
     private void recordResult(boolean passed, String description, String error,
             String input, String output) {
         TestResult result = new TestResult(passed, description, error, input, output);
@@ -0,0 +1,145 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final TransportResponse OK = new TransportResponse(200, "{}", null);
+    private static final TransportResponse TOO_MANY = new TransportResponse(429, "", null);
+
+    // Far from zero, so the first cut isn't mistaken for one right after the last
+    private final AtomicLong clock = new AtomicLong(1_000_000_000_000L);
+    private final List<CompletableFuture<TransportResponse>> started = new ArrayList<>();
+
+    @Test
+    void testRequestsOverTheLimitWait() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10);
+        submit(limiter, 5);
+
+        assertEquals(2, started.size());
+
+        complete(OK, 100);
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    void testGrowsByAboutOnePerLimitOfHealthyResponses() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 100);
+        submit(limiter, 100);
+
+        complete(OK, 100);
+
+        // 4 + 1/4 + 1/4.25 + ...
+        assertEquals(4.92, limiter.getLimit(), 0.01);
+    }
+
+    @Test
+    void testDoesNotGrowWhileTheLimitIsUnused() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 100);
+        for (int i = 0; i < 20; i++) {
+            submit(limiter, 1);
+            complete(OK, 100);
+        }
+
+        assertEquals(4.0, limiter.getLimit());
+    }
+
+    @Test
+    void testNeverGrowsPastTheMaximum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 8);
+        submit(limiter, 500);
+        for (int round = 0; round < 20; round++) {
+            complete(OK, 100);
+        }
+
+        assertEquals(8.0, limiter.getLimit());
+    }
+
+    @Test
+    void testOverloadCutsOncePerRoundTrip() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2, 8);
+        submit(limiter, 100);
+        complete(OK, 100);
+
+        completeOne(TOO_MANY, 100);
+        assertEquals(6.0, limiter.getLimit());
+
+        // Same round trip, already cut
+        completeOne(TOO_MANY, 0);
+        assertEquals(6.0, limiter.getLimit());
+
+        completeOne(TOO_MANY, 100);
+        assertEquals(4.5, limiter.getLimit());
+    }
+
+    @Test
+    void testNeverShrinksPastTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2, 8);
+        submit(limiter, 100);
+        complete(OK, 100);
+        for (int i = 0; i < 20; i++) {
+            completeOne(TOO_MANY, 100);
+        }
+
+        assertEquals(2.0, limiter.getLimit());
+    }
+
+    @Test
+    void testLatencyWellAboveBaselineCutsTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2, 8);
+        submit(limiter, 100);
+        complete(OK, 100);
+
+        completeOne(OK, 300);
+
+        assertEquals(7.2, limiter.getLimit(), 1e-9);
+    }
+
+    @Test
+    void testTimeoutCountsAsOverload() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2, 8);
+        submit(limiter, 100);
+        complete(OK, 100);
+
+        clock.addAndGet(100_000_000L);
+        started.remove(0).completeExceptionally(new TimeoutException("read timed out"));
+
+        assertEquals(6.0, limiter.getLimit());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimiter(initial, min, max, 1000, Runnable::run, clock::get);
+    }
+
+    private void submit(AdaptiveConcurrencyLimiter limiter, int requests) {
+        for (int i = 0; i < requests; i++) {
+            limiter.submit(() -> {
+                CompletableFuture<TransportResponse> exchange = new CompletableFuture<>();
+                started.add(exchange);
+                return exchange;
+            }, DeadlineQueue.NO_DEADLINE);
+        }
+    }
+
+    // Answers every request in flight after the given time. Queued requests
+    // that start as a result are left in flight.
+    private void complete(TransportResponse response, long afterMillis) {
+        List<CompletableFuture<TransportResponse>> inFlight = new ArrayList<>(started);
+        started.clear();
+        clock.addAndGet(afterMillis * 1_000_000L);
+        inFlight.forEach(exchange -> exchange.complete(response));
+    }
+
+    private void completeOne(TransportResponse response, long afterMillis) {
+        clock.addAndGet(afterMillis * 1_000_000L);
+        started.remove(0).complete(response);
+    }
+}
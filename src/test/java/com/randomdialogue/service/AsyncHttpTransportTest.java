@@ -0,0 +1,157 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.randomdialogue.config.RandomDialogueConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncHttpTransportTest {
+
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    // Holds requests to /slow until the test lets them go
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger slowArrived = new AtomicInteger();
+    // Client ports seen by the server, one per connection
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private HttpServer server;
+    private String baseUrl;
+    private AsyncHttpTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(handlers);
+        server.createContext("/echo", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] request = exchange.getRequestBody().readAllBytes();
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            if (auth != null) {
+                exchange.getResponseHeaders().add("X-Seen-Auth", auth);
+            }
+            respond(exchange, 201, "echo " + new String(request, StandardCharsets.UTF_8));
+        });
+        server.createContext("/slow", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            slowArrived.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "done");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        if (transport != null) {
+            transport.close();
+        }
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    @Test
+    void testPostCompletesWithStatusBodyAndHeaders() throws Exception {
+        transport = new AsyncHttpTransport(config(4));
+
+        TransportResponse response = transport.post(baseUrl + "/echo",
+                "{\"a\":1}".getBytes(StandardCharsets.UTF_8), Map.of("Authorization", "Bearer test"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(201, response.statusCode);
+        assertEquals("echo {\"a\":1}", response.getBody());
+        assertEquals("Bearer test", response.getHeader("X-Seen-Auth"));
+    }
+
+    @Test
+    void testCancellingThePostAbortsTheExchange() throws Exception {
+        // One connection, so a later request only gets through if the cancelled one let go of it
+        transport = new AsyncHttpTransport(config(1));
+
+        CompletableFuture<TransportResponse> stuck = transport.post(baseUrl + "/slow", new byte[0], Map.of());
+        awaitTrue(() -> slowArrived.get() == 1);
+        assertTrue(stuck.cancel(true));
+
+        TransportResponse next = transport.post(baseUrl + "/echo", "next".getBytes(StandardCharsets.UTF_8), Map.of())
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(201, next.statusCode);
+        assertTrue(stuck.isCancelled());
+        assertEquals(2, clientPorts.size());
+    }
+
+    @Test
+    void testRequestsBeyondThePoolWaitForAConnection() throws Exception {
+        transport = new AsyncHttpTransport(config(2));
+
+        List<CompletableFuture<TransportResponse>> posts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            posts.add(transport.post(baseUrl + "/slow", new byte[0], Map.of()));
+        }
+        awaitTrue(() -> slowArrived.get() == 2);
+        // Give any extra connection time to show up
+        Thread.sleep(200);
+        assertEquals(2, slowArrived.get());
+
+        release.countDown();
+        for (CompletableFuture<TransportResponse> post : posts) {
+            assertEquals(200, post.get(5, TimeUnit.SECONDS).statusCode);
+        }
+        assertEquals(6, slowArrived.get());
+        assertEquals(2, clientPorts.size());
+    }
+
+    private static RandomDialogueConfig config(int maxConnectionsPerRoute) {
+        RandomDialogueConfig config = new RandomDialogueConfig();
+        config.timeoutSeconds = 30;
+        config.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        config.maxConnectionsTotal = maxConnectionsPerRoute;
+        return config;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met within 5s");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.randomdialogue.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.randomdialogue.filter.CacheNormalization;
+import com.randomdialogue.filter.FilterDefinition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheKeysTest {
+    private static final String SYSTEM_PROMPT = "You transform chat messages.";
+
+    private final CacheKeys keys = new CacheKeys();
+    private final FilterDefinition pirate = new FilterDefinition("PIRATE", "Talk like a pirate", "🏴‍☠️", "gold", true);
+
+    @Test
+    void testVariantsShareAKey() {
+        String key = keys.keyFor("hi", pirate, SYSTEM_PROMPT, 1);
+
+        assertEquals(key, keys.keyFor("Hi!", pirate, SYSTEM_PROMPT, 1));
+        assertEquals(key, keys.keyFor("hi ", pirate, SYSTEM_PROMPT, 1));
+        assertEquals(key, keys.keyFor("  HI  ?!", pirate, SYSTEM_PROMPT, 1));
+        assertEquals(32, key.length());
+    }
+
+    @Test
+    void testDifferentMessagesGetDifferentKeys() {
+        // "Aa" and "BB" have the same String.hashCode
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(keys.keyFor("Aa", pirate, SYSTEM_PROMPT, 1), keys.keyFor("BB", pirate, SYSTEM_PROMPT, 1));
+        assertNotEquals(keys.keyFor("hi", pirate, SYSTEM_PROMPT, 1), keys.keyFor("hii", pirate, SYSTEM_PROMPT, 1));
+    }
+
+    @Test
+    void testPromptsAndFilterAreKeyed() {
+        FilterDefinition robot = new FilterDefinition("ROBOT", "Talk like a robot", "🤖", "gray", true);
+        String key = keys.keyFor("hello", pirate, SYSTEM_PROMPT, 1);
+
+        assertNotEquals(key, keys.keyFor("hello", robot, SYSTEM_PROMPT, 1));
+        assertNotEquals(key, keys.keyFor("hello", pirate, "Another system prompt.", 1));
+
+        pirate.prompt = "Talk like a cautious pirate";
+        assertNotEquals(key, keys.keyFor("hello", pirate, SYSTEM_PROMPT, 2));
+    }
+
+    @Test
+    void testNormalizationIsPerFilter() {
+        CacheNormalization exact = new CacheNormalization();
+        exact.lowercase = false;
+        exact.trimTrailingPunctuation = false;
+        pirate.normalization = exact;
+
+        assertNotEquals(keys.keyFor("hi", pirate, SYSTEM_PROMPT, 1), keys.keyFor("Hi", pirate, SYSTEM_PROMPT, 1));
+        assertNotEquals(keys.keyFor("hi", pirate, SYSTEM_PROMPT, 1), keys.keyFor("hi!", pirate, SYSTEM_PROMPT, 1));
+        assertEquals(keys.keyFor("hi", pirate, SYSTEM_PROMPT, 1), keys.keyFor("hi  ", pirate, SYSTEM_PROMPT, 1));
+    }
+
+    @Test
+    void testCanonicalForm() {
+        CacheNormalization normalization = CacheNormalization.DEFAULT;
+
+        assertEquals("good game", normalization.apply("  Good   GAME!!! "));
+        assertEquals("noo way", normalization.apply("nooooo way..."));
+        // Nothing would be left, so the message is kept as it is
+        assertEquals("???", normalization.apply("???"));
+    }
+
+    @Test
+    void testReplayCountsCollisionsAndNormalizedHits() {
+        List<String> chat = List.of("hi", "Hi!", "hi ", "Aa", "BB");
+        Map<String, String> report = CacheReplay.replay(chat, pirate, 100,
+                message -> keys.keyFor(message, pirate, SYSTEM_PROMPT, 1));
+
+        assertEquals("5", report.get("Messages"));
+        assertEquals("20.0% (1 hits, 1 hash collisions)", report.get("Hit rate (old keys)"));
+        assertEquals("40.0% (2 hits, 2 on a differently written message)", report.get("Hit rate (normalized keys)"));
+    }
+}
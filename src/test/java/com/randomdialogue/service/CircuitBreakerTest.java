@@ -0,0 +1,89 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private long now;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        now = 1_000;
+        breaker = new CircuitBreaker(3, 10_000, () -> now);
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Open breaker should fail fast");
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(),
+                "Failures separated by a success are not consecutive");
+    }
+
+    @Test
+    void testHalfOpenAllowsSingleProbe() {
+        tripBreaker();
+
+        now += 10_000;
+        assertTrue(breaker.allowsRequests());
+        assertTrue(breaker.tryAcquire(), "First request after the open period is the probe");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Only one probe at a time");
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void testFailedProbeReopens() {
+        tripBreaker();
+
+        now += 10_000;
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Failed probe should restart the open period");
+    }
+
+    @Test
+    void testReleasedProbeCanBeRetried() {
+        tripBreaker();
+
+        now += 10_000;
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+
+        assertTrue(breaker.tryAcquire(), "A cancelled probe should not block the next one");
+    }
+
+    private void tripBreaker() {
+        for (int i = 0; i < 3; i++) {
+            breaker.tryAcquire();
+            breaker.recordFailure();
+        }
+    }
+}
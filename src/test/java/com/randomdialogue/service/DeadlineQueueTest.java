@@ -0,0 +1,38 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineQueueTest {
+
+    @Test
+    void testEarliestDeadlineFirst() {
+        DeadlineQueue<String> queue = new DeadlineQueue<>();
+        queue.add("late", 300);
+        queue.add("early", 100);
+        queue.add("middle", 200);
+
+        assertEquals(100, queue.peekDeadline());
+        assertEquals("early", queue.poll());
+        assertEquals("middle", queue.poll());
+        assertEquals("late", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testTiesKeepArrivalOrder() {
+        DeadlineQueue<String> queue = new DeadlineQueue<>();
+        queue.add("first", DeadlineQueue.NO_DEADLINE);
+        queue.add("second", DeadlineQueue.NO_DEADLINE);
+        queue.add("urgent", 50);
+        queue.add("third", DeadlineQueue.NO_DEADLINE);
+
+        assertEquals("urgent", queue.poll());
+        assertEquals("first", queue.poll());
+        assertEquals("second", queue.poll());
+        assertEquals("third", queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(DeadlineQueue.NO_DEADLINE, queue.peekDeadline());
+    }
+}
@@ -0,0 +1,116 @@
+package com.randomdialogue.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskCacheTest {
+    private static final long TTL = 60_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    void testEntriesSurviveReopening() throws IOException {
+        Path file = tempDir.resolve("cache/transformations.log");
+        DiskCache cache = new DiskCache(file, clock::get);
+        cache.put("key-1", "Ahoy, matey!");
+        cache.put("key-2", "Beep boop ✨");
+        cache.put("key-1", "Arr, ahoy!");
+        cache.close();
+
+        clock.addAndGet(1000);
+        DiskCache reopened = new DiskCache(file, clock::get);
+        assertEquals(2, reopened.size());
+        assertEquals("Arr, ahoy!", reopened.get("key-1", TTL).value());
+        assertEquals("Beep boop ✨", reopened.get("key-2", TTL).value());
+        assertEquals(1000, reopened.get("key-2", TTL).ageMillis());
+        assertNull(reopened.get("key-3", TTL));
+        reopened.close();
+    }
+
+    @Test
+    void testEntriesExpire() throws IOException {
+        DiskCache cache = new DiskCache(tempDir.resolve("transformations.log"), clock::get);
+        cache.put("old", "Ahoy");
+        clock.addAndGet(TTL - 1);
+        cache.put("new", "Arr");
+        assertNotNull(cache.get("old", TTL));
+
+        clock.addAndGet(1);
+        assertNull(cache.get("old", TTL));
+        assertEquals("Arr", cache.get("new", TTL).value());
+        cache.close();
+    }
+
+    @Test
+    void testTornRecordIsDropped() throws IOException {
+        Path file = tempDir.resolve("transformations.log");
+        DiskCache cache = new DiskCache(file, clock::get);
+        cache.put("whole", "Ahoy");
+        cache.close();
+        long intact = Files.size(file);
+        // The start of a record that was never finished
+        Files.write(file, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        DiskCache reopened = new DiskCache(file, clock::get);
+        assertEquals("Ahoy", reopened.get("whole", TTL).value());
+        assertEquals(intact, Files.size(file));
+
+        reopened.put("after", "Arr");
+        reopened.close();
+        DiskCache again = new DiskCache(file, clock::get);
+        assertEquals("Arr", again.get("after", TTL).value());
+        again.close();
+    }
+
+    @Test
+    void testCompactionKeepsNewestLiveEntries() throws IOException {
+        Path file = tempDir.resolve("transformations.log");
+        DiskCache cache = new DiskCache(file, clock::get);
+        for (int i = 0; i < 100; i++) {
+            clock.incrementAndGet();
+            cache.put("key-" + i, "reply " + i);
+        }
+        long fullSize = cache.fileSize();
+
+        cache.compact(TTL, fullSize / 2);
+
+        assertTrue(cache.fileSize() <= fullSize * 3 / 8, "was " + cache.fileSize());
+        assertNull(cache.get("key-0", TTL));
+        assertEquals("reply 99", cache.get("key-99", TTL).value());
+        int kept = cache.size();
+        cache.close();
+
+        DiskCache reopened = new DiskCache(file, clock::get);
+        assertEquals(kept, reopened.size());
+        assertEquals("reply 99", reopened.get("key-99", TTL).value());
+        reopened.close();
+    }
+
+    @Test
+    void testServicesShareOneInstance() throws IOException {
+        Path file = tempDir.resolve("transformations.log");
+        DiskCache first = DiskCache.open(file);
+        DiskCache second = DiskCache.open(file);
+        assertSame(first, second);
+
+        first.put("key", "Ahoy");
+        first.release();
+        assertEquals("Ahoy", second.get("key", TTL).value());
+        second.release();
+
+        DiskCache reopened = DiskCache.open(file);
+        assertNotSame(first, reopened);
+        reopened.release();
+    }
+}
@@ -0,0 +1,59 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void testCountsRepeatedKeys() {
+        FrequencySketch sketch = new FrequencySketch(100);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("gg");
+        }
+        sketch.increment("once");
+
+        assertEquals(5, sketch.frequency("gg"));
+        assertEquals(1, sketch.frequency("once"));
+        assertEquals(0, sketch.frequency("never"));
+    }
+
+    @Test
+    void testLongKeysCountLikeTheirBoxedForm() {
+        FrequencySketch sketch = new FrequencySketch(100);
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < 3; i++) {
+            sketch.increment(hash);
+        }
+        sketch.increment(Long.valueOf(hash));
+
+        assertEquals(4, sketch.frequency(hash));
+        assertEquals(4, sketch.frequency(Long.valueOf(hash)));
+        assertEquals(0, sketch.frequency(hash + 1));
+    }
+
+    @Test
+    void testCountsSaturate() {
+        FrequencySketch sketch = new FrequencySketch(100);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hello");
+        }
+
+        assertEquals(16, sketch.frequency("hello"));
+    }
+
+    @Test
+    void testOldCountsAreHalved() {
+        FrequencySketch sketch = new FrequencySketch(10);
+        for (int i = 0; i < 9; i++) {
+            sketch.increment("old");
+        }
+        // The sample size for 10 entries is 100 increments
+        for (int i = 0; i < 91; i++) {
+            sketch.increment("filler" + i);
+        }
+
+        assertTrue(sketch.frequency("old") <= 4, "was " + sketch.frequency("old"));
+    }
+}
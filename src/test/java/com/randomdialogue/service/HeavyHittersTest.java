@@ -0,0 +1,64 @@
+package com.randomdialogue.service;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    @Test
+    void testFindsFrequentItemsAmongOneOffs() {
+        HeavyHitters hitters = new HeavyHitters(20);
+        for (int i = 0; i < 150; i++) {
+            hitters.add("gg", "gg");
+            if (i % 2 == 0) {
+                hitters.add("lol", "LOL");
+            }
+            hitters.add("one-off " + i, "one-off " + i);
+        }
+
+        assertEquals(List.of("gg", "LOL"), hitters.top(2, 1));
+        assertTrue(hitters.size() <= 20);
+    }
+
+    @Test
+    void testNewItemReplacesTheLeastCounted() {
+        HeavyHitters hitters = new HeavyHitters(3);
+        for (int i = 0; i < 3; i++) {
+            hitters.add("gg", "gg");
+            hitters.add("lol", "lol");
+        }
+        hitters.add("hi", "hi");
+        // Takes over the count of "hi", the only counter seen once
+        hitters.add("brb", "brb");
+
+        assertEquals(3, hitters.size());
+        assertEquals(List.of("gg", "lol", "brb"), hitters.top(3, 2));
+    }
+
+    @Test
+    void testKeepsLatestValue() {
+        HeavyHitters hitters = new HeavyHitters(10);
+        hitters.add("hi", "hi");
+        hitters.add("hi", "Hi!");
+
+        assertEquals(List.of("Hi!"), hitters.top(5, 2));
+        assertEquals(List.of(), hitters.top(5, 3));
+    }
+
+    @Test
+    void testOldCountsFade() {
+        HeavyHitters hitters = new HeavyHitters(10);
+        for (int i = 0; i < 60; i++) {
+            hitters.add("yesterday", "yesterday");
+        }
+        // Every 100 additions with 10 counters halve the counts, so 60 old ones count as 30
+        for (int i = 0; i < 80; i++) {
+            hitters.add("today", "today");
+        }
+
+        assertEquals(List.of("today", "yesterday"), hitters.top(2, 1));
+    }
+}
@@ -0,0 +1,99 @@
+package com.randomdialogue.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedCallTest {
+
+    @Test
+    void testCancellingTheResultCancelsEveryLeg() {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        HedgedCall call = new HedgedCall(primary, () -> { });
+        call.addHedge(hedge);
+
+        call.getResult().cancel(true);
+
+        assertTrue(primary.isCancelled());
+        assertTrue(hedge.isCancelled());
+        assertFalse(call.canHedge());
+    }
+
+    @Test
+    void testPrimaryWinsAndCancelsTheHedge() throws Exception {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        AtomicInteger hedgeWins = new AtomicInteger();
+        HedgedCall call = new HedgedCall(primary, hedgeWins::incrementAndGet);
+        call.addHedge(hedge);
+
+        primary.complete("from primary");
+
+        assertEquals("from primary", call.getResult().get());
+        assertTrue(hedge.isCancelled());
+        assertEquals(0, hedgeWins.get());
+    }
+
+    @Test
+    void testHedgeWinsAndCancelsThePrimary() throws Exception {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        AtomicInteger hedgeWins = new AtomicInteger();
+        HedgedCall call = new HedgedCall(primary, hedgeWins::incrementAndGet);
+        call.addHedge(hedge);
+
+        hedge.complete("from hedge");
+
+        assertEquals("from hedge", call.getResult().get());
+        assertTrue(primary.isCancelled());
+        assertEquals(1, hedgeWins.get());
+    }
+
+    @Test
+    void testOneFailedLegDoesNotFailTheCall() throws Exception {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        HedgedCall call = new HedgedCall(primary, () -> { });
+        call.addHedge(hedge);
+
+        primary.completeExceptionally(new IllegalStateException("primary down"));
+        assertFalse(call.getResult().isDone());
+
+        hedge.complete("from hedge");
+        assertEquals("from hedge", call.getResult().get());
+    }
+
+    @Test
+    void testFailsWithTheFirstErrorOnceEveryLegFailed() {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        HedgedCall call = new HedgedCall(primary, () -> { });
+        call.addHedge(hedge);
+
+        IllegalStateException first = new IllegalStateException("hedge down");
+        hedge.completeExceptionally(first);
+        assertFalse(call.getResult().isDone());
+        primary.completeExceptionally(new IllegalStateException("primary down"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.getResult().get());
+        assertSame(first, e.getCause());
+    }
+
+    @Test
+    void testHedgeAddedAfterTheRaceIsCancelled() {
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        HedgedCall call = new HedgedCall(primary, () -> { });
+        primary.complete("from primary");
+        assertFalse(call.canHedge());
+
+        CompletableFuture<String> late = new CompletableFuture<>();
+        call.addHedge(late);
+
+        assertTrue(late.isCancelled());
+    }
+}
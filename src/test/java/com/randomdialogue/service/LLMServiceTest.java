@@ -0,0 +1,146 @@
+package com.randomdialogue.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.randomdialogue.config.RandomDialogueConfig;
+import com.randomdialogue.filter.FilterDefinition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMServiceTest {
+
+    private static final FilterDefinition PIRATE =
+            new FilterDefinition("PIRATE", "Talk like a pirate", "🏴‍☠️", "gold", true);
+
+    private RandomDialogueConfig config;
+    private StubTransport transport;
+    private LLMService service;
+
+    @BeforeEach
+    void setUp() {
+        config = new RandomDialogueConfig();
+        config.rateLimitEnabled = false;
+        config.openaiApiKey = "test";
+        transport = new StubTransport();
+        service = new LLMService(config, null, transport);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testIdenticalRequestsShareOneProviderCall() throws Exception {
+        CompletableFuture<LLMService.TransformationResult> first =
+                service.transformMessageAsync("hello there", PIRATE, "Alice");
+        awaitTrue(() -> transport.calls.size() == 1);
+
+        CompletableFuture<LLMService.TransformationResult> second =
+                service.transformMessageAsync("hello there", PIRATE, "Bob");
+        awaitTrue(() -> "1".equals(service.getStatistics().get("Coalesced requests")));
+
+        transport.calls.get(0).complete(reply("Ahoy there"));
+
+        assertEquals("Ahoy there", first.get().transformedMessage);
+        assertEquals("Ahoy there", second.get().transformedMessage);
+        assertEquals(1, transport.calls.size());
+    }
+
+    @Test
+    void testRequestDuringCompletionNeverStartsASecondCall() throws Exception {
+        int messages = 50;
+        for (int i = 0; i < messages; i++) {
+            String message = "message number " + i;
+            CompletableFuture<LLMService.TransformationResult> first =
+                    service.transformMessageAsync(message, PIRATE, "Alice");
+            int expectedCalls = i + 1;
+            awaitTrue(() -> transport.calls.size() == expectedCalls);
+
+            // Race a repeat of the message against the reply being stored
+            CompletableFuture<TransportResponse> call = transport.calls.get(i);
+            Thread replier = new Thread(() -> call.complete(reply("Arr " + message)));
+            replier.start();
+            CompletableFuture<LLMService.TransformationResult> second =
+                    service.transformMessageAsync(message, PIRATE, "Bob");
+            replier.join();
+
+            assertEquals("Arr " + message, first.get().transformedMessage);
+            assertEquals("Arr " + message, second.get().transformedMessage);
+            assertEquals(expectedCalls, transport.calls.size(), "second call for " + message);
+        }
+    }
+
+    @Test
+    void testOnlyTransientFailuresOpenTheCircuitBreaker() throws Exception {
+        config.retryAttempts = 0;
+        config.circuitBreakerFailureThreshold = 1;
+
+        // A rejected key would fail the same way against a healthy provider
+        CompletableFuture<LLMService.TransformationResult> rejected =
+                service.transformMessageAsync("first message", PIRATE, "Alice");
+        awaitTrue(() -> transport.calls.size() == 1);
+        transport.calls.get(0).complete(new TransportResponse(401, "{\"error\":\"bad key\"}", null));
+        assertEquals("first message", rejected.get().transformedMessage);
+
+        CompletableFuture<LLMService.TransformationResult> overloaded =
+                service.transformMessageAsync("second message", PIRATE, "Alice");
+        awaitTrue(() -> transport.calls.size() == 2);
+        transport.calls.get(1).complete(new TransportResponse(503, "{}", null));
+        assertEquals("second message", overloaded.get().transformedMessage);
+
+        assertEquals("third message", service.transformMessageAsync("third message", PIRATE, "Alice")
+                .get().transformedMessage);
+        assertEquals(2, transport.calls.size());
+        assertEquals("1", service.getStatistics().get("Fast failures (circuit open)"));
+    }
+
+    private static TransportResponse reply(String content) {
+        return new TransportResponse(200, "{\"choices\":[{\"message\":{\"content\":\"" + content + "\"}}]}", null);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met within 5s");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    // Records each post and leaves it pending until the test completes it
+    private static class StubTransport implements HttpTransport {
+        final List<CompletableFuture<TransportResponse>> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletableFuture<TransportResponse> post(String endpoint, byte[] body, Map<String, String> headers) {
+            CompletableFuture<TransportResponse> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> postStreaming(String endpoint, byte[] body,
+                Map<String, String> headers, SseParser.Listener listener) {
+            return post(endpoint, body, headers);
+        }
+
+        @Override
+        public String getName() {
+            return "stub";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
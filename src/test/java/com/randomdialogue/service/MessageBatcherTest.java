@@ -0,0 +1,109 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.randomdialogue.filter.FilterDefinition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBatcherTest {
+    private static final FilterDefinition PIRATE = new FilterDefinition("PIRATE", "Talk like a pirate", "🏴‍☠️",
+            "gold", true);
+
+    private final List<List<MessageBatcher.BatchItem>> sent = new CopyOnWriteArrayList<>();
+
+    private MessageBatcher batcher(long windowMillis, int maxSize) {
+        return new MessageBatcher(windowMillis, maxSize, Runnable::run, sent::add);
+    }
+
+    private static MessageBatcher.BatchItem item(String message) {
+        return new MessageBatcher.BatchItem(message, PIRATE, "Steve", DeadlineQueue.NO_DEADLINE);
+    }
+
+    @Test
+    void testFlushesWhenFull() {
+        try (MessageBatcher batcher = batcher(60_000, 3)) {
+            batcher.submit("one", PIRATE, "Steve", DeadlineQueue.NO_DEADLINE);
+            batcher.submit("two", PIRATE, "Alex", DeadlineQueue.NO_DEADLINE);
+            assertTrue(sent.isEmpty());
+
+            batcher.submit("three", PIRATE, "Steve", DeadlineQueue.NO_DEADLINE);
+            assertEquals(1, sent.size());
+            assertEquals(List.of("one", "two", "three"), sent.get(0).stream().map(i -> i.originalMessage).toList());
+        }
+    }
+
+    @Test
+    void testFlushesWhenTheWindowExpires() throws Exception {
+        try (MessageBatcher batcher = batcher(50, 10)) {
+            CompletableFuture<String> first = batcher.submit("one", PIRATE, "Steve", DeadlineQueue.NO_DEADLINE);
+            batcher.submit("two", PIRATE, "Alex", DeadlineQueue.NO_DEADLINE);
+
+            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sent.isEmpty() && System.nanoTime() < waitUntil) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, sent.size());
+            assertEquals(2, sent.get(0).size());
+            assertSame(first, sent.get(0).get(0).result);
+        }
+    }
+
+    @Test
+    void testSenderFailureFailsTheBatch() {
+        MessageBatcher batcher = new MessageBatcher(60_000, 2, Runnable::run, items -> {
+            throw new IllegalStateException("no provider");
+        });
+        CompletableFuture<String> first = batcher.submit("one", PIRATE, "Steve", DeadlineQueue.NO_DEADLINE);
+        CompletableFuture<String> second = batcher.submit("two", PIRATE, "Alex", DeadlineQueue.NO_DEADLINE);
+        batcher.close();
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    void testParsesArrayOrItemsObjectAroundChatter() {
+        assertEquals(Map.of(1, "Ahoy", 2, "Arr"),
+                MessageBatcher.parseReply("[{\"id\":1,\"text\":\"Ahoy\"},{\"id\":2,\"text\":\"Arr\"}]"));
+        assertEquals(Map.of(1, "Ahoy", 2, "Arr"), MessageBatcher.parseReply(
+                "Sure!\n```json\n{\"items\":[{\"id\":1,\"text\":\"Ahoy\"},{\"id\":\"2\",\"text\":\"Arr\"}]}\n```"));
+    }
+
+    @Test
+    void testSkipsUnreadableEntries() {
+        assertEquals(Map.of(2, "Arr"), MessageBatcher.parseReply(
+                "[{\"id\":\"one\",\"text\":\"Ahoy\"},{\"id\":2,\"text\":\"Arr\"},{\"text\":\"Yo\"},\"Avast\"]"));
+        assertEquals(Map.of(), MessageBatcher.parseReply("Ahoy, matey!"));
+        assertEquals(Map.of(), MessageBatcher.parseReply("[{\"id\":1,\"text\":\"Ahoy\""));
+        assertEquals(Map.of(), MessageBatcher.parseReply("{\"replies\":[{\"id\":1,\"text\":\"Ahoy\"}]}"));
+    }
+
+    @Test
+    void testMissingOrBlankItemsAreLeftToRetrySingly() {
+        List<MessageBatcher.BatchItem> items = new ArrayList<>(List.of(item("one"), item("two"), item("three")));
+
+        List<MessageBatcher.BatchItem> missing = MessageBatcher.completeFromReply(items,
+                Map.of(1, "\"Ahoy\"", 2, "  "), text -> text.replace("\"", ""));
+
+        assertEquals("Ahoy", items.get(0).result.join());
+        assertEquals(List.of(items.get(1), items.get(2)), missing);
+        assertFalse(items.get(1).result.isDone());
+        assertFalse(items.get(2).result.isDone());
+    }
+
+    @Test
+    void testMalformedReplyRetriesEveryItem() {
+        List<MessageBatcher.BatchItem> items = List.of(item("one"), item("two"));
+
+        assertEquals(items, MessageBatcher.completeFromReply(items, MessageBatcher.parseReply("not json"),
+                text -> text));
+    }
+}
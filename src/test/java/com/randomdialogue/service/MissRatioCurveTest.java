@@ -0,0 +1,93 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MissRatioCurveTest {
+    private static final int[] SIZES = { 100, 250, 1000, 2500, 10_000 };
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void testLoopHitsOnlyWhenItFits() {
+        MissRatioCurve curve = new MissRatioCurve(SIZES, new long[] { 60 * MINUTE }, 4096);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 500; i++) {
+                curve.record("key " + i, 0);
+            }
+        }
+
+        // Every key but the first use, for a cache that holds all 500
+        assertEquals(0.0, curve.hitRate(1, 0));
+        assertEquals(0.9, curve.hitRate(2, 0), 1e-9);
+        assertEquals(0.9, curve.hitRate(4, 0), 1e-9);
+        assertEquals(1.0, curve.samplingRate());
+    }
+
+    @Test
+    void testHalvingKeepsTheHitRate() {
+        MissRatioCurve curve = new MissRatioCurve(SIZES, new long[] { 60 * MINUTE }, 4096);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 500; i++) {
+                curve.record("key " + i, 0);
+            }
+        }
+        double before = curve.hitRate(2, 0);
+
+        // 250 rounds of 500 keys pass the halving at 100000 references
+        for (int round = 10; round < 250; round++) {
+            for (int i = 0; i < 500; i++) {
+                curve.record("key " + i, 0);
+            }
+        }
+
+        assertTrue(curve.references() < 100_000, String.valueOf(curve.references()));
+        assertEquals(0.9, before, 1e-9);
+        assertEquals(1.0, curve.hitRate(2, 0), 0.01);
+        assertEquals(0.0, curve.hitRate(1, 0));
+    }
+
+    @Test
+    void testSampledEstimateScalesDistances() {
+        MissRatioCurve curve = new MissRatioCurve(SIZES, new long[] { 60 * MINUTE }, 200);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5000; i++) {
+                curve.record("key " + i, 0);
+            }
+        }
+
+        assertTrue(curve.samplingRate() < 0.1, String.valueOf(curve.samplingRate()));
+        assertTrue(curve.trackedKeys() <= 200);
+        assertEquals(50_000, curve.lookups());
+        assertEquals(0.0, curve.hitRate(3, 0), 0.05);
+        assertEquals(0.9, curve.hitRate(4, 0), 0.05);
+    }
+
+    @Test
+    void testReuseAfterTheTtlMisses() {
+        MissRatioCurve curve = new MissRatioCurve(SIZES, new long[] { 5 * MINUTE, 15 * MINUTE }, 4096);
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 50; i++) {
+                curve.record("key " + i, round * 10 * MINUTE);
+            }
+        }
+
+        assertEquals(0.0, curve.hitRate(0, 0));
+        // Each write lasts one reuse: miss, hit, miss, hit
+        assertEquals(0.5, curve.hitRate(0, 1), 1e-9);
+    }
+
+    @Test
+    void testRecommendsTheSmallestSizeNearTheBest() {
+        MissRatioCurve curve = new MissRatioCurve(SIZES, new long[] { 60 * MINUTE }, 4096);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 500; i++) {
+                curve.record("key " + i, 0);
+            }
+        }
+
+        assertEquals(1000, curve.recommend(0, 1_000_000, 0.01));
+        assertEquals(100, curve.recommend(0, 500, 0.01));
+        assertEquals(-1, curve.recommend(0, 50, 0.01));
+    }
+}
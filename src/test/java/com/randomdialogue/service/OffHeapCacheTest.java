@@ -0,0 +1,179 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapCacheTest {
+
+    private static OffHeapCache<String> cache(int maximumSize, long maxBytes, AtomicLong now) {
+        return new OffHeapCache<>(maximumSize, maxBytes, 1_000, Function.identity(), Function.identity(), now::get);
+    }
+
+    @Test
+    void testStoresAndReadsBack() {
+        OffHeapCache<String> cache = cache(100, 1 << 20, new AtomicLong());
+        cache.put("a", "Ahoy, café 😀");
+        cache.put("b", "");
+
+        assertEquals("Ahoy, café 😀", cache.get("a"));
+        assertEquals("", cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testNeverHoldsMoreThanMaximumSize() {
+        OffHeapCache<String> cache = cache(50, 1 << 20, new AtomicLong());
+        for (int i = 0; i < 1000; i++) {
+            cache.put("message " + i, "reply " + i);
+            assertTrue(cache.size() <= 50);
+        }
+
+        assertEquals(50, cache.size());
+        assertEquals(950, cache.evictionCount() + cache.rejectionCount());
+    }
+
+    @Test
+    void testWrapsAroundSlabsWithinMemoryLimit() {
+        // 1.5 MB of entries in two slabs, rewritten until the log has gone round several times
+        OffHeapCache<String> cache = cache(10_000, 2 * OffHeapCache.SLAB_BYTES, new AtomicLong());
+        String reply = "x".repeat(1000);
+        for (int round = 0; round < 8; round++) {
+            for (int i = 0; i < 1500; i++) {
+                cache.put("message " + i, reply + round);
+                assertTrue(cache.usedBytes() <= 2 * OffHeapCache.SLAB_BYTES);
+            }
+        }
+
+        int current = 0;
+        for (int i = 0; i < 1500; i++) {
+            String cached = cache.get("message " + i);
+            if (cached != null) {
+                assertEquals(reply + 7, cached);
+                current++;
+            }
+        }
+        assertTrue(current >= 1400, current + " cached");
+    }
+
+    @Test
+    void testFrequentEntriesSurviveAScan() {
+        OffHeapCache<String> cache = cache(100, 1 << 20, new AtomicLong());
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("popular " + i) == null) {
+                    cache.put("popular " + i, "reply");
+                }
+            }
+        }
+
+        // A burst of one-off messages, more than the whole cache
+        for (int i = 0; i < 500; i++) {
+            cache.get("one-off " + i);
+            cache.put("one-off " + i, "reply");
+        }
+
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("popular " + i) != null) {
+                survivors++;
+            }
+        }
+        assertTrue(survivors >= 45, survivors + " survived");
+    }
+
+    @Test
+    void testEntriesExpireAfterWrite() {
+        AtomicLong now = new AtomicLong();
+        OffHeapCache<String> cache = cache(10, 1 << 20, now);
+        cache.put("a", "1");
+        cache.put("from disk", "2", 800);
+        now.addAndGet(600_000_000L);
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("from disk"));
+        now.addAndGet(500_000_000L);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testCleanUpDropsExpiredEntriesBehindLiveOnes() {
+        AtomicLong now = new AtomicLong();
+        OffHeapCache<String> cache = cache(10, 1 << 20, now);
+        cache.put("fresh", "1");
+        cache.put("aged", "2", 900);
+        now.addAndGet(200_000_000L);
+        cache.cleanUp();
+
+        assertEquals(1, cache.size());
+        assertEquals("1", cache.get("fresh"));
+    }
+
+    @Test
+    void testRewriteAndMergeReplaceTheValue() {
+        AtomicLong now = new AtomicLong();
+        OffHeapCache<String> cache = cache(10, 1 << 20, now);
+        cache.put("a", "1");
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+
+        assertEquals("23", cache.merge("a", "3", String::concat));
+        // Merging doesn't restart the TTL
+        now.addAndGet(1_000_000_000L);
+        assertEquals("4", cache.merge("a", "4", String::concat));
+        assertEquals("4", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testValueLargerThanASlabIsNotCached() {
+        OffHeapCache<String> cache = cache(10, 4096, new AtomicLong());
+        cache.put("a", "small");
+        cache.put("a", "x".repeat(5000));
+
+        assertNull(cache.get("a"));
+        assertTrue(cache.describe().contains("1 too large"));
+    }
+
+    @Test
+    void testResizeKeepsEntriesThatFit() {
+        OffHeapCache<String> cache = cache(100, 1 << 20, new AtomicLong());
+        for (int i = 0; i < 100; i++) {
+            cache.put("message " + i, "reply " + i);
+        }
+
+        cache.resize(10);
+        assertEquals(10, cache.size());
+        int found = 0;
+        for (int i = 0; i < 100; i++) {
+            String cached = cache.get("message " + i);
+            if (cached != null) {
+                assertEquals("reply " + i, cached);
+                found++;
+            }
+        }
+        assertEquals(10, found);
+
+        cache.resize(1000);
+        for (int i = 0; i < 500; i++) {
+            cache.put("other " + i, "reply " + i);
+        }
+        assertEquals(510, cache.size());
+    }
+
+    @Test
+    void testZeroSizeStoresNothing() {
+        OffHeapCache<String> cache = cache(0, 1 << 20, new AtomicLong());
+        cache.put("a", "1");
+
+        assertNull(cache.get("a"));
+        assertFalse(cache.containsKey("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hitCount());
+    }
+}
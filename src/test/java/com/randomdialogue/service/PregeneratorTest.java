@@ -0,0 +1,83 @@
+package com.randomdialogue.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.randomdialogue.filter.FilterDefinition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PregeneratorTest {
+    private final List<FilterDefinition> filters = List.of(
+            new FilterDefinition("PIRATE", "Talk like a pirate", "🏴‍☠️", "gold", true),
+            new FilterDefinition("ROBOT", "Talk like a robot", "🤖", "gray", true));
+    private final Set<String> cached = new HashSet<>();
+    private final List<CompletableFuture<String>> calls = new ArrayList<>();
+    private final List<String> requested = new ArrayList<>();
+    private final AtomicBoolean idle = new AtomicBoolean(true);
+
+    private final Pregenerator pregenerator = new Pregenerator(10, () -> filters,
+            (phrase, filter) -> cached.contains(phrase + "/" + filter.name),
+            (phrase, filter) -> {
+                requested.add(phrase + "/" + filter.name);
+                CompletableFuture<String> call = new CompletableFuture<>();
+                calls.add(call);
+                return call;
+            },
+            idle::get);
+
+    @Test
+    void testGeneratesPopularPhrasesForEveryFilter() {
+        for (int i = 0; i < 5; i++) {
+            pregenerator.record("gg");
+        }
+        pregenerator.record("a one-off message");
+
+        assertTrue(pregenerator.tick());
+        // One phrase at a time
+        assertFalse(pregenerator.tick());
+
+        calls.get(0).complete("Good game, matey");
+        cached.add("gg/PIRATE");
+        assertTrue(pregenerator.tick());
+        calls.get(1).complete("GOOD GAME DETECTED");
+        cached.add("gg/ROBOT");
+        assertFalse(pregenerator.tick());
+
+        assertEquals(List.of("gg/PIRATE", "gg/ROBOT"), requested);
+    }
+
+    @Test
+    void testWaitsWhileBusyAndYieldsToLiveChat() {
+        for (int i = 0; i < 5; i++) {
+            pregenerator.record("thanks");
+        }
+        idle.set(false);
+        assertFalse(pregenerator.tick());
+
+        idle.set(true);
+        assertTrue(pregenerator.tick());
+        pregenerator.yieldToLive();
+
+        assertTrue(calls.get(0).isCancelled());
+        assertTrue(pregenerator.describe().contains("1 yielded"));
+        // The cancelled phrase is tried again once idle
+        assertTrue(pregenerator.tick());
+        assertEquals(List.of("thanks/PIRATE", "thanks/PIRATE"), requested);
+    }
+
+    @Test
+    void testIgnoresLongMessages() {
+        for (int i = 0; i < 5; i++) {
+            pregenerator.record("this message is much too long to be worth generating ahead of time");
+        }
+
+        assertFalse(pregenerator.tick());
+    }
+}
@@ -0,0 +1,95 @@
+package com.randomdialogue.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderRouterTest {
+
+    private static final int PICKS = 1000;
+
+    @Test
+    void testPicksInProportionToConfiguredWeights() {
+        ProviderRouter router = new ProviderRouter(weights(3.0, 1.0), "openai", evenlySpaced());
+
+        assertEquals(750, countPicks(router, "openai"));
+    }
+
+    @Test
+    void testFailingProviderDrainsToItsMinimumShare() {
+        ProviderRouter router = new ProviderRouter(weights(1.0, 1.0), "openai", evenlySpaced());
+        for (int i = 0; i < 20; i++) {
+            router.recordFailure("anthropic");
+            router.recordSuccess("openai", 100);
+        }
+
+        // Drained to 2% of its weight against openai's full weight
+        assertEquals(0.02, router.getEffectiveWeights().get("anthropic"), 1e-9);
+        assertEquals(Math.round(PICKS * 0.02 / 1.02), countPicks(router, "anthropic"));
+    }
+
+    @Test
+    void testRecoveredProviderWinsBackTraffic() {
+        ProviderRouter router = new ProviderRouter(weights(1.0, 1.0), "openai", evenlySpaced());
+        for (int i = 0; i < 20; i++) {
+            router.recordFailure("anthropic");
+        }
+        int drained = countPicks(router, "anthropic");
+
+        for (int i = 0; i < 30; i++) {
+            router.recordSuccess("anthropic", 100);
+            router.recordSuccess("openai", 100);
+        }
+
+        int recovered = countPicks(router, "anthropic");
+        assertTrue(recovered > drained * 10, drained + " -> " + recovered);
+        assertTrue(recovered > PICKS * 0.45, "recovered share " + recovered);
+    }
+
+    @Test
+    void testSlowerProviderGetsLessTraffic() {
+        ProviderRouter router = new ProviderRouter(weights(1.0, 1.0), "openai", evenlySpaced());
+        router.recordSuccess("openai", 100);
+        router.recordSuccess("anthropic", 400);
+
+        // sqrt(100 / 400) halves anthropic's weight
+        assertEquals(0.5, router.getEffectiveWeights().get("anthropic"), 1e-9);
+        assertEquals(Math.round(PICKS / 3.0), countPicks(router, "anthropic"));
+    }
+
+    @Test
+    void testFallsBackToTheDefaultWhenNothingIsAvailable() {
+        ProviderRouter router = new ProviderRouter(weights(1.0, 1.0), "openai", () -> 0.99);
+
+        assertEquals("openai", router.choose(provider -> false));
+        assertEquals("openai", router.choose(provider -> !provider.equals("anthropic")));
+    }
+
+    private static Map<String, Double> weights(double openai, double anthropic) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        weights.put("openai", openai);
+        weights.put("anthropic", anthropic);
+        return weights;
+    }
+
+    // Steps through [0, 1) in PICKS even steps so the split is exact
+    private static DoubleSupplier evenlySpaced() {
+        AtomicLong step = new AtomicLong();
+        return () -> (step.getAndIncrement() % PICKS + 0.5) / PICKS;
+    }
+
+    private static int countPicks(ProviderRouter router, String provider) {
+        int picks = 0;
+        for (int i = 0; i < PICKS; i++) {
+            if (router.choose(p -> true).equals(provider)) {
+                picks++;
+            }
+        }
+        return picks;
+    }
+}
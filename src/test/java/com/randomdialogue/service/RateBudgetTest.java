@@ -0,0 +1,125 @@
+package com.randomdialogue.service;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateBudgetTest {
+
+    private static final long NOW = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+
+    @Test
+    void testRetryAfterHeaders() {
+        Object[][] cases = {
+                // header, value, expected millis
+                { "retry-after", "2", 2000L },
+                { "retry-after", "0.5", 500L },
+                { "retry-after", " 3 ", 3000L },
+                { "retry-after", "Wed, 21 Oct 2015 07:28:00 GMT", -1L },
+                { "x-ratelimit-reset-requests", "1m30s", 90_000L },
+                { "x-ratelimit-reset-requests", "6m0s", 360_000L },
+                { "x-ratelimit-reset-requests", "20ms", 20L },
+                { "x-ratelimit-reset-requests", "soon", -1L },
+                { "x-ratelimit-reset-tokens", "1.5s", 1500L },
+                { "anthropic-ratelimit-requests-reset", "2026-01-01T00:00:05Z", 5000L },
+                { "anthropic-ratelimit-requests-reset", "2025-12-31T23:59:00Z", 0L },
+                { "anthropic-ratelimit-requests-reset", "in five seconds", -1L },
+                { "content-type", "application/json", -1L },
+        };
+        for (Object[] c : cases) {
+            TransportResponse response = response(429, new BasicHeader((String) c[0], c[1]));
+            assertEquals((long) c[2], RateBudget.retryAfterMillis(response, NOW), c[0] + ": " + c[1]);
+        }
+    }
+
+    @Test
+    void testRetryAfterWinsOverResetHeaders() {
+        TransportResponse response = response(429, new BasicHeader("x-ratelimit-reset-requests", "6m0s"),
+                new BasicHeader("retry-after", "2"), new BasicHeader("anthropic-ratelimit-requests-reset",
+                        "2026-01-01T00:01:00Z"));
+
+        assertEquals(2000, RateBudget.retryAfterMillis(response, NOW));
+    }
+
+    @Test
+    void testRequestResetWinsOverTokenReset() {
+        TransportResponse response = response(429, new BasicHeader("x-ratelimit-reset-tokens", "10s"),
+                new BasicHeader("x-ratelimit-reset-requests", "1s"));
+
+        assertEquals(1000, RateBudget.retryAfterMillis(response, NOW));
+    }
+
+    @Test
+    void testDurations() {
+        Object[][] cases = {
+                { "20ms", 20L },
+                { "1.5s", 1500L },
+                { "1m30s", 90_000L },
+                { "6m0s", 360_000L },
+                { "1h2m", 3_720_000L },
+                { "2m0.5s", 120_500L },
+                { " 7s ", 7000L },
+                { "", -1L },
+                { "later", -1L },
+                { "-", -1L },
+        };
+        for (Object[] c : cases) {
+            assertEquals((long) c[1], RateBudget.parseDurationMillis((String) c[0]), "\"" + c[0] + "\"");
+        }
+    }
+
+    @Test
+    void testLimitsAreLearnedFromHeaders() {
+        RateBudget budget = new RateBudget(0, 0, Runnable::run);
+        assertTrue(budget.describe().startsWith("requests unknown, tokens unknown"));
+
+        budget.onResponse(response(200, new BasicHeader("x-ratelimit-limit-requests", "60"),
+                new BasicHeader("x-ratelimit-remaining-requests", "40"),
+                new BasicHeader("anthropic-ratelimit-tokens-limit", "6000")));
+
+        assertTrue(budget.describe().startsWith("requests 40/60, tokens 6000/6000"), budget.describe());
+    }
+
+    @Test
+    void testConfiguredLimitCapsTheReportedOne() {
+        RateBudget budget = new RateBudget(30, 0, Runnable::run);
+
+        budget.onResponse(response(200, new BasicHeader("x-ratelimit-limit-requests", "60")));
+
+        assertTrue(budget.describe().startsWith("requests 30/30"), budget.describe());
+    }
+
+    @Test
+    void testMalformedHeadersAreIgnored() {
+        RateBudget budget = new RateBudget(0, 0, Runnable::run);
+
+        budget.onResponse(response(200, new BasicHeader("x-ratelimit-limit-requests", "lots"),
+                new BasicHeader("x-ratelimit-limit-tokens", ""),
+                new BasicHeader("anthropic-ratelimit-input-tokens-limit", "8000")));
+
+        // The token limit falls through to the next header that parses
+        assertTrue(budget.describe().startsWith("requests unknown, tokens 8000/8000"), budget.describe());
+    }
+
+    @Test
+    void testRateLimitedResponsePausesRequests() {
+        RateBudget budget = new RateBudget(0, 0, Runnable::run);
+        assertTrue(budget.hasSpare(0.5));
+
+        budget.onResponse(response(429, new BasicHeader("retry-after", "60")));
+
+        assertFalse(budget.hasSpare(0.5));
+        CompletableFuture<Void> waiting = budget.acquire(100, DeadlineQueue.NO_DEADLINE);
+        assertFalse(waiting.isDone());
+        waiting.cancel(true);
+    }
+
+    private static TransportResponse response(int status, Header... headers) {
+        return new TransportResponse(status, "", headers);
+    }
+}
@@ -0,0 +1,115 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTemplateTest {
+
+    private static RequestTemplate openAiStyle(boolean maxTokensForBatchesOnly, boolean jsonModeForBatches) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", "gpt-test");
+        body.put("messages", Arrays.asList(
+                Map.of("role", "system", "content", "Be \"nice\" <always>"),
+                Map.of("role", "user", "content", RequestTemplate.INSTRUCTIONS + RequestTemplate.USER_CONTENT)));
+        body.put("temperature", 0.8);
+        return new RequestTemplate(body, "gpt-test", "Be \"nice\" <always>", 0.8, false, maxTokensForBatchesOnly,
+                jsonModeForBatches, true);
+    }
+
+    private static JsonObject parse(byte[] body) {
+        return JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static String userContent(JsonObject body) {
+        return body.getAsJsonArray("messages").get(1).getAsJsonObject().get("content").getAsString();
+    }
+
+    @Test
+    void testSplicesUserContentIntoValidJson() {
+        RequestTemplate template = openAiStyle(false, false);
+        String context = "Recent conversation context:\n- \"hi\" \\o/\t\u0001\n\n";
+        String message = "café – 😀 done";
+
+        JsonObject body = parse(template.render(RequestTemplate.encode("Style: loud\n\n"), context, message, 200,
+                false, false));
+
+        assertEquals("gpt-test", body.get("model").getAsString());
+        assertEquals("Be \"nice\" <always>",
+                body.getAsJsonArray("messages").get(0).getAsJsonObject().get("content").getAsString());
+        assertEquals("Style: loud\n\n" + context + message, userContent(body));
+        assertEquals(0.8, body.get("temperature").getAsDouble());
+        assertEquals(200, body.get("max_tokens").getAsInt());
+        assertFalse(body.has("stream"));
+    }
+
+    @Test
+    void testUnpairedSurrogateIsReplaced() {
+        JsonObject body = parse(openAiStyle(false, false).render(new byte[0], "", "a\ud83db", 10, false, false));
+
+        assertEquals("a?b", userContent(body));
+    }
+
+    @Test
+    void testPerRequestOptions() {
+        JsonObject streamed = parse(openAiStyle(true, true).render(new byte[0], "", "hi", 50, false, true));
+        assertFalse(streamed.has("max_tokens"));
+        assertFalse(streamed.has("response_format"));
+        assertTrue(streamed.get("stream").getAsBoolean());
+        assertTrue(streamed.getAsJsonObject("stream_options").get("include_usage").getAsBoolean());
+
+        JsonObject batch = parse(openAiStyle(true, true).render(RequestTemplate.encode("Batch: "), "items", "", 900,
+                true, false));
+        assertEquals(900, batch.get("max_tokens").getAsInt());
+        assertEquals("json_object", batch.getAsJsonObject("response_format").get("type").getAsString());
+        assertEquals("Batch: items", userContent(batch));
+        assertFalse(batch.has("stream_options"));
+
+        JsonObject single = parse(openAiStyle(false, false).render(new byte[0], "", "hi", 50, false, false, 1));
+        assertFalse(single.has("n"));
+        JsonObject several = parse(openAiStyle(false, false).render(new byte[0], "", "hi", 50, false, false, 3));
+        assertEquals(3, several.get("n").getAsInt());
+    }
+
+    @Test
+    void testInstructionsAndContentInSeparateBlocks() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", "claude-test");
+        body.put("messages", List.of(Map.of("role", "user", "content", List.of(
+                Map.of("type", "text", "text", RequestTemplate.INSTRUCTIONS, "cache_control",
+                        Map.of("type", "ephemeral")),
+                Map.of("type", "text", "text", RequestTemplate.USER_CONTENT)))));
+        RequestTemplate template = new RequestTemplate(body, "claude-test", "", 0.8, true, false, false, false);
+
+        JsonObject rendered = parse(template.render(RequestTemplate.encode("Style: \"loud\""), "ctx ", "msg", 100,
+                false, false));
+        var blocks = rendered.getAsJsonArray("messages").get(0).getAsJsonObject().getAsJsonArray("content");
+
+        assertEquals("Style: \"loud\"", blocks.get(0).getAsJsonObject().get("text").getAsString());
+        assertEquals("ephemeral", blocks.get(0).getAsJsonObject().getAsJsonObject("cache_control")
+                .get("type").getAsString());
+        assertEquals("ctx msg", blocks.get(1).getAsJsonObject().get("text").getAsString());
+        // Anthropic rejects stream_options and reports usage in its stream anyway
+        assertFalse(parse(template.render(new byte[0], "", "msg", 100, false, true)).has("stream_options"));
+    }
+
+    @Test
+    void testTracksConfigItWasBuiltFrom() {
+        RequestTemplate template = openAiStyle(false, false);
+
+        assertTrue(template.isBuiltFrom("gpt-test", "Be \"nice\" <always>", 0.8, false));
+        assertFalse(template.isBuiltFrom("gpt-other", "Be \"nice\" <always>", 0.8, false));
+        assertFalse(template.isBuiltFrom("gpt-test", "Be terse", 0.8, false));
+        assertFalse(template.isBuiltFrom("gpt-test", "Be \"nice\" <always>", 0.2, false));
+        assertFalse(template.isBuiltFrom("gpt-test", "Be \"nice\" <always>", 0.8, true));
+    }
+}
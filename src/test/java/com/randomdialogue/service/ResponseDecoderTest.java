@@ -0,0 +1,75 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseDecoderTest {
+
+    @Test
+    void testDecodesOpenAiContentAndUsage() throws IOException {
+        ResponseDecoder.Decoded decoded = decode("{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"Ahoy, matey!\","
+                + "\"refusal\":null},\"logprobs\":null,\"finish_reason\":\"stop\"},{\"index\":1,\"message\":{\"content\":\"second\"}}],"
+                + "\"usage\":{\"prompt_tokens\":52,\"completion_tokens\":7,\"prompt_tokens_details\":{\"cached_tokens\":0}}}",
+                false);
+
+        assertEquals("Ahoy, matey!", decoded.content);
+        assertEquals(List.of("second"), decoded.alternatives);
+        assertEquals(52, decoded.inputTokens);
+        assertEquals(7, decoded.outputTokens);
+    }
+
+    @Test
+    void testDecodesAnthropicContentAndUsage() throws IOException {
+        ResponseDecoder.Decoded decoded = decode("{\"id\":\"msg_1\",\"type\":\"message\",\"role\":\"assistant\","
+                + "\"content\":[{\"type\":\"text\",\"text\":\"Verily, \\\"hello\\\" \\u2013 good sir\"}],"
+                + "\"stop_reason\":\"end_turn\",\"usage\":{\"input_tokens\":40,\"output_tokens\":9}}", true);
+
+        assertEquals("Verily, \"hello\" – good sir", decoded.content);
+        assertEquals(40, decoded.inputTokens);
+        assertEquals(9, decoded.outputTokens);
+    }
+
+    @Test
+    void testDecodesCachedTokens() throws IOException {
+        ResponseDecoder.Decoded openAi = decode("{\"choices\":[{\"message\":{\"content\":\"hi\"}}],"
+                + "\"usage\":{\"prompt_tokens\":2006,\"completion_tokens\":300,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":1920,\"audio_tokens\":0}}}", false);
+        assertEquals(2006, openAi.inputTokens);
+        assertEquals(1920, openAi.cacheReadTokens);
+        assertEquals(0, openAi.cacheWriteTokens);
+
+        ResponseDecoder.Decoded anthropic = decode("{\"content\":[{\"type\":\"text\",\"text\":\"hi\"}],"
+                + "\"usage\":{\"input_tokens\":21,\"cache_creation_input_tokens\":188,"
+                + "\"cache_read_input_tokens\":1800,\"output_tokens\":9}}", true);
+        // Anthropic counts cached tokens separately from input_tokens
+        assertEquals(21 + 188 + 1800, anthropic.inputTokens);
+        assertEquals(1800, anthropic.cacheReadTokens);
+        assertEquals(188, anthropic.cacheWriteTokens);
+        assertEquals(9, anthropic.outputTokens);
+    }
+
+    @Test
+    void testMissingContentDecodesToNull() throws IOException {
+        assertNull(decode("{\"choices\":[]}", false).content);
+        assertNull(decode("{\"choices\":[{\"message\":{\"content\":null}}]}", false).content);
+        assertNull(decode("{\"error\":{\"message\":\"overloaded\"}}", true).content);
+    }
+
+    @Test
+    void testUnexpectedStructureIsAnIoError() {
+        assertThrows(IOException.class, () -> decode("{\"choices\":{\"message\":\"x\"}}", false));
+        assertThrows(IOException.class, () -> decode("not json", false));
+        assertThrows(IOException.class, () -> decode("{\"usage\":{\"prompt_tokens\":1.5}}", false));
+    }
+
+    private static ResponseDecoder.Decoded decode(String json, boolean isAnthropic) throws IOException {
+        return ResponseDecoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), isAnthropic);
+    }
+}
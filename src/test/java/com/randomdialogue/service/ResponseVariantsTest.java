@@ -0,0 +1,58 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseVariantsTest {
+
+    @Test
+    void testPlusDropsDuplicatesAndStopsAtMax() {
+        ResponseVariants variants = ResponseVariants.of("Ahoy").plus(List.of("Ahoy", "Avast", "Yarr", "Arr"), 3);
+
+        assertEquals(List.of("Ahoy", "Avast", "Yarr"), variants.texts());
+        assertEquals(List.of("Ahoy", "Avast", "Yarr"),
+                variants.plus(ResponseVariants.of("Shiver me timbers"), 3).texts());
+    }
+
+    @Test
+    void testPickVisitsEveryVariant() {
+        ResponseVariants variants = ResponseVariants.of("a").plus(List.of("b", "c"), 3);
+        Set<String> picked = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            picked.add(variants.pick());
+        }
+
+        assertEquals(Set.of("a", "b", "c"), picked);
+    }
+
+    @Test
+    void testStopsWantingMoreFromARepetitiveFilter() {
+        ResponseVariants variants = ResponseVariants.of("same");
+        assertTrue(variants.wantsMore(3));
+        assertFalse(variants.wantsMore(1));
+
+        variants = variants.plus(List.of("same", "same", "same", "same"), 3);
+        assertEquals(1, variants.size());
+        // Five completions for three variants, one more try
+        assertTrue(variants.wantsMore(3));
+        variants = variants.plus(List.of("same"), 3);
+        assertFalse(variants.wantsMore(3));
+    }
+
+    @Test
+    void testEncodeRoundTrip() {
+        ResponseVariants variants = ResponseVariants.of("Ahoy, \"matey\"").plus(List.of("Avast\nye", "Avast\nye"), 4);
+        ResponseVariants decoded = ResponseVariants.decode(variants.encode());
+
+        assertEquals(variants.texts(), decoded.texts());
+        // The duplicate still counts against asking for more
+        assertFalse(decoded.plus(List.of("Ahoy, \"matey\"", "Avast\nye", "Avast\nye"), 3).wantsMore(3));
+        // Disk entries from before variants decode as one
+        assertEquals(List.of("plain"), ResponseVariants.decode("plain").texts());
+    }
+}
@@ -0,0 +1,66 @@
+package com.randomdialogue.service;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    @Test
+    void testTransientStatusesAreRetryable() {
+        for (int status : new int[] { 408, 429, 500, 502, 503, 504 }) {
+            assertTrue(RetryPolicy.isRetryable(response(status), null), "Status " + status);
+        }
+    }
+
+    @Test
+    void testClientErrorsAreTerminal() {
+        for (int status : new int[] { 200, 400, 401, 403, 404, 422, 501 }) {
+            assertFalse(RetryPolicy.isRetryable(response(status), null), "Status " + status);
+        }
+    }
+
+    @Test
+    void testIoErrorsAreRetryableButOurOwnRejectionsAreNot() {
+        assertTrue(RetryPolicy.isRetryable(null, new CompletionException(new SocketTimeoutException())));
+        assertFalse(RetryPolicy.isRetryable(null, new CancellationException()));
+        assertFalse(RetryPolicy.isRetryable(null, new RejectedExecutionException("queue full")));
+        assertFalse(RetryPolicy.isRetryable(null, new LLMService.DeadlineExceededException("too late")));
+    }
+
+    @Test
+    void testDelayStaysWithinDecorrelatedJitterBounds() {
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = RetryPolicy.nextDelayMillis(previous);
+            long upper = Math.min(RetryPolicy.MAX_DELAY_MILLIS,
+                    Math.max(RetryPolicy.BASE_DELAY_MILLIS, previous) * 3);
+            assertTrue(delay >= RetryPolicy.BASE_DELAY_MILLIS && delay <= upper, "Delay " + delay);
+            previous = delay;
+        }
+    }
+
+    @Test
+    void testRetryAfterOnlyUsesResetHeadersFor429() {
+        TransportResponse serverError = response(503, new BasicHeader("retry-after", "2"),
+                new BasicHeader("x-ratelimit-reset-requests", "6m0s"));
+        assertEquals(2000, RetryPolicy.retryAfterMillis(serverError, 0));
+
+        TransportResponse badGateway = response(502, new BasicHeader("x-ratelimit-reset-requests", "6m0s"));
+        assertEquals(-1, RetryPolicy.retryAfterMillis(badGateway, 0));
+
+        TransportResponse rateLimited = response(429, new BasicHeader("x-ratelimit-reset-requests", "1.5s"));
+        assertEquals(1500, RetryPolicy.retryAfterMillis(rateLimited, 0));
+    }
+
+    private static TransportResponse response(int status, Header... headers) {
+        return new TransportResponse(status, "", headers);
+    }
+}
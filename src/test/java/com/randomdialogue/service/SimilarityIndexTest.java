@@ -0,0 +1,63 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityIndexTest {
+
+    @Test
+    void testFindsNearDuplicate() {
+        SimilarityIndex index = new SimilarityIndex(100);
+        index.add("PIRATE", "hello", "key-hello");
+        index.add("PIRATE", "good game", "key-gg");
+
+        SimilarityIndex.Match match = index.find("PIRATE", "helloo", 0.8);
+        assertNotNull(match);
+        assertEquals("key-hello", match.cacheKey());
+        assertEquals("hello", match.canonical());
+        assertEquals(6.0 / 7, match.similarity(), 1e-9);
+    }
+
+    @Test
+    void testIgnoresDissimilarMessagesAndOtherFilters() {
+        SimilarityIndex index = new SimilarityIndex(100);
+        index.add("PIRATE", "hello", "key-hello");
+
+        assertNull(index.find("PIRATE", "hello everyone", 0.8));
+        assertNull(index.find("PIRATE", "hey all", 0.8));
+        assertNull(index.find("ROBOT", "helloo", 0.8));
+        // The same message is the exact cache's job
+        assertNull(index.find("PIRATE", "hello", 0.8));
+    }
+
+    @Test
+    void testDropsOldestBeyondMaximumSize() {
+        SimilarityIndex index = new SimilarityIndex(2);
+        index.add("PIRATE", "hello", "key-1");
+        index.add("PIRATE", "thanks", "key-2");
+        index.add("PIRATE", "good game", "key-3");
+
+        assertEquals(2, index.size());
+        assertNull(index.find("PIRATE", "helloo", 0.8));
+        assertNotNull(index.find("PIRATE", "thankss", 0.8));
+    }
+
+    @Test
+    void testRemove() {
+        SimilarityIndex index = new SimilarityIndex(10);
+        index.add("PIRATE", "hello", "key-hello");
+        index.remove("key-hello");
+
+        assertEquals(0, index.size());
+        assertNull(index.find("PIRATE", "helloo", 0.8));
+    }
+
+    @Test
+    void testJaccardOfBigrams() {
+        assertEquals(1.0, SimilarityIndex.jaccard(SimilarityIndex.bigrams("abc"), SimilarityIndex.bigrams("abc")));
+        assertEquals(0.0, SimilarityIndex.jaccard(SimilarityIndex.bigrams("ab"), SimilarityIndex.bigrams("xy")));
+        // Start and end are marked, so a repeated word isn't the word itself
+        assertTrue(SimilarityIndex.jaccard(SimilarityIndex.bigrams("ab"), SimilarityIndex.bigrams("abab")) < 1.0);
+    }
+}
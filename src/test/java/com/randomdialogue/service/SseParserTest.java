@@ -0,0 +1,127 @@
+package com.randomdialogue.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseParserTest {
+
+    private final List<String> events = new ArrayList<>();
+    private final SseParser parser = new SseParser((event, data) -> {
+        events.add(event + "|" + data);
+        return true;
+    });
+
+    @Test
+    void testEventIsDispatchedOnBlankLine() {
+        feed("event: message_start\ndata: {\"a\":1}\n");
+        assertEquals(List.of(), events);
+
+        feed("\n");
+        assertEquals(List.of("message_start|{\"a\":1}"), events);
+    }
+
+    @Test
+    void testEventNameDoesNotCarryOver() {
+        feed("event: ping\ndata: 1\n\ndata: 2\n\n");
+
+        assertEquals(List.of("ping|1", "null|2"), events);
+    }
+
+    @Test
+    void testMultiLineDataIsJoinedWithNewlines() {
+        feed("data: first\ndata: second\ndata:third\n\n");
+
+        assertEquals(List.of("null|first\nsecond\nthird"), events);
+    }
+
+    @Test
+    void testDoneSentinelIsPassedThrough() {
+        feed("data: {\"x\":1}\n\ndata: [DONE]\n\n");
+
+        assertEquals(List.of("null|{\"x\":1}", "null|[DONE]"), events);
+    }
+
+    @Test
+    void testCommentsAreIgnored() {
+        feed(": keep-alive\n\n");
+        assertEquals(List.of(), events);
+
+        feed("data: a\n: comment in between\ndata: b\n\n");
+        assertEquals(List.of("null|a\nb"), events);
+    }
+
+    @Test
+    void testCrlfLineEndings() {
+        feed("event: delta\r\ndata: hi\r\n\r\ndata: there\r\n\r\n");
+
+        assertEquals(List.of("delta|hi", "null|there"), events);
+    }
+
+    @Test
+    void testUnusedFieldsAreSkipped() {
+        feed("id: 7\nretry: 1000\ndata: kept\n\n");
+
+        assertEquals(List.of("null|kept"), events);
+    }
+
+    @Test
+    void testEventSplitAcrossReadsAndInsideCharacters() {
+        byte[] bytes = "data: héllo 🏴\n\n".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            parser.feed(bytes, i, 1);
+        }
+
+        assertEquals(List.of("null|héllo 🏴"), events);
+    }
+
+    @Test
+    void testByteBufferFeed() {
+        parser.feed(ByteBuffer.wrap("data: one\n\ndata: two\n\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of("null|one", "null|two"), events);
+    }
+
+    @Test
+    void testFinishFlushesATrailingEvent() {
+        feed("data: last");
+        assertEquals(List.of(), events);
+
+        parser.finish();
+        assertEquals(List.of("null|last"), events);
+    }
+
+    @Test
+    void testFinishWithNothingPendingDispatchesNothing() {
+        feed("data: done\n\n");
+        parser.finish();
+
+        assertEquals(List.of("null|done"), events);
+    }
+
+    @Test
+    void testListenerCanStopTheStream() {
+        List<String> seen = new ArrayList<>();
+        SseParser stopping = new SseParser((event, data) -> {
+            seen.add(data);
+            return false;
+        });
+        byte[] bytes = "data: one\n\ndata: two\n\n".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(stopping.feed(bytes, 0, bytes.length));
+        stopping.finish();
+
+        assertTrue(stopping.isStopped());
+        assertEquals(List.of("one"), seen);
+    }
+
+    private void feed(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.feed(bytes, 0, bytes.length));
+    }
+}
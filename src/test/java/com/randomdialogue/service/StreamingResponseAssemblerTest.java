@@ -0,0 +1,56 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingResponseAssemblerTest {
+
+    @Test
+    void testOpenAIUsageChunk() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(false, "hi", 100, false);
+        assertTrue(assembler.onEvent(null, "{\"choices\":[{\"delta\":{\"content\":\"Ahoy\"}}],\"usage\":null}"));
+        assertNull(assembler.getUsage());
+        assertTrue(assembler.onEvent(null, "{\"choices\":[],\"usage\":{\"prompt_tokens\":40,"
+                + "\"completion_tokens\":3,\"prompt_tokens_details\":{\"cached_tokens\":32}}}"));
+        assertFalse(assembler.onEvent(null, "[DONE]"));
+
+        assertEquals("Ahoy", assembler.getContent());
+        assertArrayEquals(new int[] { 40, 3, 32, 0 }, assembler.getUsage());
+    }
+
+    @Test
+    void testGroqUsage() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(false, "hi", 100, false);
+        assembler.onEvent(null, "{\"choices\":[{\"delta\":{\"content\":\"Beep\"}}],"
+                + "\"x_groq\":{\"usage\":{\"prompt_tokens\":20,\"completion_tokens\":2}}}");
+
+        assertArrayEquals(new int[] { 20, 2, 0, 0 }, assembler.getUsage());
+    }
+
+    @Test
+    void testAnthropicUsageAcrossEvents() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(true, "hi", 100, false);
+        assembler.onEvent("message_start", "{\"type\":\"message_start\",\"message\":{\"usage\":{"
+                + "\"input_tokens\":10,\"cache_read_input_tokens\":30,\"cache_creation_input_tokens\":5,"
+                + "\"output_tokens\":1}}}");
+        assembler.onEvent("content_block_delta", "{\"type\":\"content_block_delta\","
+                + "\"delta\":{\"type\":\"text_delta\",\"text\":\"Arr\"}}");
+        // Input alone isn't the whole story until the output count arrives
+        assertNull(assembler.getUsage());
+        assembler.onEvent("message_delta", "{\"type\":\"message_delta\",\"delta\":{},\"usage\":{\"output_tokens\":4}}");
+        assertFalse(assembler.onEvent("message_stop", "{\"type\":\"message_stop\"}"));
+
+        assertEquals("Arr", assembler.getContent());
+        assertArrayEquals(new int[] { 45, 4, 30, 5 }, assembler.getUsage());
+    }
+
+    @Test
+    void testNoUsageWhenStoppedEarly() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler(false, "hi", 100, true);
+        assertFalse(assembler.onEvent(null, "{\"choices\":[{\"delta\":{\"content\":\"Ahoy there. Avast! \"}}]}"));
+
+        assertTrue(assembler.isStoppedEarly());
+        assertNull(assembler.getUsage());
+    }
+}
@@ -0,0 +1,138 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyLfuCacheTest {
+
+    @Test
+    void testNeverHoldsMoreThanMaximumSize() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(50, 60_000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("message " + i, "reply " + i);
+            assertTrue(cache.size() <= 50);
+        }
+
+        assertEquals(50, cache.size());
+        assertEquals(950, cache.evictionCount() + cache.rejectionCount());
+    }
+
+    @Test
+    void testFrequentEntriesSurviveAScan() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 60_000);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("popular " + i) == null) {
+                    cache.put("popular " + i, "reply");
+                }
+            }
+        }
+
+        // A burst of one-off messages, more than the whole cache
+        for (int i = 0; i < 500; i++) {
+            cache.get("one-off " + i);
+            cache.put("one-off " + i, "reply");
+        }
+
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("popular " + i) != null) {
+                survivors++;
+            }
+        }
+        // Plain LRU would have kept none of them
+        assertTrue(survivors >= 45, survivors + " survived");
+        assertTrue(cache.rejectionCount() > 0);
+    }
+
+    @Test
+    void testEntriesExpireAfterWrite() {
+        AtomicLong now = new AtomicLong();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 1_000, now::get);
+        cache.put("a", "1");
+        now.addAndGet(600_000_000L);
+        cache.put("b", "2");
+
+        // Reads don't extend the time to live
+        assertEquals("1", cache.get("a"));
+        now.addAndGet(500_000_000L);
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(1, cache.size());
+
+        now.addAndGet(1_000_000_000L);
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+        assertTrue(cache.describe().endsWith("2 expired"), cache.describe());
+    }
+
+    @Test
+    void testRewriteReplacesValueAndRestartsTtl() {
+        AtomicLong now = new AtomicLong();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 1_000, now::get);
+        cache.put("a", "1");
+        now.addAndGet(900_000_000L);
+        cache.put("a", "2");
+        now.addAndGet(900_000_000L);
+
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testMergeCombinesWithLiveEntryOnly() {
+        AtomicLong now = new AtomicLong();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 1_000, now::get);
+
+        assertEquals("1", cache.merge("a", "1", String::concat));
+        assertEquals("12", cache.merge("a", "2", String::concat));
+        // Merging doesn't restart the TTL
+        now.addAndGet(1_000_000_000L);
+        assertEquals("3", cache.merge("a", "3", String::concat));
+        assertEquals("3", cache.get("a"));
+    }
+
+    @Test
+    void testAgedEntryExpiresSooner() {
+        AtomicLong now = new AtomicLong();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 1_000, now::get);
+        cache.put("fresh", "1");
+        cache.put("from disk", "2", 800);
+        now.addAndGet(300_000_000L);
+
+        // Behind a newer entry in write order, but expired all the same
+        assertNull(cache.get("from disk"));
+        assertEquals("1", cache.get("fresh"));
+    }
+
+    @Test
+    void testResize() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 60_000);
+        for (int i = 0; i < 100; i++) {
+            cache.put("message " + i, "reply " + i);
+        }
+
+        cache.resize(10);
+        assertEquals(10, cache.size());
+        assertEquals(10, cache.maximumSize());
+
+        cache.resize(200);
+        for (int i = 0; i < 200; i++) {
+            cache.put("other " + i, "reply " + i);
+        }
+        assertEquals(200, cache.size());
+    }
+
+    @Test
+    void testZeroSizeStoresNothing() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(0, 60_000);
+        cache.put("a", "1");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hitCount());
+    }
+}
@@ -0,0 +1,74 @@
+package com.randomdialogue.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private long now;
+    private TokenBucket bucket;
+
+    @BeforeEach
+    void setUp() {
+        now = TimeUnit.HOURS.toNanos(1);
+        bucket = new TokenBucket(3, 60_000, () -> now);
+    }
+
+    @Test
+    void testAllowsBurstUpToCapacity() {
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(), "Bucket should be empty after capacity acquires");
+    }
+
+    @Test
+    void testRefillsOneTokenPerInterval() {
+        drain();
+
+        now += TimeUnit.SECONDS.toNanos(19);
+        assertFalse(bucket.tryAcquire(), "Less than one interval has passed");
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void testRefillIsCappedAtCapacity() {
+        drain();
+
+        now += TimeUnit.MINUTES.toNanos(10);
+        drain();
+        assertFalse(bucket.tryAcquire(), "A long pause should not bank more than capacity");
+    }
+
+    @Test
+    void testIdleOnlyAfterFullForIdlePeriod() {
+        long idle = TimeUnit.MINUTES.toNanos(5);
+        drain();
+        assertFalse(bucket.isIdle(idle));
+
+        // Full again after one period, idle five minutes after that
+        now += TimeUnit.MINUTES.toNanos(1) + idle - 1;
+        assertFalse(bucket.isIdle(idle));
+        now += 1;
+        assertTrue(bucket.isIdle(idle));
+    }
+
+    @Test
+    void testZeroCapacityNeverAcquires() {
+        TokenBucket closed = new TokenBucket(0, 60_000, () -> now);
+        assertFalse(closed.tryAcquire());
+    }
+
+    private void drain() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+    }
+}